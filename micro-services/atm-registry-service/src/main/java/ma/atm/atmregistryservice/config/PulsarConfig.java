@@ -0,0 +1,17 @@
+package ma.atm.atmregistryservice.config;
+
+import org.apache.pulsar.client.api.SubscriptionMode;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.pulsar.annotation.PulsarListenerConsumerBuilderCustomizer;
+
+@Configuration
+public class PulsarConfig {
+
+    // Every instance keeps its own in-memory view of the registry, so each one needs every registry event,
+    // including those of the other instances. A non-durable subscription disappears with the instance.
+    @Bean
+    public PulsarListenerConsumerBuilderCustomizer<Object> registryEventsCustomizer() {
+        return builder -> builder.subscriptionMode(SubscriptionMode.NonDurable);
+    }
+}
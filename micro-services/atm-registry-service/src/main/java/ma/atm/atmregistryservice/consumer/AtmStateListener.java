@@ -2,17 +2,22 @@ package ma.atm.atmregistryservice.consumer;
 
 
 import lombok.extern.slf4j.Slf4j;
-import ma.atm.atmregistryservice.consumer.event.AtmConfigurationChangedEvent;
-import ma.atm.atmregistryservice.consumer.event.AtmCountersUpdatedEvent;
-import ma.atm.atmregistryservice.consumer.event.AtmStatusUpdatedEvent;
+import ma.atm.atmregistryservice.consumer.event.AtmSeenEvent;
 import ma.atm.atmregistryservice.model.AtmInfo;
 import ma.atm.atmregistryservice.service.AtmRegistryService;
+import ma.atm.atmregistryservice.service.KnownAtmIds;
 import org.apache.pulsar.client.api.SubscriptionType;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.pulsar.annotation.PulsarListener;
 import org.springframework.stereotype.Service;
 
+/**
+ * Registers ATMs the first time they show up. Only the discovery topic is consumed: the ingestion service
+ * announces each ATM there at most once per heartbeat interval, so the registry stays off the status,
+ * configuration and counter topics.
+ */
 @Service
 @Slf4j
 public class AtmStateListener {
@@ -21,57 +26,42 @@ public class AtmStateListener {
     @Autowired
     private  AtmRegistryService atmRegistryService;
 
+    @Autowired
+    private KnownAtmIds knownAtmIds;
+
 
     @PulsarListener(
-            topics = "${pulsar.consumer.configuration-topic}",
+            topics = "${pulsar.consumer.discovery-topic}",
             subscriptionName = "${pulsar.consumer.subscription-name}",
             schemaType = SchemaType.JSON,
-            subscriptionType = SubscriptionType.Exclusive
+            subscriptionType = SubscriptionType.Key_Shared
     )
-    public void consumeAtmConfigurationMessage(AtmConfigurationChangedEvent event) {
-        if (atmRegistryService.atmExists(event.getAtmId())){
-            log.info("Received configuration update for ATM ID: {}", event.getAtmId());
-        } else {
-            AtmInfo atmInfo = new AtmInfo();
-            atmInfo.setAtmId(event.getAtmId());
-            atmRegistryService.createAtm(atmInfo, "AG001");
-        }
-
-
+    public void consumeAtmSeenMessage(AtmSeenEvent event) {
+        log.debug("ATM ID {} seen ({}, first seen: {})", event.getAtmId(), event.getMessageType(), event.isFirstSeen());
+        registerIfUnknown(event.getAtmId());
     }
 
-    @PulsarListener(
-            topics = "${pulsar.consumer.status-topic}",
-            subscriptionName = "${pulsar.consumer.subscription-name}",
-            subscriptionType = SubscriptionType.Exclusive
-    )
-    public void consumeAtmStatusMessage(AtmStatusUpdatedEvent event) {
-        if (atmRegistryService.atmExists(event.getAtmId())){
-            log.info("Received configuration update for ATM ID: {}", event.getAtmId());
-        } else {
-            AtmInfo atmInfo = new AtmInfo();
-            atmInfo.setAtmId(event.getAtmId());
-            atmRegistryService.createAtm(atmInfo, "AG001");
+    // Known ATMs are answered from memory; the database is only read for ids the set has not seen
+    private void registerIfUnknown(String atmId) {
+        if (atmId == null || knownAtmIds.contains(atmId)) {
+            return;
         }
-    }
-
-    @PulsarListener(
-            topics = "${pulsar.consumer.counter-topic}",
-            subscriptionName = "${pulsar.consumer.subscription-name}",
-            subscriptionType = SubscriptionType.Exclusive
-    )
-    public void consumeAtmCounterMessage(AtmCountersUpdatedEvent event) {
-        log.info("Received ATM counter update: {}", event);
-        if (atmRegistryService.atmExists(event.getAtmId())){
-            log.info("Received configuration update for ATM ID: {}", event.getAtmId());
-        } else {
-            log.info("ATM ID {} does not exist, creating new ATM entry.", event.getAtmId());
-            AtmInfo atmInfo = new AtmInfo();
-            atmInfo.setAtmId(event.getAtmId());
+        // Taken before the database is read, so a delete committed elsewhere meanwhile is not undone below
+        long mark = knownAtmIds.removalMark();
+        if (atmRegistryService.atmExists(atmId)) {
+            knownAtmIds.addUnlessRemovedSince(atmId, mark);
+            return;
+        }
+        log.info("ATM ID {} does not exist, creating new ATM entry.", atmId);
+        AtmInfo atmInfo = new AtmInfo();
+        atmInfo.setAtmId(atmId);
+        try {
+            // KnownAtmIds adds the id once the creation commits
             atmRegistryService.createAtm(atmInfo, "AG001");
+        } catch (IllegalArgumentException | DataIntegrityViolationException e) {
+            // Registered concurrently by another instance
+            log.debug("ATM ID {} was registered concurrently: {}", atmId, e.getMessage());
+            knownAtmIds.addUnlessRemovedSince(atmId, mark);
         }
     }
-
-
-
 }
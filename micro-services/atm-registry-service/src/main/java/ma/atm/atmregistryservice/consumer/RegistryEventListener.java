@@ -0,0 +1,42 @@
+package ma.atm.atmregistryservice.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import ma.atm.atmregistryservice.service.AtmSpatialIndex;
+import ma.atm.atmregistryservice.service.KnownAtmIds;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.pulsar.annotation.PulsarListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Applies the registry changes made by every instance, this one included, to the in-memory views of the
+ * registry. Changes made here are also applied locally as soon as they commit; applying them twice is harmless.
+ */
+@Service
+@Slf4j
+public class RegistryEventListener {
+
+    private final KnownAtmIds knownAtmIds;
+    private final AtmSpatialIndex atmSpatialIndex;
+
+    @Autowired
+    public RegistryEventListener(KnownAtmIds knownAtmIds, AtmSpatialIndex atmSpatialIndex) {
+        this.knownAtmIds = knownAtmIds;
+        this.atmSpatialIndex = atmSpatialIndex;
+    }
+
+    @PulsarListener(
+            topics = "${pulsar.producer.registry-topic}",
+            subscriptionName = "${pulsar.consumer.registry-subscription-name}",
+            schemaType = SchemaType.JSON,
+            subscriptionType = SubscriptionType.Exclusive,
+            consumerCustomizer = "registryEventsCustomizer"
+    )
+    public void consumeRegistryChange(AtmRegistryChangedEvent event) {
+        log.debug("Received registry {} event for ATM {}", event.getChangeType(), event.getAtmId());
+        knownAtmIds.onRegistryChanged(event);
+        atmSpatialIndex.onRegistryChanged(event);
+    }
+}
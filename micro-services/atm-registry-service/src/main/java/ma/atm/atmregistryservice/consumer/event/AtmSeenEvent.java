@@ -0,0 +1,25 @@
+package ma.atm.atmregistryservice.consumer.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Sent by the ingestion service on the discovery topic when it sees an ATM, then at most once per
+ * heartbeat interval per ATM.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AtmSeenEvent {
+
+    private String atmId;
+
+    private boolean firstSeen;
+
+    private String messageType;
+
+    private Instant seenAt;
+}
@@ -1,27 +1,36 @@
 package ma.atm.atmregistryservice.controller;
 
 
+import jakarta.servlet.http.HttpServletRequest;
 import ma.atm.atmregistryservice.dto.AgencyDto;
+import ma.atm.atmregistryservice.dto.CursorPageDto;
 import ma.atm.atmregistryservice.model.Agency;
 import ma.atm.atmregistryservice.service.AgencyService;
+import ma.atm.atmregistryservice.service.BulkImportService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/registry/agencies" ) // Base path for agency endpoints
 public class AgencyController {
 
+    private static final int MAX_PAGE_SIZE = 5000;
 
     private final AgencyService agencyService;
+    private final BulkImportService bulkImportService;
 
     @Autowired
-    public AgencyController(AgencyService agencyService) {
+    public AgencyController(AgencyService agencyService, BulkImportService bulkImportService) {
         this.agencyService = agencyService;
+        this.bulkImportService = bulkImportService;
     }
 
     // Convert Agency entity to DTO
@@ -63,12 +72,30 @@ public class AgencyController {
     }
 
     @GetMapping
-    public ResponseEntity<List<AgencyDto>> getAllAgencies() {
-        List<Agency> agencies = agencyService.getAllAgencies();
-        List<AgencyDto> agencyDtos = agencies.stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(agencyDtos);
+    public ResponseEntity<List<AgencyDto>> getAllAgencies(@RequestParam(required = false) String region) {
+        return ResponseEntity.ok(agencyService.findAllAgencies(region));
+    }
+
+    // Keyset pagination: pass the returned nextCursor as "after" to get the next page
+    @GetMapping("/page")
+    public ResponseEntity<CursorPageDto<AgencyDto>> getAgencyPage(@RequestParam(required = false) String after,
+                                                                 @RequestParam(defaultValue = "100") int limit,
+                                                                 @RequestParam(required = false) String region) {
+        return ResponseEntity.ok(agencyService.findAgencies(region, after, Math.min(Math.max(limit, 1), MAX_PAGE_SIZE)));
+    }
+
+    // Bulk import, CSV (with a header row) or NDJSON; existing agencies are updated. Results are streamed as NDJSON.
+    @PostMapping(value = "/import", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> importAgencies(HttpServletRequest request,
+                                                                @RequestParam(required = false) String format,
+                                                                @RequestParam(defaultValue = "false") boolean failuresOnly) throws IOException {
+        BulkImportService.Format importFormat = AtmRegistryController.importFormat(format, request.getContentType());
+        if (importFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        InputStream body = request.getInputStream();
+        StreamingResponseBody results = out -> bulkImportService.importAgencies(body, importFormat, out, failuresOnly);
+        return ResponseEntity.ok(results);
     }
 
     @GetMapping("/{agencyCode}")
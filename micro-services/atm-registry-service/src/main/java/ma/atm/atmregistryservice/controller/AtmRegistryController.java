@@ -1,34 +1,60 @@
 package ma.atm.atmregistryservice.controller;
 
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import ma.atm.atmregistryservice.dto.AtmInfoDto;
 import ma.atm.atmregistryservice.dto.AtmRequest;
+import ma.atm.atmregistryservice.dto.AtmSearchCriteria;
+import ma.atm.atmregistryservice.dto.CursorPageDto;
+import ma.atm.atmregistryservice.dto.NearbyAtmDto;
 import ma.atm.atmregistryservice.model.AtmInfo;
 import ma.atm.atmregistryservice.service.AgencyService;
 import ma.atm.atmregistryservice.service.AtmRegistryService;
+import ma.atm.atmregistryservice.service.AtmSpatialIndex;
+import ma.atm.atmregistryservice.service.BulkImportService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @Slf4j
 @RequestMapping("/api/registry/atms" ) // Base path for ATM endpoints
 public class AtmRegistryController {
 
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final int STREAM_PAGE_SIZE = 1000;
+    private static final int MAX_NEAREST = 1000;
+    private static final int MAX_VIEWPORT_RESULTS = 50000;
 
     private final AtmRegistryService atmRegistryService;
     private final AgencyService agencyService;
+    private final AtmSpatialIndex spatialIndex;
+    private final BulkImportService bulkImportService;
+    private final ObjectWriter atmWriter;
 
     @Autowired
-    public AtmRegistryController(AtmRegistryService atmRegistryService, AgencyService agencyService) {
+    public AtmRegistryController(AtmRegistryService atmRegistryService, AgencyService agencyService,
+                                 AtmSpatialIndex spatialIndex, BulkImportService bulkImportService,
+                                 ObjectMapper objectMapper) {
         this.atmRegistryService = atmRegistryService;
         this.agencyService = agencyService;
+        this.spatialIndex = spatialIndex;
+        this.bulkImportService = bulkImportService;
+        // Lines are written one by one to the response stream, which must stay open
+        this.atmWriter = objectMapper.writerFor(AtmInfoDto.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
 
@@ -45,13 +71,100 @@ public class AtmRegistryController {
         }
     }
 
+    // Bulk import, CSV (with a header row) or NDJSON, streamed both ways. Existing ATMs are updated.
+    // One result per row is streamed back as NDJSON.
+    @PostMapping(value = "/import", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> importAtms(HttpServletRequest request,
+                                                            @RequestParam(required = false) String format,
+                                                            @RequestParam(defaultValue = "false") boolean failuresOnly) throws IOException {
+        BulkImportService.Format importFormat = importFormat(format, request.getContentType());
+        if (importFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        InputStream body = request.getInputStream();
+        StreamingResponseBody results = out -> bulkImportService.importAtms(body, importFormat, out, failuresOnly);
+        return ResponseEntity.ok(results);
+    }
+
+    // Explicit format parameter first, then the content type; NDJSON by default
+    static BulkImportService.Format importFormat(String format, String contentType) {
+        if (format != null) {
+            return switch (format.toLowerCase()) {
+                case "csv" -> BulkImportService.Format.CSV;
+                case "ndjson", "jsonl" -> BulkImportService.Format.NDJSON;
+                default -> null;
+            };
+        }
+        return contentType != null && contentType.toLowerCase().startsWith("text/csv")
+                ? BulkImportService.Format.CSV
+                : BulkImportService.Format.NDJSON;
+    }
+
+    // Whole (optionally filtered) fleet in one response, agencies joined in the same query.
+    // Filters: region, agencyCode, brand, and a bounding box minLatitude/maxLatitude/minLongitude/maxLongitude.
     @GetMapping
-    public ResponseEntity<List<AtmInfoDto>> getAllAtms() {
-        List<AtmInfo> atms = atmRegistryService.getAllAtms();
-        List<AtmInfoDto> atmDtos = atms.stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(atmDtos);
+    public ResponseEntity<List<AtmInfoDto>> getAllAtms(AtmSearchCriteria criteria) {
+        return ResponseEntity.ok(atmRegistryService.findAllAtms(criteria));
+    }
+
+    // Keyset pagination with the same filters: pass the returned nextCursor as "after" to get the next page
+    @GetMapping("/page")
+    public ResponseEntity<CursorPageDto<AtmInfoDto>> getAtmPage(AtmSearchCriteria criteria,
+                                                               @RequestParam(required = false) String after,
+                                                               @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(atmRegistryService.findAtms(criteria, after, Math.min(Math.max(limit, 1), MAX_PAGE_SIZE)));
+    }
+
+    // The whole fleet as NDJSON, one ATM per line. Read page by page, each page in its own short
+    // transaction, and written as it is read, so memory stays flat whatever the fleet size.
+    @GetMapping(value = "/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAtms(AtmSearchCriteria criteria) {
+        StreamingResponseBody body = out -> {
+            OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            String after = null;
+            do {
+                CursorPageDto<AtmInfoDto> page = atmRegistryService.findAtms(criteria, after, STREAM_PAGE_SIZE);
+                for (AtmInfoDto atm : page.getItems()) {
+                    atmWriter.writeValue(buffered, atm);
+                    buffered.write('\n');
+                }
+                buffered.flush();
+                after = page.getNextCursor();
+            } while (after != null);
+        };
+        return ResponseEntity.ok(body);
+    }
+
+    // The k ATMs closest to a point, nearest first, optionally within a radius. Served from the in-memory grid.
+    @GetMapping("/nearest")
+    public ResponseEntity<List<NearbyAtmDto>> getNearestAtms(@RequestParam double latitude,
+                                                             @RequestParam double longitude,
+                                                             @RequestParam(defaultValue = "10") int k,
+                                                             @RequestParam(required = false) Double maxDistanceKm) {
+        if (!isValidPoint(latitude, longitude) || k < 1 || (maxDistanceKm != null && maxDistanceKm < 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(spatialIndex.nearest(latitude, longitude, Math.min(k, MAX_NEAREST),
+                maxDistanceKm != null ? maxDistanceKm : Double.POSITIVE_INFINITY));
+    }
+
+    // ATMs inside a map viewport, bounds included. Served from the in-memory grid.
+    @GetMapping("/viewport")
+    public ResponseEntity<List<AtmInfoDto>> getAtmsInViewport(@RequestParam double minLatitude,
+                                                              @RequestParam double maxLatitude,
+                                                              @RequestParam double minLongitude,
+                                                              @RequestParam double maxLongitude,
+                                                              @RequestParam(defaultValue = "5000") int limit) {
+        if (!isValidPoint(minLatitude, minLongitude) || !isValidPoint(maxLatitude, maxLongitude)
+                || minLatitude > maxLatitude || minLongitude > maxLongitude) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(spatialIndex.within(minLatitude, maxLatitude, minLongitude, maxLongitude,
+                Math.min(Math.max(limit, 1), MAX_VIEWPORT_RESULTS)));
+    }
+
+    private static boolean isValidPoint(double latitude, double longitude) {
+        return Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180;
     }
 
     @GetMapping("/{atmId}")
@@ -98,25 +211,7 @@ public class AtmRegistryController {
 
     // Convert ATM entity to DTO
     private AtmInfoDto convertToDto(AtmInfo atmInfo) {
-        AtmInfoDto dto = new AtmInfoDto();
-        dto.setAtmId(atmInfo.getAtmId());
-        dto.setSerialNumber(atmInfo.getSerialNumber());
-        dto.setBrand(atmInfo.getBrand());
-        dto.setModel(atmInfo.getModel());
-        dto.setLabel(atmInfo.getLabel());
-        dto.setIpAddress(atmInfo.getIpAddress());
-        dto.setRegion(atmInfo.getRegion());
-        dto.setLocationAddress(atmInfo.getLocationAddress());
-        dto.setLocationLatitude(atmInfo.getLocationLatitude());
-        dto.setLocationLongitude(atmInfo.getLocationLongitude());
-
-        // Handle agency relationship
-        if (atmInfo.getAgency() != null) {
-            dto.setAgencyCode(atmInfo.getAgency().getAgencyCode());
-            dto.setAgencyName(atmInfo.getAgency().getAgencyName());
-        }
-
-        return dto;
+        return AtmInfoDto.fromEntity(atmInfo);
     }
 
     // Convert DTO to entity
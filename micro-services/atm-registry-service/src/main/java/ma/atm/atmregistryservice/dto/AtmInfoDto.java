@@ -3,6 +3,7 @@ package ma.atm.atmregistryservice.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ma.atm.atmregistryservice.model.AtmInfo;
 
 @Data
 @NoArgsConstructor
@@ -24,4 +25,27 @@ public class AtmInfoDto {
 
     // Optionally include agency name for convenience
     private String agencyName;
+
+    // Must run inside a transaction when the agency has not been loaded yet
+    public static AtmInfoDto fromEntity(AtmInfo atmInfo) {
+        AtmInfoDto dto = new AtmInfoDto();
+        dto.setAtmId(atmInfo.getAtmId());
+        dto.setSerialNumber(atmInfo.getSerialNumber());
+        dto.setBrand(atmInfo.getBrand());
+        dto.setModel(atmInfo.getModel());
+        dto.setLabel(atmInfo.getLabel());
+        dto.setIpAddress(atmInfo.getIpAddress());
+        dto.setRegion(atmInfo.getRegion());
+        dto.setLocationAddress(atmInfo.getLocationAddress());
+        dto.setLocationLatitude(atmInfo.getLocationLatitude());
+        dto.setLocationLongitude(atmInfo.getLocationLongitude());
+
+        // Handle agency relationship
+        if (atmInfo.getAgency() != null) {
+            dto.setAgencyCode(atmInfo.getAgency().getAgencyCode());
+            dto.setAgencyName(atmInfo.getAgency().getAgencyName());
+        }
+
+        return dto;
+    }
 }
@@ -0,0 +1,21 @@
+package ma.atm.atmregistryservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Optional filters of the ATM listing, bound from query parameters. A null field does not filter.
+ * The bounding box may be given partially, e.g. only a minimum latitude.
+ */
+@Data
+@NoArgsConstructor
+public class AtmSearchCriteria {
+    private String region;
+    private String agencyCode;
+    private String brand;
+
+    private Double minLatitude;
+    private Double maxLatitude;
+    private Double minLongitude;
+    private Double maxLongitude;
+}
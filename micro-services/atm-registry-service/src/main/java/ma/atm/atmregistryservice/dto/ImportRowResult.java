@@ -0,0 +1,36 @@
+package ma.atm.atmregistryservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one row of a bulk import. The line is the 1-based line number in the uploaded file.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRowResult {
+
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+
+    private int line;
+
+    // atmId or agencyCode of the row, when it could be read
+    private String id;
+
+    private boolean success;
+
+    private String action; // CREATED or UPDATED, null on failure
+
+    private String error;
+
+    public static ImportRowResult success(int line, String id, String action) {
+        return new ImportRowResult(line, id, true, action, null);
+    }
+
+    public static ImportRowResult failure(int line, String id, String error) {
+        return new ImportRowResult(line, id, false, null, error);
+    }
+}
@@ -0,0 +1,15 @@
+package ma.atm.atmregistryservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyAtmDto {
+    private AtmInfoDto atm;
+
+    // Great-circle distance from the query point
+    private double distanceKm;
+}
@@ -6,6 +6,7 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -14,7 +15,12 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
 @Entity
-@Table(name = "atm_info")
+@Table(name = "atm_info", indexes = {
+        @Index(name = "idx_atm_info_region", columnList = "region"),
+        @Index(name = "idx_atm_info_brand", columnList = "brand"),
+        @Index(name = "idx_atm_info_agency", columnList = "agency_code_fk"),
+        @Index(name = "idx_atm_info_location", columnList = "location_latitude, location_longitude")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
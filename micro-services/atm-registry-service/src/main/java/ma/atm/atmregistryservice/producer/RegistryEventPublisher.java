@@ -0,0 +1,40 @@
+package ma.atm.atmregistryservice.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.pulsar.core.PulsarTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Forwards registry changes to Pulsar once the transaction that made them has committed.
+ */
+@Component
+@Slf4j
+public class RegistryEventPublisher {
+
+    @Autowired
+    private PulsarTemplate<AtmRegistryChangedEvent> registryEventTemplate;
+
+    @Value("${pulsar.producer.registry-topic}")
+    private String registryTopic;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void publish(AtmRegistryChangedEvent event) {
+        registryEventTemplate.newMessage(event)
+                .withTopic(registryTopic)
+                .withMessageCustomizer(message -> message.key(event.getAtmId()))
+                .sendAsync()
+                .whenComplete((messageId, error) -> {
+                    if (error != null) {
+                        // Consumers also refresh their copy periodically, so a lost event is only delayed
+                        log.error("Failed to publish {} event for ATM {}: {}", event.getChangeType(), event.getAtmId(), error.getMessage(), error);
+                    } else {
+                        log.debug("Published {} event for ATM {}: {}", event.getChangeType(), event.getAtmId(), messageId);
+                    }
+                });
+    }
+}
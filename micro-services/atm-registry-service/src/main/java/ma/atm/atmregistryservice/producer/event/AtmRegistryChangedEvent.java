@@ -0,0 +1,30 @@
+package ma.atm.atmregistryservice.producer.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+
+import java.time.Instant;
+
+/**
+ * Published on the registry topic after an ATM is created, updated or deleted,
+ * so other services can keep a local copy of the registry.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AtmRegistryChangedEvent {
+
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String DELETED = "DELETED";
+
+    private String atmId;
+
+    private String changeType; // CREATED, UPDATED or DELETED
+
+    private AtmInfoDto atm; // null when deleted
+
+    private Instant timestamp;
+}
@@ -9,7 +9,7 @@ import java.util.List;
 
 
 @Repository
-public interface AgencyRepository extends JpaRepository<Agency, String> {
+public interface AgencyRepository extends JpaRepository<Agency, String>, AgencyRepositoryCustom {
     List<Agency> findByRegion(String region);
 }
 
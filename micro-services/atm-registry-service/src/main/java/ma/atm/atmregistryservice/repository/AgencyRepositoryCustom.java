@@ -0,0 +1,15 @@
+package ma.atm.atmregistryservice.repository;
+
+import ma.atm.atmregistryservice.dto.AgencyDto;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+
+/**
+ * Agency queries whose conditions depend on which filters are given, implemented in {@link AgencyRepositoryCustomImpl}.
+ */
+public interface AgencyRepositoryCustom {
+
+    // Keyset page of agencies as DTOs, ordered by agencyCode; only non-null parameters become SQL conditions
+    List<AgencyDto> findDtoPage(String after, String region, Limit limit);
+}
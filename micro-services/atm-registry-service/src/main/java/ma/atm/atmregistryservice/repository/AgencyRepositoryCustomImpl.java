@@ -0,0 +1,47 @@
+package ma.atm.atmregistryservice.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import ma.atm.atmregistryservice.dto.AgencyDto;
+import ma.atm.atmregistryservice.model.Agency;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Same approach as AtmInfoRepositoryCustomImpl: a condition per filter given, none for the others
+public class AgencyRepositoryCustomImpl implements AgencyRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AgencyDto> findDtoPage(String after, String region, Limit limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AgencyDto> query = cb.createQuery(AgencyDto.class);
+        Root<Agency> g = query.from(Agency.class);
+        query.select(cb.construct(AgencyDto.class, g.get("agencyCode"), g.get("agencyName"), g.get("region"),
+                g.get("address"), g.get("contactPerson"), g.get("contactEmail"), g.get("contactPhone")));
+
+        List<Predicate> where = new ArrayList<>();
+        if (after != null) {
+            where.add(cb.greaterThan(g.<String>get("agencyCode"), after));
+        }
+        if (region != null) {
+            where.add(cb.equal(g.get("region"), region));
+        }
+        query.where(where.toArray(new Predicate[0]))
+                .orderBy(cb.asc(g.get("agencyCode")));
+
+        TypedQuery<AgencyDto> typed = entityManager.createQuery(query);
+        if (limit.isLimited()) {
+            typed.setMaxResults(limit.max());
+        }
+        return typed.getResultList();
+    }
+}
@@ -1,12 +1,18 @@
 package ma.atm.atmregistryservice.repository;
 
 
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
 import ma.atm.atmregistryservice.model.AtmInfo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface AtmInfoRepository extends JpaRepository<AtmInfo,String> {
+public interface AtmInfoRepository extends JpaRepository<AtmInfo,String>, AtmInfoRepositoryCustom {
 
     /**
      * Finds an ATM by its serial number.
@@ -15,4 +21,32 @@ public interface AtmInfoRepository extends JpaRepository<AtmInfo,String> {
      * @return the ATM information if found, otherwise null
      */
     AtmInfo findBySerialNumber(String serialNumber);
+
+    /**
+     * Ids of all registered ATMs, without loading the entities.
+     */
+    @Query("select a.atmId from AtmInfo a")
+    List<String> findAllAtmIds();
+
+    @Query("select a.atmId from AtmInfo a where a.atmId in :atmIds")
+    List<String> findExistingIds(@Param("atmIds") Collection<String> atmIds);
+
+    // ATMs as DTOs, agency included, for change events
+    @Query("""
+            select new ma.atm.atmregistryservice.dto.AtmInfoDto(a.atmId, a.serialNumber, a.brand, a.model, a.label,
+                   a.ipAddress, a.region, a.locationAddress, a.locationLatitude, a.locationLongitude,
+                   g.agencyCode, g.agencyName)
+            from AtmInfo a left join a.agency g
+            where a.atmId in :atmIds
+            """)
+    List<AtmInfoDto> findDtosByIds(@Param("atmIds") Collection<String> atmIds);
+
+    @Query("""
+            select new ma.atm.atmregistryservice.dto.AtmInfoDto(a.atmId, a.serialNumber, a.brand, a.model, a.label,
+                   a.ipAddress, a.region, a.locationAddress, a.locationLatitude, a.locationLongitude,
+                   g.agencyCode, g.agencyName)
+            from AtmInfo a join a.agency g
+            where g.agencyCode in :agencyCodes
+            """)
+    List<AtmInfoDto> findDtosByAgencyCodes(@Param("agencyCodes") Collection<String> agencyCodes);
 }
@@ -0,0 +1,21 @@
+package ma.atm.atmregistryservice.repository;
+
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+import ma.atm.atmregistryservice.dto.AtmSearchCriteria;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+
+/**
+ * ATM queries whose conditions depend on which filters are given, implemented in {@link AtmInfoRepositoryCustomImpl}.
+ */
+public interface AtmInfoRepositoryCustom {
+
+    /**
+     * Keyset page of ATMs as DTOs, ordered by atmId. The agency is joined in the same query, so listing
+     * ATMs never loads agencies one by one. Only the filters that are set become SQL conditions.
+     *
+     * @param after Only ATMs whose atmId sorts after this one; null for the first page
+     */
+    List<AtmInfoDto> findDtoPage(AtmSearchCriteria criteria, String after, Limit limit);
+}
@@ -0,0 +1,72 @@
+package ma.atm.atmregistryservice.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+import ma.atm.atmregistryservice.dto.AtmSearchCriteria;
+import ma.atm.atmregistryservice.model.Agency;
+import ma.atm.atmregistryservice.model.AtmInfo;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Built with the Criteria API rather than "(:x is null or ...)" in JPQL, so the planner only sees the
+// conditions that filter and can use the index on each of them
+public class AtmInfoRepositoryCustomImpl implements AtmInfoRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AtmInfoDto> findDtoPage(AtmSearchCriteria criteria, String after, Limit limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AtmInfoDto> query = cb.createQuery(AtmInfoDto.class);
+        Root<AtmInfo> a = query.from(AtmInfo.class);
+        Join<AtmInfo, Agency> g = a.join("agency", JoinType.LEFT);
+        query.select(cb.construct(AtmInfoDto.class, a.get("atmId"), a.get("serialNumber"), a.get("brand"), a.get("model"),
+                a.get("label"), a.get("ipAddress"), a.get("region"), a.get("locationAddress"), a.get("locationLatitude"),
+                a.get("locationLongitude"), g.get("agencyCode"), g.get("agencyName")));
+
+        List<Predicate> where = new ArrayList<>();
+        if (after != null) {
+            where.add(cb.greaterThan(a.<String>get("atmId"), after));
+        }
+        if (criteria.getRegion() != null) {
+            where.add(cb.equal(a.get("region"), criteria.getRegion()));
+        }
+        if (criteria.getAgencyCode() != null) {
+            where.add(cb.equal(g.get("agencyCode"), criteria.getAgencyCode()));
+        }
+        if (criteria.getBrand() != null) {
+            where.add(cb.equal(a.get("brand"), criteria.getBrand()));
+        }
+        if (criteria.getMinLatitude() != null) {
+            where.add(cb.greaterThanOrEqualTo(a.<Double>get("locationLatitude"), criteria.getMinLatitude()));
+        }
+        if (criteria.getMaxLatitude() != null) {
+            where.add(cb.lessThanOrEqualTo(a.<Double>get("locationLatitude"), criteria.getMaxLatitude()));
+        }
+        if (criteria.getMinLongitude() != null) {
+            where.add(cb.greaterThanOrEqualTo(a.<Double>get("locationLongitude"), criteria.getMinLongitude()));
+        }
+        if (criteria.getMaxLongitude() != null) {
+            where.add(cb.lessThanOrEqualTo(a.<Double>get("locationLongitude"), criteria.getMaxLongitude()));
+        }
+        query.where(where.toArray(new Predicate[0]))
+                .orderBy(cb.asc(a.get("atmId")));
+
+        TypedQuery<AtmInfoDto> typed = entityManager.createQuery(query);
+        if (limit.isLimited()) {
+            typed.setMaxResults(limit.max());
+        }
+        return typed.getResultList();
+    }
+}
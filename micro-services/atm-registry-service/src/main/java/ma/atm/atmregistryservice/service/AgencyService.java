@@ -1,29 +1,52 @@
 package ma.atm.atmregistryservice.service;
 
 
+import ma.atm.atmregistryservice.dto.AgencyDto;
+import ma.atm.atmregistryservice.dto.CursorPageDto;
 import ma.atm.atmregistryservice.model.Agency;
 import ma.atm.atmregistryservice.repository.AgencyRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 public class AgencyService {
 
     private final AgencyRepository agencyRepository;
+    private final AtmRegistryService atmRegistryService;
 
     @Autowired
-    public AgencyService(AgencyRepository agencyRepository) {
+    public AgencyService(AgencyRepository agencyRepository, AtmRegistryService atmRegistryService) {
         this.agencyRepository = agencyRepository;
+        this.atmRegistryService = atmRegistryService;
     }
 
     @Transactional(readOnly = true)
     public List<Agency> getAllAgencies() {
         return agencyRepository.findAll();
-        // Consider pagination
+    }
+
+    // Agencies as DTOs straight from the query, without loading entities
+    @Transactional(readOnly = true)
+    public List<AgencyDto> findAllAgencies(String region) {
+        return agencyRepository.findDtoPage(null, region, Limit.unlimited());
+    }
+
+    // Keyset page ordered by agencyCode
+    @Transactional(readOnly = true)
+    public CursorPageDto<AgencyDto> findAgencies(String region, String after, int limit) {
+        List<AgencyDto> rows = agencyRepository.findDtoPage(after, region, Limit.of(limit + 1));
+        if (rows.size() <= limit) {
+            return new CursorPageDto<>(rows, null);
+        }
+        List<AgencyDto> items = new ArrayList<>(rows.subList(0, limit));
+        return new CursorPageDto<>(items, items.get(limit - 1).getAgencyCode());
     }
 
     @Transactional(readOnly = true)
@@ -45,6 +68,7 @@ public class AgencyService {
     public Optional<Agency> updateAgency(String agencyCode, Agency updatedAgency) {
         return agencyRepository.findById(agencyCode)
                 .map(existingAgency -> {
+                    boolean renamed = !Objects.equals(existingAgency.getAgencyName(), updatedAgency.getAgencyName());
                     existingAgency.setAgencyName(updatedAgency.getAgencyName());
                     existingAgency.setRegion(updatedAgency.getRegion());
                     existingAgency.setAddress(updatedAgency.getAddress());
@@ -52,7 +76,12 @@ public class AgencyService {
                     existingAgency.setContactEmail(updatedAgency.getContactEmail());
                     existingAgency.setContactPhone(updatedAgency.getContactPhone());
                     // Do not update the 'atms' collection here
-                    return agencyRepository.save(existingAgency);
+                    Agency saved = agencyRepository.save(existingAgency);
+                    if (renamed) {
+                        // The agency name is part of every ATM event of the agency
+                        atmRegistryService.publishAgencyChange(List.of(agencyCode));
+                    }
+                    return saved;
                 });
     }
 
@@ -2,14 +2,23 @@ package ma.atm.atmregistryservice.service;
 
 
 import jakarta.persistence.EntityNotFoundException;
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+import ma.atm.atmregistryservice.dto.AtmSearchCriteria;
+import ma.atm.atmregistryservice.dto.CursorPageDto;
 import ma.atm.atmregistryservice.model.Agency;
 import ma.atm.atmregistryservice.model.AtmInfo;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
 import ma.atm.atmregistryservice.repository.AgencyRepository;
 import ma.atm.atmregistryservice.repository.AtmInfoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,11 +27,14 @@ public class AtmRegistryService {
 
     private final AtmInfoRepository atmInfoRepository;
     private final AgencyRepository agencyRepository; // Inject AgencyRepository
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public AtmRegistryService(AtmInfoRepository atmInfoRepository, AgencyRepository agencyRepository) {
+    public AtmRegistryService(AtmInfoRepository atmInfoRepository, AgencyRepository agencyRepository,
+                              ApplicationEventPublisher eventPublisher) {
         this.atmInfoRepository = atmInfoRepository;
         this.agencyRepository = agencyRepository; // Initialize
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional(readOnly = true)
@@ -30,6 +42,33 @@ public class AtmRegistryService {
         return atmInfoRepository.findAll();
     }
 
+    /**
+     * All ATMs matching the criteria as DTOs, agency included, in a single query.
+     */
+    @Transactional(readOnly = true)
+    public List<AtmInfoDto> findAllAtms(AtmSearchCriteria criteria) {
+        return findDtoPage(criteria, null, Limit.unlimited());
+    }
+
+    /**
+     * One keyset page of the ATMs matching the criteria, ordered by atmId. Unlike an offset, the cursor
+     * costs the same on every page and does not skip or repeat ATMs when others are added in between.
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDto<AtmInfoDto> findAtms(AtmSearchCriteria criteria, String after, int limit) {
+        // One extra row tells whether there is a next page
+        List<AtmInfoDto> rows = findDtoPage(criteria, after, Limit.of(limit + 1));
+        if (rows.size() <= limit) {
+            return new CursorPageDto<>(rows, null);
+        }
+        List<AtmInfoDto> items = new ArrayList<>(rows.subList(0, limit));
+        return new CursorPageDto<>(items, items.get(limit - 1).getAtmId());
+    }
+
+    private List<AtmInfoDto> findDtoPage(AtmSearchCriteria criteria, String after, Limit limit) {
+        return atmInfoRepository.findDtoPage(criteria, after, limit);
+    }
+
     @Transactional(readOnly = true)
     public Optional<AtmInfo> getAtmById(String atmId) {
         return atmInfoRepository.findById(atmId);
@@ -49,7 +88,9 @@ public class AtmRegistryService {
         }
         //Agency agency = findAgencyByCode(agencyCode);
         //atmInfo.setAgency(agency); // Set the relationship
-        return atmInfoRepository.save(atmInfo);
+        AtmInfo created = atmInfoRepository.save(atmInfo);
+        publishChange(AtmRegistryChangedEvent.CREATED, created.getAtmId(), created);
+        return created;
     }
 
     // Modified updateAtm to handle agency change
@@ -70,7 +111,9 @@ public class AtmRegistryService {
                     existingAtm.setLocationLatitude(updatedAtmInfo.getLocationLatitude());
                     existingAtm.setLocationLongitude(updatedAtmInfo.getLocationLongitude());
 
-                    return atmInfoRepository.save(existingAtm);
+                    AtmInfo updated = atmInfoRepository.save(existingAtm);
+                    publishChange(AtmRegistryChangedEvent.UPDATED, atmId, updated);
+                    return updated;
                 });
     }
 
@@ -78,6 +121,7 @@ public class AtmRegistryService {
     public boolean deleteAtm(String atmId) {
         if (atmInfoRepository.existsById(atmId)) {
             atmInfoRepository.deleteById(atmId);
+            publishChange(AtmRegistryChangedEvent.DELETED, atmId, null);
             return true;
         }
         return false;
@@ -87,4 +131,22 @@ public class AtmRegistryService {
     public boolean atmExists(String atmId) {
         return atmInfoRepository.existsById(atmId);
     }
+
+    /**
+     * Publishes an UPDATED event for every ATM of these agencies, since ATM events carry the agency name.
+     * Runs in the caller's transaction, so the events go out once the agency change has committed.
+     */
+    @Transactional
+    public void publishAgencyChange(Collection<String> agencyCodes) {
+        Instant now = Instant.now();
+        for (AtmInfoDto atm : atmInfoRepository.findDtosByAgencyCodes(agencyCodes)) {
+            eventPublisher.publishEvent(new AtmRegistryChangedEvent(atm.getAtmId(), AtmRegistryChangedEvent.UPDATED, atm, now));
+        }
+    }
+
+    // Sent to Pulsar by RegistryEventPublisher after commit; the DTO is built here while the agency can still be loaded
+    private void publishChange(String changeType, String atmId, AtmInfo atmInfo) {
+        AtmInfoDto atm = atmInfo != null ? AtmInfoDto.fromEntity(atmInfo) : null;
+        eventPublisher.publishEvent(new AtmRegistryChangedEvent(atmId, changeType, atm, Instant.now()));
+    }
 }
@@ -0,0 +1,243 @@
+package ma.atm.atmregistryservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+import ma.atm.atmregistryservice.dto.AtmSearchCriteria;
+import ma.atm.atmregistryservice.dto.NearbyAtmDto;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory grid index of ATM locations, for nearest-ATM and map viewport queries.
+ *
+ * <p>The map is cut into square cells of {@code registry.spatial.cell-size-degrees}; each cell holds the ATMs
+ * located in it. A viewport query only visits the cells it overlaps, and a k-nearest query visits rings of
+ * cells around the point until no unvisited cell can hold anything closer. Both cost a few cells' worth of ATMs
+ * rather than the whole fleet.
+ *
+ * <p>Built from the database at startup and kept current like {@link KnownAtmIds}: from this instance's
+ * registry changes once they commit, and from the registry topic for the changes of every instance. ATMs
+ * without coordinates are not indexed. Longitudes do not wrap around the antimeridian.
+ */
+@Component
+@Slf4j
+public class AtmSpatialIndex {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private record Point(AtmInfoDto atm, double latitude, double longitude, long cell) {
+    }
+
+    private final AtmRegistryService atmRegistryService;
+    private final double cellDegrees;
+
+    private final Map<Long, Map<String, Point>> cells = new ConcurrentHashMap<>();
+    private final Map<String, Point> byAtmId = new ConcurrentHashMap<>();
+
+    public AtmSpatialIndex(AtmRegistryService atmRegistryService,
+                           MeterRegistry meterRegistry,
+                           @Value("${registry.spatial.cell-size-degrees:0.05}") double cellDegrees) {
+        this.atmRegistryService = atmRegistryService;
+        this.cellDegrees = cellDegrees;
+
+        Gauge.builder("atm.registry.spatial.indexed", byAtmId, Map::size)
+                .description("ATMs with coordinates in the spatial index")
+                .register(meterRegistry);
+        Gauge.builder("atm.registry.spatial.cells", cells, Map::size)
+                .description("Non-empty cells of the spatial index")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        List<AtmInfoDto> atms = atmRegistryService.findAllAtms(new AtmSearchCriteria());
+        atms.forEach(this::put);
+        log.info("Indexed {} of {} ATMs in {} cells", byAtmId.size(), atms.size(), cells.size());
+    }
+
+    // Also called by RegistryEventListener for the changes of the other instances
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onRegistryChanged(AtmRegistryChangedEvent event) {
+        if (AtmRegistryChangedEvent.DELETED.equals(event.getChangeType()) || event.getAtm() == null) {
+            remove(event.getAtmId());
+        } else {
+            put(event.getAtm());
+        }
+    }
+
+    /**
+     * @return Up to {@code k} ATMs closest to the point, nearest first, within {@code maxDistanceKm}.
+     */
+    public List<NearbyAtmDto> nearest(double latitude, double longitude, int k, double maxDistanceKm) {
+        // Max-heap on distance holding the best k so far
+        PriorityQueue<NearbyAtmDto> best = new PriorityQueue<>(k + 1,
+                Comparator.comparingDouble(NearbyAtmDto::getDistanceKm).reversed());
+        int row = cellIndex(latitude);
+        int col = cellIndex(longitude);
+        int maxRing = maxRing(latitude, maxDistanceKm);
+        long lookups = 0;
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Far from any ATM the rings are mostly empty; past this point scanning every cell is cheaper
+            lookups += ring == 0 ? 1 : 8L * ring;
+            if (lookups > cells.size()) {
+                best.clear();
+                cells.values().forEach(cell -> offer(cell, latitude, longitude, k, maxDistanceKm, best));
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                for (int c = col - ring; c <= col + ring; c++) {
+                    // Only the border of the ring; the inside was visited already
+                    if (Math.abs(r - row) != ring && Math.abs(c - col) != ring) {
+                        continue;
+                    }
+                    Map<String, Point> cell = cells.get(cellKey(r, c));
+                    if (cell != null) {
+                        offer(cell, latitude, longitude, k, maxDistanceKm, best);
+                    }
+                }
+            }
+            // Anything in a farther ring is at least this far away
+            if (best.size() == k && best.peek().getDistanceKm() <= coveredKm(latitude, ring)) {
+                break;
+            }
+        }
+
+        List<NearbyAtmDto> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(NearbyAtmDto::getDistanceKm));
+        return result;
+    }
+
+    private static void offer(Map<String, Point> cell, double latitude, double longitude, int k, double maxDistanceKm,
+                              PriorityQueue<NearbyAtmDto> best) {
+        for (Point point : cell.values()) {
+            double distance = distanceKm(latitude, longitude, point.latitude(), point.longitude());
+            if (distance > maxDistanceKm) {
+                continue;
+            }
+            if (best.size() < k) {
+                best.add(new NearbyAtmDto(point.atm(), distance));
+            } else if (distance < best.peek().getDistanceKm()) {
+                best.poll();
+                best.add(new NearbyAtmDto(point.atm(), distance));
+            }
+        }
+    }
+
+    /**
+     * @return Up to {@code limit} ATMs located inside the box, bounds included, in no particular order.
+     */
+    public List<AtmInfoDto> within(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude, int limit) {
+        List<AtmInfoDto> result = new ArrayList<>();
+        int minRow = cellIndex(minLatitude);
+        int maxRow = cellIndex(maxLatitude);
+        int minCol = cellIndex(minLongitude);
+        int maxCol = cellIndex(maxLongitude);
+        long boxCells = (long) (maxRow - minRow + 1) * (maxCol - minCol + 1);
+
+        if (boxCells > cells.size()) {
+            // Zoomed far out: fewer non-empty cells than cells in the box
+            for (Map<String, Point> cell : cells.values()) {
+                if (!collect(cell, minLatitude, maxLatitude, minLongitude, maxLongitude, limit, result)) {
+                    break;
+                }
+            }
+            return result;
+        }
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                Map<String, Point> cell = cells.get(cellKey(r, c));
+                if (cell != null && !collect(cell, minLatitude, maxLatitude, minLongitude, maxLongitude, limit, result)) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // @return false once the limit is reached
+    private static boolean collect(Map<String, Point> cell, double minLatitude, double maxLatitude,
+                                   double minLongitude, double maxLongitude, int limit, List<AtmInfoDto> result) {
+        for (Point point : cell.values()) {
+            if (point.latitude() >= minLatitude && point.latitude() <= maxLatitude
+                    && point.longitude() >= minLongitude && point.longitude() <= maxLongitude) {
+                if (result.size() >= limit) {
+                    return false;
+                }
+                result.add(point.atm());
+            }
+        }
+        return true;
+    }
+
+    private synchronized void put(AtmInfoDto atm) {
+        remove(atm.getAtmId());
+        Double latitude = atm.getLocationLatitude();
+        Double longitude = atm.getLocationLongitude();
+        if (latitude == null || longitude == null || Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            return;
+        }
+        Point point = new Point(atm, latitude, longitude, cellKey(cellIndex(latitude), cellIndex(longitude)));
+        cells.computeIfAbsent(point.cell(), key -> new ConcurrentHashMap<>()).put(atm.getAtmId(), point);
+        byAtmId.put(atm.getAtmId(), point);
+    }
+
+    private synchronized void remove(String atmId) {
+        Point previous = byAtmId.remove(atmId);
+        if (previous == null) {
+            return;
+        }
+        cells.computeIfPresent(previous.cell(), (key, cell) -> {
+            cell.remove(atmId);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    // Distance from the point that every cell outside this ring is guaranteed to exceed. Cells are narrower
+    // east-west away from the equator, so the width is taken at the highest latitude the ring reaches.
+    private double coveredKm(double latitude, int ring) {
+        double farthestLatitude = Math.min(89.9, Math.abs(latitude) + (ring + 1) * cellDegrees);
+        return ring * cellDegrees * KM_PER_DEGREE * Math.cos(Math.toRadians(farthestLatitude));
+    }
+
+    // Last ring that can hold a point within maxDistanceKm, capped to the whole map
+    private int maxRing(double latitude, double maxDistanceKm) {
+        int wholeMap = (int) Math.ceil(360 / cellDegrees);
+        double cellWidthKm = cellDegrees * KM_PER_DEGREE * Math.cos(Math.toRadians(Math.min(89.9, Math.abs(latitude))));
+        if (Double.isInfinite(maxDistanceKm) || cellWidthKm <= 0) {
+            return wholeMap;
+        }
+        // The ring width shrinks at higher latitudes, so give the bound a little slack
+        return (int) Math.min(wholeMap, Math.ceil(2 * maxDistanceKm / cellWidthKm) + 1);
+    }
+
+    private static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
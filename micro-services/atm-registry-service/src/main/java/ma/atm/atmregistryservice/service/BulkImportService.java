@@ -0,0 +1,419 @@
+package ma.atm.atmregistryservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmregistryservice.dto.AgencyDto;
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+import ma.atm.atmregistryservice.dto.AtmRequest;
+import ma.atm.atmregistryservice.dto.ImportRowResult;
+import ma.atm.atmregistryservice.model.Agency;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import ma.atm.atmregistryservice.repository.AgencyRepository;
+import ma.atm.atmregistryservice.repository.AtmInfoRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bulk import of ATMs and agencies from CSV or NDJSON uploads.
+ *
+ * <p>The upload is read line by line and handled in chunks of {@code registry.bulk.chunk-size} rows, so only
+ * one chunk is held in memory. Per chunk: rows are validated, the agencies they reference are resolved in one
+ * query, and the valid rows are written with a single JDBC batch of upserts in one transaction. A row that
+ * already exists is updated with the imported values; columns the row leaves empty keep their current value.
+ * One {@link ImportRowResult} per row is streamed back as NDJSON after every chunk.
+ *
+ * <p>CSV files need a header row naming the columns after the JSON fields (e.g. {@code atmId,brand,agencyCode});
+ * unknown columns are ignored and empty cells are null. Fields cannot span several lines.
+ *
+ * <p>Each imported ATM publishes the usual registry change event, so the registry caches and other services see
+ * it like an ATM created through the API. Renaming an agency publishes an update of each of its ATMs, whose
+ * events carry the agency name.
+ */
+@Service
+@Slf4j
+public class BulkImportService {
+
+    public enum Format { CSV, NDJSON }
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final String UPSERT_ATM = """
+            INSERT INTO atm_info (atm_id, serial_number, brand, model, label, ip_address, region, location_address,
+                                  location_latitude, location_longitude, agency_code_fk)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (atm_id) DO UPDATE SET
+                serial_number = COALESCE(EXCLUDED.serial_number, atm_info.serial_number),
+                brand = COALESCE(EXCLUDED.brand, atm_info.brand),
+                model = COALESCE(EXCLUDED.model, atm_info.model),
+                label = COALESCE(EXCLUDED.label, atm_info.label),
+                ip_address = COALESCE(EXCLUDED.ip_address, atm_info.ip_address),
+                region = COALESCE(EXCLUDED.region, atm_info.region),
+                location_address = COALESCE(EXCLUDED.location_address, atm_info.location_address),
+                location_latitude = COALESCE(EXCLUDED.location_latitude, atm_info.location_latitude),
+                location_longitude = COALESCE(EXCLUDED.location_longitude, atm_info.location_longitude),
+                agency_code_fk = COALESCE(EXCLUDED.agency_code_fk, atm_info.agency_code_fk)
+            """;
+
+    private static final String UPSERT_AGENCY = """
+            INSERT INTO agency (agency_code, agency_name, region, address, contact_person, contact_email, contact_phone)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (agency_code) DO UPDATE SET
+                agency_name = COALESCE(EXCLUDED.agency_name, agency.agency_name),
+                region = COALESCE(EXCLUDED.region, agency.region),
+                address = COALESCE(EXCLUDED.address, agency.address),
+                contact_person = COALESCE(EXCLUDED.contact_person, agency.contact_person),
+                contact_email = COALESCE(EXCLUDED.contact_email, agency.contact_email),
+                contact_phone = COALESCE(EXCLUDED.contact_phone, agency.contact_phone)
+            """;
+
+    private record Row<T>(int line, T value) {
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter<T> {
+        List<ImportRowResult> write(List<Row<T>> rows);
+    }
+
+    private final AtmInfoRepository atmInfoRepository;
+    private final AgencyRepository agencyRepository;
+    private final AtmRegistryService atmRegistryService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${registry.bulk.chunk-size:1000}")
+    private int chunkSize;
+
+    public BulkImportService(AtmInfoRepository atmInfoRepository,
+                             AgencyRepository agencyRepository,
+                             AtmRegistryService atmRegistryService,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             ApplicationEventPublisher eventPublisher,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.atmInfoRepository = atmInfoRepository;
+        this.agencyRepository = agencyRepository;
+        this.atmRegistryService = atmRegistryService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void importAtms(InputStream body, Format format, OutputStream results, boolean failuresOnly) throws IOException {
+        importRows("atm", body, format, AtmRequest.class, this::writeAtms, results, failuresOnly);
+    }
+
+    public void importAgencies(InputStream body, Format format, OutputStream results, boolean failuresOnly) throws IOException {
+        importRows("agency", body, format, AgencyDto.class, this::writeAgencies, results, failuresOnly);
+    }
+
+    // --- Reading ---
+
+    private <T> void importRows(String kind, InputStream body, Format format, Class<T> type,
+                                ChunkWriter<T> chunkWriter, OutputStream results, boolean failuresOnly) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(results, StandardCharsets.UTF_8));
+
+        List<Row<T>> chunk = new ArrayList<>(chunkSize);
+        List<ImportRowResult> unreadable = new ArrayList<>();
+        List<String> header = null;
+        int lineNumber = 0;
+        int[] totals = new int[2]; // imported, failed
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && header == null) {
+                header = parseCsvLine(line.startsWith("\uFEFF") ? line.substring(1) : line);
+                continue;
+            }
+            try {
+                T value = format == Format.CSV
+                        ? objectMapper.convertValue(toFields(header, parseCsvLine(line)), type)
+                        : objectMapper.readValue(line, type);
+                chunk.add(new Row<>(lineNumber, value));
+            } catch (Exception e) {
+                unreadable.add(ImportRowResult.failure(lineNumber, null, "Unreadable row: " + e.getMessage()));
+            }
+            if (chunk.size() + unreadable.size() >= chunkSize) {
+                flushChunk(kind, chunk, unreadable, chunkWriter, writer, failuresOnly, totals);
+            }
+        }
+        if (!chunk.isEmpty() || !unreadable.isEmpty()) {
+            flushChunk(kind, chunk, unreadable, chunkWriter, writer, failuresOnly, totals);
+        }
+        writer.flush();
+
+        log.info("Bulk {} import read {} lines: {} imported, {} failed", kind, lineNumber, totals[0], totals[1]);
+    }
+
+    private <T> void flushChunk(String kind, List<Row<T>> chunk, List<ImportRowResult> unreadable, ChunkWriter<T> chunkWriter,
+                                Writer writer, boolean failuresOnly, int[] totals) throws IOException {
+        List<ImportRowResult> results = new ArrayList<>(chunk.size() + unreadable.size());
+        if (!chunk.isEmpty()) {
+            results.addAll(chunkWriter.write(chunk));
+        }
+        results.addAll(unreadable);
+        results.sort(Comparator.comparingInt(ImportRowResult::getLine));
+
+        int failed = 0;
+        for (ImportRowResult result : results) {
+            if (!result.isSuccess()) {
+                failed++;
+            } else if (failuresOnly) {
+                continue;
+            }
+            writer.write(objectMapper.writeValueAsString(result));
+            writer.write('\n');
+        }
+        writer.flush();
+
+        totals[0] += results.size() - failed;
+        totals[1] += failed;
+        meterRegistry.counter("atm.registry.import.rows", "kind", kind, "outcome", "success").increment(results.size() - failed);
+        meterRegistry.counter("atm.registry.import.rows", "kind", kind, "outcome", "failure").increment(failed);
+
+        chunk.clear();
+        unreadable.clear();
+    }
+
+    // --- ATMs ---
+
+    private List<ImportRowResult> writeAtms(List<Row<AtmRequest>> rows) {
+        List<ImportRowResult> results = new ArrayList<>(rows.size());
+        Map<String, Row<AtmRequest>> valid = new LinkedHashMap<>();
+        Set<String> agencyCodes = new HashSet<>();
+        for (Row<AtmRequest> row : rows) {
+            AtmRequest atm = row.value();
+            String error = validateAtm(atm);
+            if (error == null && valid.containsKey(atm.getAtmId())) {
+                error = "Duplicate atmId, already at line " + valid.get(atm.getAtmId()).line();
+            }
+            if (error != null) {
+                results.add(ImportRowResult.failure(row.line(), atm.getAtmId(), error));
+                continue;
+            }
+            valid.put(atm.getAtmId(), row);
+            if (atm.getAgencyCode() != null) {
+                agencyCodes.add(atm.getAgencyCode());
+            }
+        }
+
+        // Every agency referenced by the chunk in one query
+        Map<String, Agency> agencies = new HashMap<>();
+        if (!agencyCodes.isEmpty()) {
+            agencyRepository.findAllById(agencyCodes).forEach(agency -> agencies.put(agency.getAgencyCode(), agency));
+        }
+        valid.values().removeIf(row -> {
+            String agencyCode = row.value().getAgencyCode();
+            if (agencyCode != null && !agencies.containsKey(agencyCode)) {
+                results.add(ImportRowResult.failure(row.line(), row.value().getAtmId(), "Agency not found with code: " + agencyCode));
+                return true;
+            }
+            return false;
+        });
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        List<Row<AtmRequest>> toWrite = new ArrayList<>(valid.values());
+        try {
+            Set<String> existing = transactionTemplate.execute(status -> {
+                Set<String> existingIds = new HashSet<>(atmInfoRepository.findExistingIds(valid.keySet()));
+                jdbcTemplate.batchUpdate(UPSERT_ATM, toWrite, toWrite.size(), (ps, row) -> {
+                    AtmRequest atm = row.value();
+                    ps.setString(1, atm.getAtmId());
+                    ps.setString(2, atm.getSerialNumber());
+                    ps.setString(3, atm.getBrand());
+                    ps.setString(4, atm.getModel());
+                    ps.setString(5, atm.getLabel());
+                    ps.setString(6, atm.getIpAddress());
+                    ps.setString(7, atm.getRegion());
+                    ps.setString(8, atm.getLocationAddress());
+                    ps.setObject(9, atm.getLocationLatitude());
+                    ps.setObject(10, atm.getLocationLongitude());
+                    ps.setString(11, atm.getAgencyCode());
+                });
+                // Delivered after commit, like the events of single creates and updates. Read back, since
+                // columns the rows left empty kept their stored value.
+                Instant now = Instant.now();
+                for (AtmInfoDto atm : atmInfoRepository.findDtosByIds(valid.keySet())) {
+                    String changeType = existingIds.contains(atm.getAtmId()) ? AtmRegistryChangedEvent.UPDATED : AtmRegistryChangedEvent.CREATED;
+                    eventPublisher.publishEvent(new AtmRegistryChangedEvent(atm.getAtmId(), changeType, atm, now));
+                }
+                return existingIds;
+            });
+            for (Row<AtmRequest> row : toWrite) {
+                String id = row.value().getAtmId();
+                results.add(ImportRowResult.success(row.line(), id,
+                        existing.contains(id) ? ImportRowResult.UPDATED : ImportRowResult.CREATED));
+            }
+        } catch (DataAccessException e) {
+            String error = "Batch write failed: " + e.getMostSpecificCause().getMessage();
+            log.error("Failed to import a chunk of {} ATMs: {}", toWrite.size(), error, e);
+            toWrite.forEach(row -> results.add(ImportRowResult.failure(row.line(), row.value().getAtmId(), error)));
+        }
+        return results;
+    }
+
+    private static String validateAtm(AtmRequest atm) {
+        if (atm.getAtmId() == null || atm.getAtmId().isBlank()) {
+            return "atmId is required";
+        }
+        if ((atm.getLocationLatitude() == null) != (atm.getLocationLongitude() == null)) {
+            return "locationLatitude and locationLongitude must be given together";
+        }
+        if (atm.getLocationLatitude() != null
+                && (Math.abs(atm.getLocationLatitude()) > 90 || Math.abs(atm.getLocationLongitude()) > 180)) {
+            return "Coordinates out of range";
+        }
+        return null;
+    }
+
+    // --- Agencies ---
+
+    private List<ImportRowResult> writeAgencies(List<Row<AgencyDto>> rows) {
+        List<ImportRowResult> results = new ArrayList<>(rows.size());
+        Map<String, Row<AgencyDto>> valid = new LinkedHashMap<>();
+        for (Row<AgencyDto> row : rows) {
+            AgencyDto agency = row.value();
+            String error = null;
+            if (agency.getAgencyCode() == null || agency.getAgencyCode().isBlank()) {
+                error = "agencyCode is required";
+            } else if (agency.getAgencyName() == null || agency.getAgencyName().isBlank()) {
+                error = "agencyName is required";
+            } else if (valid.containsKey(agency.getAgencyCode())) {
+                error = "Duplicate agencyCode, already at line " + valid.get(agency.getAgencyCode()).line();
+            }
+            if (error != null) {
+                results.add(ImportRowResult.failure(row.line(), agency.getAgencyCode(), error));
+            } else {
+                valid.put(agency.getAgencyCode(), row);
+            }
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        List<Row<AgencyDto>> toWrite = new ArrayList<>(valid.values());
+        try {
+            Set<String> existing = transactionTemplate.execute(status -> {
+                Map<String, String> previousNames = new HashMap<>();
+                agencyRepository.findAllById(valid.keySet())
+                        .forEach(agency -> previousNames.put(agency.getAgencyCode(), agency.getAgencyName()));
+                jdbcTemplate.batchUpdate(UPSERT_AGENCY, toWrite, toWrite.size(), (ps, row) -> {
+                    AgencyDto agency = row.value();
+                    ps.setString(1, agency.getAgencyCode());
+                    ps.setString(2, agency.getAgencyName());
+                    ps.setString(3, agency.getRegion());
+                    ps.setString(4, agency.getAddress());
+                    ps.setString(5, agency.getContactPerson());
+                    ps.setString(6, agency.getContactEmail());
+                    ps.setString(7, agency.getContactPhone());
+                });
+                List<String> renamed = new ArrayList<>();
+                for (Row<AgencyDto> row : toWrite) {
+                    String code = row.value().getAgencyCode();
+                    if (previousNames.containsKey(code) && !Objects.equals(previousNames.get(code), row.value().getAgencyName())) {
+                        renamed.add(code);
+                    }
+                }
+                if (!renamed.isEmpty()) {
+                    atmRegistryService.publishAgencyChange(renamed);
+                }
+                return previousNames.keySet();
+            });
+            for (Row<AgencyDto> row : toWrite) {
+                String code = row.value().getAgencyCode();
+                results.add(ImportRowResult.success(row.line(), code,
+                        existing.contains(code) ? ImportRowResult.UPDATED : ImportRowResult.CREATED));
+            }
+        } catch (DataAccessException e) {
+            String error = "Batch write failed: " + e.getMostSpecificCause().getMessage();
+            log.error("Failed to import a chunk of {} agencies: {}", toWrite.size(), error, e);
+            toWrite.forEach(row -> results.add(ImportRowResult.failure(row.line(), row.value().getAgencyCode(), error)));
+        }
+        return results;
+    }
+
+    // --- CSV ---
+
+    private static Map<String, String> toFields(List<String> header, List<String> values) {
+        if (values.size() > header.size()) {
+            throw new IllegalArgumentException("expected at most " + header.size() + " columns, got " + values.size());
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i).trim();
+            if (!value.isEmpty()) {
+                fields.put(header.get(i).trim(), value);
+            }
+        }
+        return fields;
+    }
+
+    // One RFC 4180 record: comma separated, fields optionally quoted, "" is an escaped quote
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,89 @@
+package ma.atm.atmregistryservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import ma.atm.atmregistryservice.repository.AtmInfoRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory set of the ATM ids in the registry, so the state listeners can tell known ATMs apart without
+ * a database round trip per event.
+ *
+ * <p>Loaded from the database at startup, before the Pulsar listeners start, and kept current from the
+ * registry change events: this instance's own once their transaction has committed, and every instance's from
+ * the registry topic, so ATMs deleted elsewhere leave the set too. An id missing from the set is not proof that
+ * the ATM is unknown (its creation may not have arrived yet): callers check the database then, and add the id
+ * when it turns out to exist. The check can race with a delete made on another instance, so callers take a
+ * {@link #removalMark()} before it, and {@link #addUnlessRemovedSince} skips the add if any id was removed since.
+ */
+@Component
+@Slf4j
+public class KnownAtmIds {
+
+    private final AtmInfoRepository atmInfoRepository;
+
+    private final Set<String> atmIds = ConcurrentHashMap.newKeySet();
+
+    // Ids removed so far; guarded by this, together with the removals themselves
+    private long removals;
+
+    public KnownAtmIds(AtmInfoRepository atmInfoRepository, MeterRegistry meterRegistry) {
+        this.atmInfoRepository = atmInfoRepository;
+
+        Gauge.builder("atm.registry.known.size", atmIds, Set::size)
+                .description("ATM ids held in the in-memory membership set")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        atmIds.addAll(atmInfoRepository.findAllAtmIds());
+        log.info("Loaded {} known ATM ids", atmIds.size());
+    }
+
+    public boolean contains(String atmId) {
+        return atmIds.contains(atmId);
+    }
+
+    /**
+     * @return A mark to pass to {@link #addUnlessRemovedSince}, taken before checking the database.
+     */
+    public synchronized long removalMark() {
+        return removals;
+    }
+
+    /**
+     * Adds an id found in the database, unless an id was removed since the mark was taken: that removal may be
+     * the deletion of this very ATM, committed after the database was read. The id is then checked again on
+     * its next event.
+     *
+     * @return Whether the id was added.
+     */
+    public synchronized boolean addUnlessRemovedSince(String atmId, long mark) {
+        if (removals != mark) {
+            return false;
+        }
+        atmIds.add(atmId);
+        return true;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onRegistryChanged(AtmRegistryChangedEvent event) {
+        if (AtmRegistryChangedEvent.DELETED.equals(event.getChangeType())) {
+            synchronized (this) {
+                atmIds.remove(event.getAtmId());
+                removals++;
+            }
+        } else {
+            atmIds.add(event.getAtmId());
+        }
+    }
+}
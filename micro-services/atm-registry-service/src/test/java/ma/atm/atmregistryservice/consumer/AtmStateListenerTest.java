@@ -0,0 +1,106 @@
+package ma.atm.atmregistryservice.consumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmregistryservice.consumer.event.AtmSeenEvent;
+import ma.atm.atmregistryservice.model.AtmInfo;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import ma.atm.atmregistryservice.repository.AtmInfoRepository;
+import ma.atm.atmregistryservice.service.AtmRegistryService;
+import ma.atm.atmregistryservice.service.KnownAtmIds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AtmStateListenerTest {
+
+	private AtmRegistryService atmRegistryService;
+	private KnownAtmIds knownAtmIds;
+	private AtmStateListener listener;
+
+	@BeforeEach
+	void setUp() {
+		AtmInfoRepository repository = mock(AtmInfoRepository.class);
+		when(repository.findAllAtmIds()).thenReturn(List.of("KNOWN"));
+		knownAtmIds = new KnownAtmIds(repository, new SimpleMeterRegistry());
+		knownAtmIds.load();
+		atmRegistryService = mock(AtmRegistryService.class);
+		listener = new AtmStateListener();
+		ReflectionTestUtils.setField(listener, "atmRegistryService", atmRegistryService);
+		ReflectionTestUtils.setField(listener, "knownAtmIds", knownAtmIds);
+	}
+
+	@Test
+	void knownAtmIsAnsweredFromMemory() {
+		listener.consumeAtmSeenMessage(seen("KNOWN"));
+		listener.consumeAtmSeenMessage(seen(null));
+
+		verify(atmRegistryService, never()).atmExists(anyString());
+		verify(atmRegistryService, never()).createAtm(any(), any());
+	}
+
+	@Test
+	void registersNewAtmInDefaultAgency() {
+		listener.consumeAtmSeenMessage(seen("NEW"));
+
+		ArgumentCaptor<AtmInfo> created = ArgumentCaptor.forClass(AtmInfo.class);
+		verify(atmRegistryService).createAtm(created.capture(), eq("AG001"));
+		assertEquals("NEW", created.getValue().getAtmId());
+		// Added by KnownAtmIds once the creation commits, not before
+		assertFalse(knownAtmIds.contains("NEW"));
+	}
+
+	@Test
+	void atmRegisteredElsewhereIsRemembered() {
+		when(atmRegistryService.atmExists("OTHER")).thenReturn(true);
+		listener.consumeAtmSeenMessage(seen("OTHER"));
+		listener.consumeAtmSeenMessage(seen("OTHER"));
+
+		verify(atmRegistryService, never()).createAtm(any(), any());
+		verify(atmRegistryService).atmExists("OTHER");
+		assertTrue(knownAtmIds.contains("OTHER"));
+	}
+
+	@Test
+	void concurrentRegistrationIsNotAnError() {
+		when(atmRegistryService.createAtm(any(), eq("AG001")))
+				.thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+		listener.consumeAtmSeenMessage(seen("RACE"));
+
+		assertTrue(knownAtmIds.contains("RACE"));
+	}
+
+	@Test
+	void deleteDuringTheCheckIsNotUndone() {
+		when(atmRegistryService.atmExists("GONE")).thenAnswer(invocation -> {
+			// Deleted on another instance right after the database was read
+			knownAtmIds.onRegistryChanged(new AtmRegistryChangedEvent("GONE", AtmRegistryChangedEvent.DELETED, null, Instant.now()));
+			return true;
+		});
+
+		listener.consumeAtmSeenMessage(seen("GONE"));
+
+		assertFalse(knownAtmIds.contains("GONE"));
+	}
+
+	private static AtmSeenEvent seen(String atmId) {
+		return new AtmSeenEvent(atmId, true, "STATUS", Instant.now());
+	}
+
+}
@@ -0,0 +1,100 @@
+package ma.atm.atmregistryservice.service;
+
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+import ma.atm.atmregistryservice.dto.AtmSearchCriteria;
+import ma.atm.atmregistryservice.dto.CursorPageDto;
+import ma.atm.atmregistryservice.repository.AgencyRepository;
+import ma.atm.atmregistryservice.repository.AtmInfoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AtmRegistryServiceTest {
+
+	private final List<String> atmIds = new ArrayList<>();
+
+	private AtmInfoRepository atmInfoRepository;
+	private AtmRegistryService service;
+
+	@BeforeEach
+	void setUp() {
+		IntStream.rangeClosed(1, 7).forEach(i -> atmIds.add("ATM" + i));
+		atmInfoRepository = mock(AtmInfoRepository.class);
+		// Keyset semantics of the real query: ids after the cursor, in order, up to the limit
+		when(atmInfoRepository.findDtoPage(any(AtmSearchCriteria.class), any(), any(Limit.class))).thenAnswer(invocation -> {
+			String after = invocation.getArgument(1);
+			Limit limit = invocation.getArgument(2);
+			return atmIds.stream()
+					.sorted()
+					.filter(id -> after == null || id.compareTo(after) > 0)
+					.limit(limit.isLimited() ? limit.max() : Long.MAX_VALUE)
+					.map(AtmRegistryServiceTest::atm)
+					.toList();
+		});
+		service = new AtmRegistryService(atmInfoRepository, mock(AgencyRepository.class), mock(ApplicationEventPublisher.class));
+	}
+
+	@Test
+	void pageEndsWithCursorOnlyWhenMoreRowsFollow() {
+		AtmSearchCriteria criteria = new AtmSearchCriteria();
+
+		CursorPageDto<AtmInfoDto> first = service.findAtms(criteria, null, 3);
+		verify(atmInfoRepository).findDtoPage(criteria, null, Limit.of(4));
+		assertEquals(List.of("ATM1", "ATM2", "ATM3"), ids(first));
+		assertEquals("ATM3", first.getNextCursor());
+
+		CursorPageDto<AtmInfoDto> last = service.findAtms(criteria, "ATM4", 3);
+		assertEquals(List.of("ATM5", "ATM6", "ATM7"), ids(last));
+		assertNull(last.getNextCursor());
+	}
+
+	@Test
+	void atmsAddedBetweenPagesAreNeitherSkippedNorRepeated() {
+		AtmSearchCriteria criteria = new AtmSearchCriteria();
+		List<String> seen = new ArrayList<>();
+
+		CursorPageDto<AtmInfoDto> page = service.findAtms(criteria, null, 3);
+		seen.addAll(ids(page));
+		// Before the cursor, so an offset would now repeat ATM3
+		atmIds.add("ATM0");
+		atmIds.add("ATM8");
+		while (page.getNextCursor() != null) {
+			page = service.findAtms(criteria, page.getNextCursor(), 3);
+			seen.addAll(ids(page));
+		}
+
+		assertEquals(List.of("ATM1", "ATM2", "ATM3", "ATM4", "ATM5", "ATM6", "ATM7", "ATM8"), seen);
+	}
+
+	@Test
+	void fullListingIsOneUnlimitedQuery() {
+		AtmSearchCriteria criteria = new AtmSearchCriteria();
+
+		assertEquals(7, service.findAllAtms(criteria).size());
+		verify(atmInfoRepository).findDtoPage(eq(criteria), eq(null), eq(Limit.unlimited()));
+	}
+
+	private static AtmInfoDto atm(String atmId) {
+		AtmInfoDto atm = new AtmInfoDto();
+		atm.setAtmId(atmId);
+		return atm;
+	}
+
+	private static List<String> ids(CursorPageDto<AtmInfoDto> page) {
+		return page.getItems().stream().map(AtmInfoDto::getAtmId).toList();
+	}
+
+}
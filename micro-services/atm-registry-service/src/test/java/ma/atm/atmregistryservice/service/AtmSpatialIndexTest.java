@@ -0,0 +1,127 @@
+package ma.atm.atmregistryservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmregistryservice.dto.AtmInfoDto;
+import ma.atm.atmregistryservice.dto.AtmSearchCriteria;
+import ma.atm.atmregistryservice.dto.NearbyAtmDto;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AtmSpatialIndexTest {
+
+	private AtmRegistryService atmRegistryService;
+	private AtmSpatialIndex index;
+
+	@BeforeEach
+	void setUp() {
+		atmRegistryService = mock(AtmRegistryService.class);
+		when(atmRegistryService.findAllAtms(any(AtmSearchCriteria.class))).thenReturn(List.of(
+				atm("CASA-1", 33.5731, -7.5898),
+				atm("CASA-2", 33.5900, -7.6100),
+				atm("RABAT-1", 34.0209, -6.8416),
+				atm("NO-GPS", null, null)));
+		index = new AtmSpatialIndex(atmRegistryService, new SimpleMeterRegistry(), 0.05);
+		index.load();
+	}
+
+	@Test
+	void nearestReturnsClosestFirstWithinDistance() {
+		List<NearbyAtmDto> nearby = index.nearest(33.5731, -7.5898, 5, 10);
+
+		assertEquals(List.of("CASA-1", "CASA-2"), ids(nearby));
+		assertEquals(0, nearby.get(0).getDistanceKm(), 1e-9);
+		assertEquals(2.7, nearby.get(1).getDistanceKm(), 0.2);
+
+		assertEquals(List.of("CASA-1"), ids(index.nearest(33.5731, -7.5898, 1, 10)));
+		assertEquals(List.of("CASA-1", "CASA-2", "RABAT-1"),
+				ids(index.nearest(33.5731, -7.5898, 5, Double.POSITIVE_INFINITY)));
+		assertTrue(index.nearest(0, 0, 5, 100).isEmpty());
+	}
+
+	@Test
+	void nearestMatchesFullScan() {
+		Random random = new Random(42);
+		List<AtmInfoDto> atms = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			atms.add(atm("ATM-" + i, 30 + random.nextDouble() * 6, -10 + random.nextDouble() * 8));
+		}
+		when(atmRegistryService.findAllAtms(any(AtmSearchCriteria.class))).thenReturn(atms);
+		index = new AtmSpatialIndex(atmRegistryService, new SimpleMeterRegistry(), 0.05);
+		index.load();
+
+		for (int query = 0; query < 50; query++) {
+			double latitude = 29 + random.nextDouble() * 8;
+			double longitude = -11 + random.nextDouble() * 10;
+			List<String> expected = atms.stream()
+					.sorted(Comparator.comparingDouble(atm -> distanceKm(latitude, longitude, atm)))
+					.limit(10)
+					.map(AtmInfoDto::getAtmId)
+					.toList();
+			assertEquals(expected, ids(index.nearest(latitude, longitude, 10, Double.POSITIVE_INFINITY)));
+		}
+	}
+
+	@Test
+	void withinReturnsAtmsInsideTheBox() {
+		List<AtmInfoDto> casablanca = index.within(33.5, 33.7, -7.7, -7.5, 100);
+		assertEquals(List.of("CASA-1", "CASA-2"), casablanca.stream().map(AtmInfoDto::getAtmId).sorted().toList());
+
+		assertEquals(1, index.within(33.5, 33.7, -7.7, -7.5, 1).size());
+		assertEquals(3, index.within(-90, 90, -180, 180, 100).size());
+		// Bounds are included
+		assertEquals(List.of("RABAT-1"), index.within(34.0209, 34.0209, -6.8416, -6.8416, 100).stream()
+				.map(AtmInfoDto::getAtmId).toList());
+	}
+
+	@Test
+	void followsRegistryChanges() {
+		index.onRegistryChanged(new AtmRegistryChangedEvent("CASA-1", AtmRegistryChangedEvent.DELETED, null, Instant.now()));
+		index.onRegistryChanged(new AtmRegistryChangedEvent("CASA-2", AtmRegistryChangedEvent.UPDATED,
+				atm("CASA-2", 34.0300, -6.8300), Instant.now()));
+		index.onRegistryChanged(new AtmRegistryChangedEvent("CASA-3", AtmRegistryChangedEvent.CREATED,
+				atm("CASA-3", 33.5800, -7.6000), Instant.now()));
+
+		assertEquals(List.of("CASA-3"), ids(index.nearest(33.5731, -7.5898, 5, 10)));
+		assertEquals(List.of("CASA-2", "RABAT-1"), index.within(34.0, 34.1, -6.9, -6.8, 100).stream()
+				.map(AtmInfoDto::getAtmId).sorted().toList());
+
+		// Losing its coordinates takes it out of the index
+		index.onRegistryChanged(new AtmRegistryChangedEvent("CASA-3", AtmRegistryChangedEvent.UPDATED,
+				atm("CASA-3", null, null), Instant.now()));
+		assertTrue(index.nearest(33.5731, -7.5898, 5, 10).isEmpty());
+	}
+
+	private static AtmInfoDto atm(String atmId, Double latitude, Double longitude) {
+		AtmInfoDto atm = new AtmInfoDto();
+		atm.setAtmId(atmId);
+		atm.setLocationLatitude(latitude);
+		atm.setLocationLongitude(longitude);
+		return atm;
+	}
+
+	private static List<String> ids(List<NearbyAtmDto> nearby) {
+		return nearby.stream().map(n -> n.getAtm().getAtmId()).toList();
+	}
+
+	private static double distanceKm(double latitude, double longitude, AtmInfoDto atm) {
+		double dLat = Math.toRadians(atm.getLocationLatitude() - latitude);
+		double dLon = Math.toRadians(atm.getLocationLongitude() - longitude);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(latitude))
+				* Math.cos(Math.toRadians(atm.getLocationLatitude())) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * 6371.0088 * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+}
@@ -0,0 +1,37 @@
+package ma.atm.atmregistryservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkImportServiceTest {
+
+	@Test
+	void splitsOnCommas() {
+		assertEquals(List.of("ATM1", "NCR", "AG01"), BulkImportService.parseCsvLine("ATM1,NCR,AG01"));
+	}
+
+	@Test
+	void keepsEmptyFields() {
+		assertEquals(List.of("ATM1", "", "AG01", ""), BulkImportService.parseCsvLine("ATM1,,AG01,"));
+		assertEquals(List.of(""), BulkImportService.parseCsvLine(""));
+	}
+
+	@Test
+	void readsQuotedFields() {
+		assertEquals(List.of("ATM1", "12, Bd Zerktouni", "Casablanca"),
+				BulkImportService.parseCsvLine("ATM1,\"12, Bd Zerktouni\",Casablanca"));
+		assertEquals(List.of("ATM1", "Agence \"Centre\""),
+				BulkImportService.parseCsvLine("ATM1,\"Agence \"\"Centre\"\"\""));
+		assertEquals(List.of("ATM1", ""), BulkImportService.parseCsvLine("ATM1,\"\""));
+	}
+
+	@Test
+	void rejectsUnterminatedQuote() {
+		assertThrows(IllegalArgumentException.class, () -> BulkImportService.parseCsvLine("ATM1,\"Bd Zerktouni"));
+	}
+
+}
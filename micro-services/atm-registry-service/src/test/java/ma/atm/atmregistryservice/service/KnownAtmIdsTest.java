@@ -0,0 +1,67 @@
+package ma.atm.atmregistryservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmregistryservice.producer.event.AtmRegistryChangedEvent;
+import ma.atm.atmregistryservice.repository.AtmInfoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class KnownAtmIdsTest {
+
+	private KnownAtmIds knownAtmIds;
+
+	@BeforeEach
+	void setUp() {
+		AtmInfoRepository repository = mock(AtmInfoRepository.class);
+		when(repository.findAllAtmIds()).thenReturn(List.of("ATM1", "ATM2"));
+		knownAtmIds = new KnownAtmIds(repository, new SimpleMeterRegistry());
+		knownAtmIds.load();
+	}
+
+	@Test
+	void followsRegistryChanges() {
+		assertTrue(knownAtmIds.contains("ATM1"));
+		assertFalse(knownAtmIds.contains("ATM3"));
+
+		knownAtmIds.onRegistryChanged(changed("ATM3", AtmRegistryChangedEvent.CREATED));
+		knownAtmIds.onRegistryChanged(changed("ATM1", AtmRegistryChangedEvent.DELETED));
+
+		assertTrue(knownAtmIds.contains("ATM3"));
+		assertFalse(knownAtmIds.contains("ATM1"));
+	}
+
+	@Test
+	void addsIdFoundInDatabaseWhenNothingWasRemoved() {
+		long mark = knownAtmIds.removalMark();
+		knownAtmIds.onRegistryChanged(changed("ATM4", AtmRegistryChangedEvent.CREATED));
+
+		assertTrue(knownAtmIds.addUnlessRemovedSince("ATM3", mark));
+		assertTrue(knownAtmIds.contains("ATM3"));
+	}
+
+	@Test
+	void deleteCommittedDuringTheCheckIsNotUndone() {
+		// The database still had ATM3 when it was read, then another instance deleted it
+		long mark = knownAtmIds.removalMark();
+		knownAtmIds.onRegistryChanged(changed("ATM3", AtmRegistryChangedEvent.DELETED));
+
+		assertFalse(knownAtmIds.addUnlessRemovedSince("ATM3", mark));
+		assertFalse(knownAtmIds.contains("ATM3"));
+
+		// Checked again on its next event
+		assertTrue(knownAtmIds.addUnlessRemovedSince("ATM3", knownAtmIds.removalMark()));
+	}
+
+	private static AtmRegistryChangedEvent changed(String atmId, String changeType) {
+		return new AtmRegistryChangedEvent(atmId, changeType, null, Instant.now());
+	}
+
+}
@@ -5,11 +5,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.pulsar.annotation.EnablePulsar;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnablePulsar
 @EnableDiscoveryClient
 @EnableFeignClients
+@EnableScheduling
 public class AtmStateServiceApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,62 @@
+package ma.atm.atmstateservice.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ma.atm.atmstateservice.event.AtmCountersUpdatedEvent;
+import ma.atm.atmstateservice.event.AtmStatusUpdatedEvent;
+import ma.atm.atmstateservice.event.AtmTransactionEvent;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionMode;
+import org.apache.pulsar.client.api.schema.SchemaDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.pulsar.annotation.PulsarListenerConsumerBuilderCustomizer;
+import org.springframework.pulsar.core.DefaultSchemaResolver;
+import org.springframework.pulsar.core.SchemaResolver;
+
+@Configuration
+public class PulsarConfig {
+
+    // Every instance keeps its own registry snapshot and fleet state index, so each one needs every registry and
+    // state-change event. A non-durable subscription disappears with the instance instead of accumulating a backlog.
+    @Bean
+    public PulsarListenerConsumerBuilderCustomizer<Object> perInstanceSubscriptionCustomizer() {
+        return builder -> builder.subscriptionMode(SubscriptionMode.NonDurable);
+    }
+
+    // Status, counter and transaction events arrive as Avro and are decoded straight into the event classes.
+    // The reader schemas use the same options as the ingestion service's writer schemas. Fields are resolved
+    // by name against the writer's schema version, so fields added or removed there are ignored or left null.
+    @Bean
+    public SchemaResolver.SchemaResolverCustomizer<DefaultSchemaResolver> internalEventSchemaCustomizer(ObjectMapper objectMapper) {
+        return resolver -> {
+            resolver.addCustomSchemaMapping(AtmStatusUpdatedEvent.class,
+                    avroSchema(objectMapper, AtmStatusUpdatedEvent.class, "ma.atm.dataingestionservice.model.StatusMessage"));
+            resolver.addCustomSchemaMapping(AtmCountersUpdatedEvent.class,
+                    avroSchema(objectMapper, AtmCountersUpdatedEvent.class, "ma.atm.dataingestionservice.model.CounterMessage"));
+            resolver.addCustomSchemaMapping(AtmTransactionEvent.class,
+                    avroSchema(objectMapper, AtmTransactionEvent.class, "ma.atm.dataingestionservice.model.TransactionMessage"));
+        };
+    }
+
+    // The broker checks the reader schema against the topic's, and Avro only accepts differently named records
+    // when the reader lists the writer's name as an alias
+    private static <T> Schema<T> avroSchema(ObjectMapper objectMapper, Class<T> type, String writerRecordName) {
+        String reflected = Schema.AVRO(definition(type).build()).getSchemaInfo().getSchemaDefinition();
+        try {
+            ObjectNode schema = (ObjectNode) objectMapper.readTree(reflected);
+            schema.putArray("aliases").add(writerRecordName);
+            return Schema.AVRO(definition(type).withJsonDef(objectMapper.writeValueAsString(schema)).build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid Avro schema generated for " + type.getName(), e);
+        }
+    }
+
+    private static <T> SchemaDefinition.SchemaDefinitionBuilder<T> definition(Class<T> type) {
+        return SchemaDefinition.<T>builder()
+                .withPojo(type)
+                .withAlwaysAllowNull(true)
+                .withJSR310ConversionEnabled(true);
+    }
+}
@@ -0,0 +1,56 @@
+package ma.atm.atmstateservice.controller;
+
+import ma.atm.atmstateservice.dto.AtmHistoryDto;
+import ma.atm.atmstateservice.store.AtmHistoryStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/api/state/atms")
+public class AtmHistoryController {
+
+    // Upper bound on returned buckets per series; also used to pick a resolution when none is given
+    private static final long MAX_POINTS = 2000;
+    private static final long DEFAULT_POINTS = 500;
+
+    private final AtmHistoryStore atmHistoryStore;
+
+    @Autowired
+    public AtmHistoryController(AtmHistoryStore atmHistoryStore) {
+        this.atmHistoryStore = atmHistoryStore;
+    }
+
+    /**
+     * Status and counter history of an ATM, downsampled server-side.
+     * Defaults to the last 24 hours; resolution accepts "5m", "1h" or ISO-8601 ("PT15M").
+     */
+    @GetMapping("/{atmId}/history")
+    public ResponseEntity<AtmHistoryDto> getHistory(@PathVariable String atmId,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                    @RequestParam(required = false) Duration resolution) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofDays(1));
+        Duration range = Duration.between(start, end);
+        if (!range.isPositive() || range.compareTo(Duration.ofDays(atmHistoryStore.getRetentionDays() + 1L)) > 0) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Duration step = resolution != null ? resolution
+                : Duration.ofSeconds(Math.max(60, range.toSeconds() / DEFAULT_POINTS));
+        if (step.toSeconds() < 1 || range.toSeconds() / step.toSeconds() > MAX_POINTS) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(atmHistoryStore.getHistory(atmId, start, end, step));
+    }
+}
@@ -1,127 +1,143 @@
 package ma.atm.atmstateservice.controller;
 
-
 import ma.atm.atmstateservice.dto.*;
 import ma.atm.atmstateservice.feign.RegistryServiceClient;
 import ma.atm.atmstateservice.model.AtmConfiguration;
 import ma.atm.atmstateservice.model.AtmCounter;
 import ma.atm.atmstateservice.model.AtmStatus;
 import ma.atm.atmstateservice.model.Cassette;
-import ma.atm.atmstateservice.repository.AtmConfigurationRepository;
-import ma.atm.atmstateservice.repository.AtmCounterRepository;
 import ma.atm.atmstateservice.repository.AtmStatusRepository;
+import ma.atm.atmstateservice.service.AtmCombinedViewService;
+import ma.atm.atmstateservice.store.AtmFullStateCache;
+import ma.atm.atmstateservice.store.AtmStateStore;
+import ma.atm.atmstateservice.store.FleetStateIndex;
+import ma.atm.atmstateservice.store.RegistrySnapshotCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.StringJoiner;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.time.OffsetDateTime;
 
 @RestController
 @RequestMapping("/api/state/atms")
 public class AtmStateController {
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final int MAX_SUMMARY_PAGE_SIZE = 5000;
+
     private final AtmStatusRepository statusRepository;
-    private final AtmConfigurationRepository configRepository;
-    private final AtmCounterRepository counterRepository;
     private final RegistryServiceClient registryClient; // Add Feign client
+    private final AtmStateStore atmStateStore;
+    private final RegistrySnapshotCache registrySnapshotCache;
+    private final AtmCombinedViewService atmCombinedViewService;
+    private final AtmFullStateCache fullStateCache;
+    private final FleetStateIndex fleetStateIndex;
 
     @Autowired
     public AtmStateController(AtmStatusRepository statusRepository,
-                              AtmConfigurationRepository configRepository,
-                              AtmCounterRepository counterRepository,
-                              RegistryServiceClient registryClient) {
+                              RegistryServiceClient registryClient,
+                              AtmStateStore atmStateStore,
+                              RegistrySnapshotCache registrySnapshotCache,
+                              AtmCombinedViewService atmCombinedViewService,
+                              AtmFullStateCache fullStateCache,
+                              FleetStateIndex fleetStateIndex) {
         this.statusRepository = statusRepository;
-        this.configRepository = configRepository;
-        this.counterRepository = counterRepository;
         this.registryClient = registryClient;
+        this.atmStateStore = atmStateStore;
+        this.registrySnapshotCache = registrySnapshotCache;
+        this.atmCombinedViewService = atmCombinedViewService;
+        this.fullStateCache = fullStateCache;
+        this.fleetStateIndex = fleetStateIndex;
     }
 
     // --- EXISTING ENDPOINTS (unchanged) ---
 
-    // Endpoint to get combined full state for a single ATM
-    @GetMapping("/{atmId}")
-    public ResponseEntity<AtmFullStateDto> getFullAtmState(@PathVariable String atmId) {
-        Optional<AtmStatus> statusOpt = statusRepository.findById(atmId);
-        Optional<AtmConfiguration> configOpt = configRepository.findById(atmId);
-        Optional<AtmCounter> counterOpt = counterRepository.findById(atmId);
+    // Single-ATM reads go through the state store so they include changes not yet flushed to Postgres
 
-        if (statusOpt.isEmpty() && configOpt.isEmpty() && counterOpt.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
+    // Single-ATM reads carry an ETag built from the persisted lastUpdateTimestamp of each kind of state, so it is
+    // the same on every instance. A matching If-None-Match gets a 304 from the fleet state index alone, without
+    // reading Postgres or the state store.
 
-        AtmFullStateDto fullState = new AtmFullStateDto(
-                atmId,
-                statusOpt.map(this::mapToStatusDto).orElse(null),
-                configOpt.map(this::mapToConfigDto).orElse(null),
-                counterOpt.map(this::mapToCounterDto).orElse(null)
-        );
-        return ResponseEntity.ok(fullState);
+    // Endpoint to get combined full state for a single ATM
+    @GetMapping("/{atmId}")
+    public ResponseEntity<AtmFullStateDto> getFullAtmState(@PathVariable String atmId,
+                                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        FleetStateIndex.Versions versions = fleetStateIndex.getVersions(atmId);
+        return conditional(ifNoneMatch, new long[]{versions.status(), versions.configuration(), versions.counter()},
+                () -> getCachedFullState(atmId), AtmStateController::versionsOf);
     }
 
     // Endpoint to get just the status
     @GetMapping("/{atmId}/status")
-    public ResponseEntity<AtmStatusDto> getAtmStatus(@PathVariable String atmId) {
-        return statusRepository.findById(atmId)
-                .map(this::mapToStatusDto)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<AtmStatusDto> getAtmStatus(@PathVariable String atmId,
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return conditional(ifNoneMatch, new long[]{fleetStateIndex.getVersions(atmId).status()},
+                () -> atmStateStore.getStatus(atmId).map(this::mapToStatusDto),
+                status -> new long[]{FleetStateIndex.versionOf(status.getLastUpdateTimestamp())});
     }
 
     // Endpoint to get just the configuration
     @GetMapping("/{atmId}/configuration")
-    public ResponseEntity<AtmConfigurationDto> getAtmConfiguration(@PathVariable String atmId) {
-        return configRepository.findById(atmId)
-                .map(this::mapToConfigDto)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<AtmConfigurationDto> getAtmConfiguration(@PathVariable String atmId,
+                                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return conditional(ifNoneMatch, new long[]{fleetStateIndex.getVersions(atmId).configuration()},
+                () -> atmStateStore.getConfiguration(atmId).map(this::mapToConfigDto),
+                configuration -> new long[]{FleetStateIndex.versionOf(configuration.getLastUpdateTimestamp())});
     }
 
     // Endpoint to get just the counters
     @GetMapping("/{atmId}/counters")
-    public ResponseEntity<AtmCounterDto> getAtmCounters(@PathVariable String atmId) {
-        return counterRepository.findById(atmId)
-                .map(this::mapToCounterDto)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<AtmCounterDto> getAtmCounters(@PathVariable String atmId,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return conditional(ifNoneMatch, new long[]{fleetStateIndex.getVersions(atmId).counter()},
+                () -> atmStateStore.getCounter(atmId).map(this::mapToCounterDto),
+                counters -> new long[]{FleetStateIndex.versionOf(counters.getLastUpdateTimestamp())});
     }
 
-    // Endpoint to get a summary list of all ATMs (Consider Pagination)
+    // Summary list of all ATMs, one joined query. The whole fleet unless page or size is given, in which case
+    // one page is returned and the total is in X-Total-Count.
+    // Reads Postgres, so it can lag the state store by up to one flush interval.
     @GetMapping
-    public ResponseEntity<List<AtmStateSummaryDto>> getAllAtmSummaries() {
-        // This is a simplified approach. A more efficient way would be a custom query
-        // or fetching only necessary data, especially with many ATMs.
-        List<String> atmIds = statusRepository.findAll().stream().map(AtmStatus::getAtmId).collect(Collectors.toList());
-        // You might want to get IDs from config or counter repo as well or use a distinct list
-
-        List<AtmStateSummaryDto> summaries = atmIds.stream().map(atmId -> {
-            AtmStatus status = statusRepository.findById(atmId).orElse(null);
-            AtmConfiguration config = configRepository.findById(atmId).orElse(null);
-            AtmCounter counter = counterRepository.findById(atmId).orElse(null);
-
-            OffsetDateTime lastUpdate = null;
-            if(status != null) lastUpdate = status.getLastUpdateTimestamp();
-            // Add logic to find the latest timestamp among status, config, counter if needed
-
-            return new AtmStateSummaryDto(
-                    atmId,
-                    status != null ? status.getOperationalState() : "UNKNOWN",
-                    config != null ? config.getOverallHealth() : "controller",
-                    counter != null ? counter.getLowCashFlag() : null,
-                    lastUpdate
-            );
-        }).collect(Collectors.toList());
-
-        return ResponseEntity.ok(summaries);
+    public ResponseEntity<List<AtmStateSummaryDto>> getAllAtmSummaries(
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(defaultValue = "atmId") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) String operationalState,
+            @RequestParam(required = false) String overallHealth,
+            @RequestParam(required = false) Boolean lowCash) {
+        if (!AtmStatusRepository.SUMMARY_SORT_PROPERTIES.contains(sort)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Sort order = Sort.by(Sort.Direction.fromOptionalString(direction).orElse(Sort.Direction.ASC), sort);
+        Pageable pageable = page == null && size == null
+                ? Pageable.unpaged(order)
+                : PageRequest.of(Math.max(page != null ? page : 0, 0),
+                        Math.min(Math.max(size != null ? size : MAX_SUMMARY_PAGE_SIZE, 1), MAX_SUMMARY_PAGE_SIZE), order);
+
+        Page<AtmStateSummaryDto> summaries = statusRepository.findSummaries(operationalState, overallHealth, lowCash, pageable);
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(summaries.getTotalElements()))
+                .body(summaries.getContent());
     }
 
     // --- NEW ENHANCED ENDPOINTS ---
@@ -133,29 +149,8 @@ public class AtmStateController {
     @GetMapping("/combined")
     public ResponseEntity<List<AtmCombinedDto>> getAllAtmsWithRegistryInfo() {
         try {
-            // Get state summaries from existing method
-            List<AtmStateSummaryDto> stateSummaries = getAllAtmSummaries().getBody();
-            if (stateSummaries == null) {
-                stateSummaries = Collections.emptyList();
-            }
-
-            // Get registry data via Feign client
-            List<AtmRegistryDto> registryData = Collections.emptyList();
-            try {
-                registryData = registryClient.getAllAtmRegistry();
-            } catch (Exception e) {
-                System.err.println("Warning: Could not fetch registry data: " + e.getMessage());
-                // Continue with empty registry data
-            }
-
-            // Create lookup map for performance
-            Map<String, AtmRegistryDto> registryMap = registryData.stream()
-                    .collect(Collectors.toMap(AtmRegistryDto::getAtmId, Function.identity()));
-
-            // Combine the data
-            List<AtmCombinedDto> combinedData = stateSummaries.stream()
-                    .map(summary -> createCombinedDto(summary, registryMap.get(summary.getAtmId())))
-                    .collect(Collectors.toList());
+            // Whole fleet in a single query, enriched from the local registry snapshot
+            List<AtmCombinedDto> combinedData = atmCombinedViewService.getFleet();
 
             return ResponseEntity.ok(combinedData);
 
@@ -172,20 +167,13 @@ public class AtmStateController {
     @GetMapping("/{atmId}/enhanced")
     public ResponseEntity<AtmEnhancedDetailDto> getEnhancedAtmDetails(@PathVariable String atmId) {
         try {
-            // Get full state data from existing method
-            AtmFullStateDto stateData = getFullAtmState(atmId).getBody();
+            AtmFullStateDto stateData = getCachedFullState(atmId).orElse(null);
             if (stateData == null) {
                 return ResponseEntity.notFound().build();
             }
 
-            // Get registry data for this ATM
-            AtmRegistryDto registryData = null;
-            try {
-                registryData = registryClient.getAtmRegistry(atmId);
-            } catch (Exception e) {
-                System.err.println("Warning: Could not fetch registry data for ATM " + atmId + ": " + e.getMessage());
-                // Continue without registry data
-            }
+            // Registry data for this ATM, if known to the local snapshot
+            AtmRegistryDto registryData = registrySnapshotCache.get(atmId).orElse(null);
 
             // Create enhanced response
             AtmEnhancedDetailDto enhancedDetails = createEnhancedDetailDto(stateData, registryData);
@@ -206,7 +194,7 @@ public class AtmStateController {
     public ResponseEntity<Map<String, Object>> getPeripheralStatus(@PathVariable String atmId) {
         try {
             // Get configuration data which contains peripheral details
-            AtmConfigurationDto config = getAtmConfiguration(atmId).getBody();
+            AtmConfigurationDto config = atmStateStore.getConfiguration(atmId).map(this::mapToConfigDto).orElse(null);
             if (config == null || config.getPeripheralDetails() == null) {
                 return ResponseEntity.ok(Collections.emptyMap());
             }
@@ -253,34 +241,77 @@ public class AtmStateController {
 
     // --- HELPER METHODS ---
 
-    /**
-     * Create combined DTO from state summary and registry data
-     */
-    private AtmCombinedDto createCombinedDto(AtmStateSummaryDto summary, AtmRegistryDto registry) {
-        AtmCombinedDto combined = new AtmCombinedDto();
-
-        // Copy state data
-        combined.setAtmId(summary.getAtmId());
-        combined.setOperationalState(summary.getOperationalState());
-        combined.setOverallHealth(summary.getOverallHealth());
-        combined.setLowCashFlag(summary.getLowCashFlag());
-        combined.setLastUpdateTimestamp(summary.getLastUpdateTimestamp());
-
-        // Copy registry data if available
-        if (registry != null) {
-            combined.setLabel(registry.getLabel());
-            combined.setBrand(registry.getBrand());
-            combined.setModel(registry.getModel());
-            combined.setRegion(registry.getRegion());
-            combined.setAgencyCode(registry.getAgencyCode());
-            combined.setAgencyName(registry.getAgencyName());
-            combined.setLocationAddress(registry.getLocationAddress());
-            combined.setLocationLatitude(registry.getLocationLatitude());
-            combined.setLocationLongitude(registry.getLocationLongitude());
-            combined.setIpAddress(registry.getIpAddress());
+    private Optional<AtmFullStateDto> getCachedFullState(String atmId) {
+        return fullStateCache.get(atmId, fleetStateIndex.getVersions(atmId), this::loadFullState);
+    }
+
+    private Optional<AtmFullStateDto> loadFullState(String atmId) {
+        Optional<AtmStatus> statusOpt = atmStateStore.getStatus(atmId);
+        Optional<AtmConfiguration> configOpt = atmStateStore.getConfiguration(atmId);
+        Optional<AtmCounter> counterOpt = atmStateStore.getCounter(atmId);
+
+        if (statusOpt.isEmpty() && configOpt.isEmpty() && counterOpt.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new AtmFullStateDto(
+                atmId,
+                statusOpt.map(this::mapToStatusDto).orElse(null),
+                configOpt.map(this::mapToConfigDto).orElse(null),
+                counterOpt.map(this::mapToCounterDto).orElse(null)
+        ));
+    }
+
+    private static long[] versionsOf(AtmFullStateDto state) {
+        FleetStateIndex.Versions versions = FleetStateIndex.Versions.of(state);
+        return new long[]{versions.status(), versions.configuration(), versions.counter()};
+    }
+
+    // The 304 is decided on the index's versions. A response carries the versions of the state actually read, which
+    // can be older than the index's while the owning instance has not flushed yet, so it is refetched until it is not.
+    private <T> ResponseEntity<T> conditional(String ifNoneMatch, long[] current, Supplier<Optional<T>> loader,
+                                              Function<T, long[]> versionsOf) {
+        boolean known = Arrays.stream(current).anyMatch(version -> version != FleetStateIndex.NONE);
+        if (known && matches(ifNoneMatch, etag(current))) {
+            return notModified(etag(current));
+        }
+        Optional<T> body = loader.get();
+        if (body.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = etag(versionsOf.apply(body.get()));
+        if (matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return ResponseEntity.ok().eTag(etag).body(body.get());
+    }
+
+    private static String etag(long... versions) {
+        StringJoiner etag = new StringJoiner("-", "\"", "\"");
+        for (long version : versions) {
+            etag.add(Long.toString(version, 36));
+        }
+        return etag.toString();
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        return combined;
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
     }
 
     /**
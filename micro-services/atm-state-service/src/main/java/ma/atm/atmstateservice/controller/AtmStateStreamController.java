@@ -0,0 +1,33 @@
+package ma.atm.atmstateservice.controller;
+
+import ma.atm.atmstateservice.service.AtmStateStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/state/atms")
+public class AtmStateStreamController {
+
+    private final AtmStateStreamService atmStateStreamService;
+
+    @Autowired
+    public AtmStateStreamController(AtmStateStreamService atmStateStreamService) {
+        this.atmStateStreamService = atmStateStreamService;
+    }
+
+    /**
+     * Live dashboard feed, replacing polling of /combined.
+     * Sends a "snapshot" event with the matching ATMs, then "delta" events with the ATMs that changed and
+     * "removed" events with the ids of ATMs that no longer match the filters.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAtmState(@RequestParam(required = false) String region,
+                                     @RequestParam(required = false) String agencyCode) {
+        return atmStateStreamService.subscribe(region, agencyCode);
+    }
+}
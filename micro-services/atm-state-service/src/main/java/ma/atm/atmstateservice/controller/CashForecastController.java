@@ -0,0 +1,44 @@
+package ma.atm.atmstateservice.controller;
+
+import ma.atm.atmstateservice.dto.CashForecastDto;
+import ma.atm.atmstateservice.store.CashForecastStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/state/atms")
+public class CashForecastController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final CashForecastStore cashForecastStore;
+
+    @Autowired
+    public CashForecastController(CashForecastStore cashForecastStore) {
+        this.cashForecastStore = cashForecastStore;
+    }
+
+    // ATMs projected to run out of cash first, for replenishment planning. Every instance forecasts the whole fleet.
+    @GetMapping("/forecast")
+    public ResponseEntity<List<CashForecastDto>> getSoonestEmpty(@RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(cashForecastStore.getSoonestEmpty(Math.min(limit, MAX_LIMIT)));
+    }
+
+    // Forecast of one ATM, with the recent samples of each cassette
+    @GetMapping("/{atmId}/forecast")
+    public ResponseEntity<CashForecastDto> getAtmForecast(@PathVariable String atmId) {
+        return cashForecastStore.getForecast(atmId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,46 @@
+package ma.atm.atmstateservice.controller;
+
+import ma.atm.atmstateservice.dto.TransactionStatsDto;
+import ma.atm.atmstateservice.store.TransactionAggregateStore;
+import ma.atm.atmstateservice.store.TransactionWindow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/state/atms")
+public class TransactionStatsController {
+
+    private final TransactionAggregateStore transactionAggregateStore;
+
+    @Autowired
+    public TransactionStatsController(TransactionAggregateStore transactionAggregateStore) {
+        this.transactionAggregateStore = transactionAggregateStore;
+    }
+
+    // Rolling transaction stats of one ATM, one entry per window (1m, 15m, 1h, 24h). Every instance aggregates the
+    // whole fleet; see TransactionAggregateStore for what a restart loses
+    @GetMapping("/{atmId}/transactions")
+    public ResponseEntity<List<TransactionStatsDto>> getAtmTransactionStats(@PathVariable String atmId) {
+        return transactionAggregateStore.getStats(atmId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Rolling transaction stats of every ATM that had a transaction in the window
+    @GetMapping("/transactions")
+    public ResponseEntity<List<TransactionStatsDto>> getFleetTransactionStats(@RequestParam(defaultValue = "1h") String window) {
+        Optional<TransactionWindow> transactionWindow = TransactionWindow.fromLabel(window);
+        if (transactionWindow.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(transactionAggregateStore.getFleetStats(transactionWindow.get()));
+    }
+}
@@ -0,0 +1,42 @@
+package ma.atm.atmstateservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AtmHistoryDto {
+    private String atmId;
+    private OffsetDateTime from;
+    private OffsetDateTime to;
+    private long resolutionSeconds;
+    private List<StatusPoint> status;
+    private List<CounterPoint> counters;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StatusPoint {
+        private OffsetDateTime bucket; // Start of the bucket
+        private String operationalState; // Last state reported in the bucket
+        private Boolean maintenanceMode; // True if the ATM was in maintenance at any point of the bucket
+        private long samples;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CounterPoint {
+        private OffsetDateTime bucket;
+        private Double avgCashAvailable;
+        private Double minCashAvailable;
+        private Integer maxRejectBinPercentageFull;
+        private Boolean lowCashFlag; // True if low cash was reported at any point of the bucket
+        private long samples;
+    }
+}
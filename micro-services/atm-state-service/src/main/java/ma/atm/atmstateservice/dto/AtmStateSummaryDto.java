@@ -10,6 +10,12 @@ import java.time.OffsetDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class AtmStateSummaryDto {
+
+    // Reported for an ATM that has no status row yet
+    public static final String UNKNOWN_OPERATIONAL_STATE = "UNKNOWN";
+    // Reported for an ATM that has no configuration row yet
+    public static final String NO_CONFIGURATION_HEALTH = "controller";
+
     private String atmId;
     private String operationalState;
     private String overallHealth;
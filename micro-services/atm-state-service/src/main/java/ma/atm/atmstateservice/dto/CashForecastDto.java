@@ -0,0 +1,19 @@
+package ma.atm.atmstateservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CashForecastDto {
+    private String atmId;
+    private OffsetDateTime projectedEmptyAt; // When the first cassette runs out, null if no cassette is depleting
+    private Double hoursToEmpty;
+    private String limitingCassetteId;
+    private List<CassetteForecastDto> cassettes;
+}
@@ -0,0 +1,29 @@
+package ma.atm.atmstateservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CassetteForecastDto {
+    private String cassetteId;
+    private Integer denomination;
+    private Integer notesRemaining;
+    private Double depletionRatePerHour; // Smoothed notes dispensed per hour, null until two samples are known
+    private OffsetDateTime projectedEmptyAt;
+    private List<Sample> history; // Only filled for single-ATM requests
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Sample {
+        private OffsetDateTime timestamp;
+        private Integer notesRemaining;
+        private Integer dispensedSinceRefill;
+    }
+}
@@ -0,0 +1,20 @@
+package ma.atm.atmstateservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionStatsDto {
+    private String atmId;
+    private String window; // "1m", "15m", "1h" or "24h"
+    private long transactionCount;
+    private long failureCount;
+    private Double failureRate; // null when there was no transaction
+    private Double responseTimeP50; // approximate, null when no response time was reported
+    private Double responseTimeP95;
+    private long transactionAmount;
+    private long dispensedAmount;
+}
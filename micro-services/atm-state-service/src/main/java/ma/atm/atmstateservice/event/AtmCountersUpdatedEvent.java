@@ -6,7 +6,6 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
-import ma.atm.atmstateservice.model.Cassette;
 
 import java.time.Instant;
 import java.util.List;
@@ -29,7 +28,7 @@ public class AtmCountersUpdatedEvent {
     private List<Cassette> cassettes;
 
     @JsonProperty("rejectBin")
-    private RejectBinInfo rejectBin;
+    private RejectBin rejectBin;
 
     @JsonProperty("totalCashAvailable")
     private Long totalCashAvailable;
@@ -44,14 +43,42 @@ public class AtmCountersUpdatedEvent {
     private Long dispensedToday;
 
     // --- Nested Classes matching CounterMessage inner classes ---
+    // Nested class names match the ingestion service's, which the Avro schema check compares
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Cassette { // Matches the ingestion service's Cassette
+        @JsonProperty("cassetteId")
+        private String cassetteId;
+
+        @JsonProperty("denomination")
+        private Integer denomination;
 
+        @JsonProperty("currency")
+        private String currency;
 
+        @JsonProperty("notesRemaining")
+        private Integer notesRemaining;
+
+        @JsonProperty("cassetteStatus")
+        private String cassetteStatus;
+
+        @JsonProperty("totalAmount")
+        private Long totalAmount;
+
+        @JsonProperty("rejectCount")
+        private Integer rejectCount;
+
+        @JsonProperty("dispensedSinceRefill")
+        private Integer dispensedSinceRefill;
+    }
 
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
     @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class RejectBinInfo { // Matches CounterMessage.RejectBin
+    public static class RejectBin { // Matches CounterMessage.RejectBin
         @JsonProperty("capacity")
         private Integer capacity;
 
@@ -0,0 +1,30 @@
+package ma.atm.atmstateservice.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delta of an ATM's peripherals: only the peripherals that were added or changed, with their new details,
+ * and the names of those that were removed. Published in-process by the configuration handler, then shared
+ * with every instance on the peripheral-change topic.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AtmPeripheralsChangedEvent {
+
+    private String atmId;
+
+    private Instant timestamp;
+
+    private Map<String, Object> updated;
+
+    private List<String> removed;
+}
@@ -0,0 +1,28 @@
+package ma.atm.atmstateservice.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.atm.atmstateservice.dto.AtmRegistryDto;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AtmRegistryChangedEvent {
+
+    private String atmId;
+
+    private String changeType; // CREATED, UPDATED or DELETED
+
+    private AtmRegistryDto atm; // null when deleted
+
+    private Instant timestamp;
+
+    public boolean isDeleted() {
+        return "DELETED".equals(changeType);
+    }
+}
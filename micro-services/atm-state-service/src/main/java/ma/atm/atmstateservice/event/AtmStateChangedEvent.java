@@ -0,0 +1,19 @@
+package ma.atm.atmstateservice.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * In-process notification that an ATM's state really changed in the state store.
+ * Published synchronously on the thread that applied the update.
+ */
+@Data
+@AllArgsConstructor
+public class AtmStateChangedEvent {
+
+    public enum Kind { STATUS, CONFIGURATION, COUNTER }
+
+    private String atmId;
+
+    private Kind kind;
+}
@@ -0,0 +1,30 @@
+package ma.atm.atmstateservice.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A change to one kind of an ATM's state, as published on the state-change topic by the instance that applied it.
+ * Only the summary field of that kind is set.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AtmSummaryChangedEvent {
+
+    private String atmId;
+
+    private AtmStateChangedEvent.Kind kind;
+
+    // The kind's last_update_timestamp in microseconds, see FleetStateIndex
+    private long version;
+
+    private String operationalState; // STATUS
+
+    private String overallHealth; // CONFIGURATION
+
+    private Boolean lowCashFlag; // COUNTER
+}
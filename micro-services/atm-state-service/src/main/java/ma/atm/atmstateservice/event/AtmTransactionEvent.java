@@ -0,0 +1,59 @@
+package ma.atm.atmstateservice.event;
+
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AtmTransactionEvent {
+
+    // Fields from BaseAtmMessage
+    @JsonProperty("atmId")
+    private String atmId;
+
+    @JsonProperty("timestamp")
+    private Instant timestamp;
+
+    // Fields specific to TransactionMessage
+    @JsonProperty("transactionId")
+    private String transactionId;
+
+    @JsonProperty("transactionType")
+    private String transactionType;
+
+    @JsonProperty("amount")
+    private Long amount;
+
+    @JsonProperty("currency")
+    private String currency;
+
+    @JsonProperty("responseCode")
+    private String responseCode;
+
+    @JsonProperty("responseTime")
+    private Double responseTime;
+
+    @JsonProperty("dispensedDenominations")
+    private List<DispensedDenomination> dispensedDenominations;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class DispensedDenomination { // Matches TransactionMessage.DispensedDenomination
+        @JsonProperty("denomination")
+        private Integer denomination;
+
+        @JsonProperty("count")
+        private Integer count;
+    }
+}
@@ -35,4 +35,8 @@ public class AtmConfiguration {
 
     @Column(name = "last_update_timestamp", nullable = false)
     private OffsetDateTime lastUpdateTimestamp;
+
+    // PeripheralDigest hash of peripheralDetails, so unchanged configurations are detected without reading the JSON
+    @Column(name = "peripheral_hash")
+    private Long peripheralHash;
 }
@@ -10,14 +10,16 @@ import lombok.AllArgsConstructor;
 
 @Data
 @Entity
+// Cassette ids are only unique within an ATM; the state store upserts on this key
+@Table(name = "cassette", uniqueConstraints = @UniqueConstraint(name = "uk_cassette_atm_cassette", columnNames = {"atm_id", "cassette_id"}))
 public class Cassette {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id; // Auto-generated unique key for the cassette record
 
-    // Unique identifier coming from the event payload (if present)
-    @Column(name = "cassette_id", unique = true)
+    // Identifier coming from the event payload (if present), unique per ATM
+    @Column(name = "cassette_id")
     private String cassetteId;
 
     @ManyToOne(fetch = FetchType.LAZY)
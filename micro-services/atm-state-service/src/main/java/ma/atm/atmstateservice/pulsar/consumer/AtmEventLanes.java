@@ -0,0 +1,181 @@
+package ma.atm.atmstateservice.pulsar.consumer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.pulsar.config.PulsarListenerEndpointRegistry;
+import org.springframework.pulsar.listener.Acknowledgement;
+import org.springframework.pulsar.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes ATM events on N single-threaded lanes, chosen by a hash of the atmId: events of one ATM are handled
+ * in order on one lane, while different ATMs are handled in parallel.
+ *
+ * <p>The Pulsar listeners only decode and enqueue; a message is acknowledged by its lane once processed, or
+ * negatively acknowledged if processing failed. Lane queues are bounded. When any lane goes above
+ * {@code state.lanes.pause-threshold} of its capacity the state listeners are paused, and resumed once every
+ * lane is back under {@code state.lanes.resume-threshold}. If a lane is still full the listener thread blocks
+ * on it, so memory stays bounded either way.
+ */
+@Component
+@Slf4j
+public class AtmEventLanes {
+
+    // Listener containers paused when lanes fill up
+    static final String STATUS_LISTENER = "atm-status-listener";
+    static final String COUNTER_LISTENER = "atm-counter-listener";
+    static final String CONFIGURATION_LISTENER = "atm-configuration-listener";
+    static final String TRANSACTION_LISTENER = "atm-transaction-listener";
+    private static final List<String> LISTENERS = List.of(STATUS_LISTENER, COUNTER_LISTENER, CONFIGURATION_LISTENER, TRANSACTION_LISTENER);
+
+    private record Task(String atmId, Runnable work, Acknowledgement acknowledgement) {
+    }
+
+    private final PulsarListenerEndpointRegistry listenerRegistry;
+    private final List<BlockingQueue<Task>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final int capacity;
+    private final int pauseDepth;
+    private final int resumeDepth;
+
+    private volatile boolean paused;
+    private volatile boolean running = true;
+
+    public AtmEventLanes(PulsarListenerEndpointRegistry listenerRegistry,
+                         MeterRegistry meterRegistry,
+                         @Value("${state.lanes.count:0}") int laneCount,
+                         @Value("${state.lanes.queue-capacity:1000}") int capacity,
+                         @Value("${state.lanes.pause-threshold:0.8}") double pauseThreshold,
+                         @Value("${state.lanes.resume-threshold:0.5}") double resumeThreshold) {
+        this.listenerRegistry = listenerRegistry;
+        this.capacity = capacity;
+        this.pauseDepth = Math.max(1, (int) (capacity * pauseThreshold));
+        this.resumeDepth = (int) (capacity * resumeThreshold);
+
+        int lanes = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < lanes; i++) {
+            BlockingQueue<Task> queue = new ArrayBlockingQueue<>(capacity);
+            String lane = String.valueOf(i);
+            queues.add(queue);
+            Gauge.builder("atm.state.lane.depth", queue, BlockingQueue::size)
+                    .description("Events waiting on a processing lane")
+                    .tag("lane", lane)
+                    .register(meterRegistry);
+            Timer latency = Timer.builder("atm.state.lane.processing")
+                    .description("Time to process one event on a lane")
+                    .tag("lane", lane)
+                    .register(meterRegistry);
+
+            Thread worker = new Thread(() -> runLane(queue, latency), "atm-lane-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        Gauge.builder("atm.state.lane.paused", this, l -> l.paused ? 1 : 0)
+                .description("1 while the state listeners are paused because lanes are full")
+                .register(meterRegistry);
+
+        workers.forEach(Thread::start);
+        log.info("Processing ATM events on {} lanes of {} events", lanes, capacity);
+    }
+
+    /**
+     * Queues an event on its ATM's lane. Blocks while that lane is full.
+     */
+    public void submit(String atmId, Acknowledgement acknowledgement, Runnable work) {
+        BlockingQueue<Task> queue = queues.get(laneOf(atmId));
+        try {
+            queue.put(new Task(atmId, work, acknowledgement));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acknowledgement.nack();
+            return;
+        }
+        if (!paused && queue.size() >= pauseDepth) {
+            pauseListeners();
+        }
+    }
+
+    private int laneOf(String atmId) {
+        int h = atmId != null ? atmId.hashCode() : 0;
+        // Spread the bits so ids differing only in their last characters still use every lane
+        h ^= (h >>> 16);
+        return Math.floorMod(h, queues.size());
+    }
+
+    private void runLane(BlockingQueue<Task> queue, Timer latency) {
+        while (running || !queue.isEmpty()) {
+            Task task;
+            try {
+                task = queue.poll(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                task.work().run();
+                task.acknowledgement().acknowledge();
+            } catch (Exception e) {
+                log.error("Error processing event for ATM {}, will be redelivered: {}", task.atmId(), e.getMessage(), e);
+                task.acknowledgement().nack();
+            } finally {
+                latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            if (paused && queue.size() <= resumeDepth) {
+                resumeListenersIfDrained();
+            }
+        }
+    }
+
+    private synchronized void pauseListeners() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        LISTENERS.forEach(id -> {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container != null) {
+                container.pause();
+            }
+        });
+        log.warn("Processing lanes are full, paused the ATM event listeners");
+    }
+
+    private synchronized void resumeListenersIfDrained() {
+        if (!paused || queues.stream().anyMatch(q -> q.size() > resumeDepth)) {
+            return;
+        }
+        paused = false;
+        LISTENERS.forEach(id -> {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container != null) {
+                container.resume();
+            }
+        });
+        log.info("Processing lanes drained, resumed the ATM event listeners");
+    }
+
+    // Listener containers are already stopped at this point; let the lanes finish what they hold
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+}
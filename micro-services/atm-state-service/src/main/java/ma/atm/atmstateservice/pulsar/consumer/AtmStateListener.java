@@ -5,13 +5,17 @@ import lombok.extern.slf4j.Slf4j;
 import ma.atm.atmstateservice.event.AtmConfigurationChangedEvent;
 import ma.atm.atmstateservice.event.AtmCountersUpdatedEvent;
 import ma.atm.atmstateservice.event.AtmStatusUpdatedEvent;
+import ma.atm.atmstateservice.event.AtmTransactionEvent;
 import ma.atm.atmstateservice.service.ConfigurationHandlerService;
 import ma.atm.atmstateservice.service.CounterHandlerService;
 import ma.atm.atmstateservice.service.StatusHandlerService;
+import ma.atm.atmstateservice.service.TransactionHandlerService;
 import org.apache.pulsar.client.api.SubscriptionType;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.pulsar.annotation.PulsarListener;
+import org.springframework.pulsar.listener.AckMode;
+import org.springframework.pulsar.listener.Acknowledgement;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -20,59 +24,74 @@ public class AtmStateListener {
     private final ConfigurationHandlerService configurationHandlerService;
     private final CounterHandlerService counterHandlerService;
     private final StatusHandlerService statusHandlerService;
+    private final TransactionHandlerService transactionHandlerService;
+    private final AtmEventLanes eventLanes;
 
+    // Listeners only hand events to their ATM's lane; the lane processes and acknowledges them
     @Autowired
-    private AtmStateListener(ConfigurationHandlerService configurationHandlerService, CounterHandlerService counterHandlerService, StatusHandlerService statusHandlerService) {
+    private AtmStateListener(ConfigurationHandlerService configurationHandlerService, CounterHandlerService counterHandlerService, StatusHandlerService statusHandlerService, TransactionHandlerService transactionHandlerService, AtmEventLanes eventLanes) {
         this.configurationHandlerService = configurationHandlerService;
         this.counterHandlerService = counterHandlerService;
         this.statusHandlerService = statusHandlerService;
+        this.transactionHandlerService = transactionHandlerService;
+        this.eventLanes = eventLanes;
     }
 
 
     @PulsarListener(
+            id = AtmEventLanes.CONFIGURATION_LISTENER,
             topics = "${pulsar.consumer.configuration-topic}",
             subscriptionName = "${pulsar.consumer.subscription-name}",
             schemaType = SchemaType.JSON,
-            subscriptionType = SubscriptionType.Exclusive
+            subscriptionType = SubscriptionType.Key_Shared,
+            ackMode = AckMode.MANUAL
     )
-    public void consumeAtmConfigurationMessage(AtmConfigurationChangedEvent event) {
+    public void consumeAtmConfigurationMessage(AtmConfigurationChangedEvent event, Acknowledgement acknowledgement) {
         log.info("Received health {}", event.getOverallHealth());
-        configurationHandlerService.processConfigurationChange(event);
-
+        eventLanes.submit(event.getAtmId(), acknowledgement,
+                () -> configurationHandlerService.processConfigurationChange(event));
     }
 
+    // No schemaType: status, counter and transaction events are typed Avro, resolved from the mappings in PulsarConfig
     @PulsarListener(
+            id = AtmEventLanes.STATUS_LISTENER,
             topics = "${pulsar.consumer.status-topic}",
             subscriptionName = "${pulsar.consumer.subscription-name}",
-            subscriptionType = SubscriptionType.Exclusive
+            subscriptionType = SubscriptionType.Key_Shared,
+            ackMode = AckMode.MANUAL
     )
-    public void consumeAtmStatusMessage(AtmStatusUpdatedEvent event) {
+    public void consumeAtmStatusMessage(AtmStatusUpdatedEvent event, Acknowledgement acknowledgement) {
         log.info("Received ATM status update: {}", event);
-        try {
-            statusHandlerService.processStatusUpdate(event);
-        } catch (Exception e) {
-            log.error("Error processing ATM Status change: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
-        }
-
+        eventLanes.submit(event.getAtmId(), acknowledgement,
+                () -> statusHandlerService.processStatusUpdate(event));
     }
 
     @PulsarListener(
+            id = AtmEventLanes.COUNTER_LISTENER,
             topics = "${pulsar.consumer.counter-topic}",
             subscriptionName = "${pulsar.consumer.subscription-name}",
-            subscriptionType = SubscriptionType.Exclusive
+            subscriptionType = SubscriptionType.Key_Shared,
+            ackMode = AckMode.MANUAL
     )
-    public void consumeAtmCounterMessage(AtmCountersUpdatedEvent event) {
+    public void consumeAtmCounterMessage(AtmCountersUpdatedEvent event, Acknowledgement acknowledgement) {
         log.info("Received ATM counter update: {}", event);
-        try {
-            counterHandlerService.processCounterUpdate(event);
-        } catch (Exception e) {
-            log.error("Error processing ATM counter change: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
-        }
-
+        eventLanes.submit(event.getAtmId(), acknowledgement,
+                () -> counterHandlerService.processCounterUpdate(event));
     }
 
-
-
+    // Transactions only feed the rolling aggregates, which every instance keeps for the whole fleet: a per-instance
+    // subscription rather than the shared Key_Shared one
+    @PulsarListener(
+            id = AtmEventLanes.TRANSACTION_LISTENER,
+            topics = "${pulsar.consumer.transaction-topic}",
+            subscriptionName = "${pulsar.consumer.transaction-subscription-name}",
+            subscriptionType = SubscriptionType.Exclusive,
+            consumerCustomizer = "perInstanceSubscriptionCustomizer",
+            ackMode = AckMode.MANUAL
+    )
+    public void consumeAtmTransactionMessage(AtmTransactionEvent event, Acknowledgement acknowledgement) {
+        log.debug("Received ATM transaction: {}", event);
+        eventLanes.submit(event.getAtmId(), acknowledgement,
+                () -> transactionHandlerService.processTransaction(event));
+    }
 }
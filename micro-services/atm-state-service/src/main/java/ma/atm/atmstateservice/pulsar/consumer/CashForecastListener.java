@@ -0,0 +1,37 @@
+package ma.atm.atmstateservice.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.event.AtmCountersUpdatedEvent;
+import ma.atm.atmstateservice.store.CashForecastStore;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.pulsar.annotation.PulsarListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@Slf4j
+public class CashForecastListener {
+
+    private final CashForecastStore cashForecastStore;
+
+    @Autowired
+    public CashForecastListener(CashForecastStore cashForecastStore) {
+        this.cashForecastStore = cashForecastStore;
+    }
+
+    // Its own subscription on the counter topic, next to the Key_Shared one of AtmStateListener: every instance
+    // forecasts the whole fleet, not only the ATMs it processes. Recording is O(1) per cassette, so no lane.
+    @PulsarListener(
+            topics = "${pulsar.consumer.counter-topic}",
+            subscriptionName = "${pulsar.consumer.forecast-subscription-name}",
+            subscriptionType = SubscriptionType.Exclusive,
+            consumerCustomizer = "perInstanceSubscriptionCustomizer"
+    )
+    public void consumeAtmCounterMessage(AtmCountersUpdatedEvent event) {
+        if (event.getAtmId() == null) {
+            return;
+        }
+        long timestamp = event.getTimestamp() != null ? event.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+        cashForecastStore.record(event.getAtmId(), timestamp, event.getCassettes());
+    }
+}
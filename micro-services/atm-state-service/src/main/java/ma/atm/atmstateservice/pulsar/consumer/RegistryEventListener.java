@@ -0,0 +1,49 @@
+package ma.atm.atmstateservice.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.event.AtmRegistryChangedEvent;
+import ma.atm.atmstateservice.service.AtmStateStreamService;
+import ma.atm.atmstateservice.store.CashForecastStore;
+import ma.atm.atmstateservice.store.RegistrySnapshotCache;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.pulsar.annotation.PulsarListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@Slf4j
+public class RegistryEventListener {
+
+    private final RegistrySnapshotCache registrySnapshotCache;
+    private final AtmStateStreamService atmStateStreamService;
+    private final CashForecastStore cashForecastStore;
+
+    @Autowired
+    public RegistryEventListener(RegistrySnapshotCache registrySnapshotCache, AtmStateStreamService atmStateStreamService,
+                                 CashForecastStore cashForecastStore) {
+        this.registrySnapshotCache = registrySnapshotCache;
+        this.atmStateStreamService = atmStateStreamService;
+        this.cashForecastStore = cashForecastStore;
+    }
+
+    @PulsarListener(
+            topics = "${pulsar.consumer.registry-topic}",
+            subscriptionName = "${pulsar.consumer.registry-subscription-name}",
+            schemaType = SchemaType.JSON,
+            subscriptionType = SubscriptionType.Exclusive,
+            consumerCustomizer = "perInstanceSubscriptionCustomizer"
+    )
+    public void consumeRegistryChange(AtmRegistryChangedEvent event) {
+        log.debug("Received registry {} event for ATM {}", event.getChangeType(), event.getAtmId());
+        registrySnapshotCache.apply(event);
+        if (event.getAtmId() == null) {
+            return;
+        }
+        if (event.isDeleted()) {
+            cashForecastStore.remove(event.getAtmId());
+        }
+        // Live subscribers get the ATM with its new registry data, or see it removed if it left their filters
+        atmStateStreamService.onAtmChanged(event.getAtmId());
+    }
+}
@@ -0,0 +1,59 @@
+package ma.atm.atmstateservice.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.event.AtmPeripheralsChangedEvent;
+import ma.atm.atmstateservice.event.AtmSummaryChangedEvent;
+import ma.atm.atmstateservice.service.AtmStateStreamService;
+import ma.atm.atmstateservice.store.AtmFullStateCache;
+import ma.atm.atmstateservice.store.FleetStateIndex;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.pulsar.annotation.PulsarListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@Slf4j
+public class StateChangeListener {
+
+    private final FleetStateIndex fleetStateIndex;
+    private final AtmFullStateCache fullStateCache;
+    private final AtmStateStreamService atmStateStreamService;
+
+    @Autowired
+    public StateChangeListener(FleetStateIndex fleetStateIndex, AtmFullStateCache fullStateCache,
+                               AtmStateStreamService atmStateStreamService) {
+        this.fleetStateIndex = fleetStateIndex;
+        this.fullStateCache = fullStateCache;
+        this.atmStateStreamService = atmStateStreamService;
+    }
+
+    // Every instance follows every change, its own included
+    @PulsarListener(
+            topics = "${pulsar.producer.state-change-topic}",
+            subscriptionName = "${pulsar.consumer.state-change-subscription-name}",
+            schemaType = SchemaType.JSON,
+            subscriptionType = SubscriptionType.Exclusive,
+            consumerCustomizer = "perInstanceSubscriptionCustomizer"
+    )
+    public void consumeStateChange(AtmSummaryChangedEvent event) {
+        log.debug("Received {} change for ATM {}", event.getKind(), event.getAtmId());
+        if (fleetStateIndex.apply(event)) {
+            fullStateCache.invalidate(event.getAtmId());
+        }
+        // Also for this instance's own changes, which were already in the index
+        atmStateStreamService.onAtmChanged(event.getAtmId());
+    }
+
+    @PulsarListener(
+            topics = "${pulsar.producer.peripheral-change-topic}",
+            subscriptionName = "${pulsar.consumer.state-change-subscription-name}",
+            schemaType = SchemaType.JSON,
+            subscriptionType = SubscriptionType.Exclusive,
+            consumerCustomizer = "perInstanceSubscriptionCustomizer"
+    )
+    public void consumePeripheralChange(AtmPeripheralsChangedEvent event) {
+        log.debug("Received peripheral change for ATM {}", event.getAtmId());
+        atmStateStreamService.onPeripheralsChanged(event);
+    }
+}
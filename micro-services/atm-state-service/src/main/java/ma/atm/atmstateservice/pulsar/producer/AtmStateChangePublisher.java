@@ -0,0 +1,94 @@
+package ma.atm.atmstateservice.pulsar.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.event.AtmPeripheralsChangedEvent;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import ma.atm.atmstateservice.event.AtmSummaryChangedEvent;
+import ma.atm.atmstateservice.store.AtmStateStore;
+import ma.atm.atmstateservice.store.FleetStateIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.pulsar.core.PulsarTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Publishes the state changes applied by this instance on the state-change topic, which every instance follows
+ * to keep its {@link FleetStateIndex} current, and peripheral deltas on the peripheral-change topic. Both feed
+ * the live state stream of every instance.
+ */
+@Component
+@Slf4j
+public class AtmStateChangePublisher {
+
+    private final AtmStateStore atmStateStore;
+    private final FleetStateIndex fleetStateIndex;
+
+    @Autowired
+    private PulsarTemplate<AtmSummaryChangedEvent> stateChangeTemplate;
+
+    @Autowired
+    private PulsarTemplate<AtmPeripheralsChangedEvent> peripheralChangeTemplate;
+
+    @Value("${pulsar.producer.state-change-topic}")
+    private String stateChangeTopic;
+
+    @Value("${pulsar.producer.peripheral-change-topic}")
+    private String peripheralChangeTopic;
+
+    public AtmStateChangePublisher(AtmStateStore atmStateStore, FleetStateIndex fleetStateIndex) {
+        this.atmStateStore = atmStateStore;
+        this.fleetStateIndex = fleetStateIndex;
+    }
+
+    // Runs on the thread that applied the change, so the changed kind is read from memory
+    @EventListener
+    public void onStateChanged(AtmStateChangedEvent event) {
+        AtmSummaryChangedEvent change = summaryOf(event).orElse(null);
+        if (change == null) {
+            return;
+        }
+        // Applied locally first, so this instance's own reads see the change before the topic echoes it back
+        fleetStateIndex.apply(change);
+
+        stateChangeTemplate.newMessage(change)
+                .withTopic(stateChangeTopic)
+                .withMessageCustomizer(message -> message.key(change.getAtmId()))
+                .sendAsync()
+                .whenComplete((messageId, error) -> {
+                    if (error != null) {
+                        // The other instances pick the change up from Postgres on their next index reload
+                        log.error("Failed to publish {} change for ATM {}: {}", change.getKind(), change.getAtmId(), error.getMessage(), error);
+                    }
+                });
+    }
+
+    @EventListener
+    public void onPeripheralsChanged(AtmPeripheralsChangedEvent event) {
+        peripheralChangeTemplate.newMessage(event)
+                .withTopic(peripheralChangeTopic)
+                .withMessageCustomizer(message -> message.key(event.getAtmId()))
+                .sendAsync()
+                .whenComplete((messageId, error) -> {
+                    if (error != null) {
+                        // Only live subscribers miss it; the configuration itself is in the state
+                        log.error("Failed to publish peripheral change for ATM {}: {}", event.getAtmId(), error.getMessage(), error);
+                    }
+                });
+    }
+
+    private Optional<AtmSummaryChangedEvent> summaryOf(AtmStateChangedEvent event) {
+        String atmId = event.getAtmId();
+        return switch (event.getKind()) {
+            case STATUS -> atmStateStore.getStatus(atmId).map(status -> new AtmSummaryChangedEvent(atmId, event.getKind(),
+                    FleetStateIndex.versionOf(status.getLastUpdateTimestamp()), status.getOperationalState(), null, null));
+            case CONFIGURATION -> atmStateStore.getConfiguration(atmId).map(configuration -> new AtmSummaryChangedEvent(atmId,
+                    event.getKind(), FleetStateIndex.versionOf(configuration.getLastUpdateTimestamp()), null,
+                    configuration.getOverallHealth(), null));
+            case COUNTER -> atmStateStore.getCounter(atmId).map(counter -> new AtmSummaryChangedEvent(atmId, event.getKind(),
+                    FleetStateIndex.versionOf(counter.getLastUpdateTimestamp()), null, null, counter.getLowCashFlag()));
+        };
+    }
+}
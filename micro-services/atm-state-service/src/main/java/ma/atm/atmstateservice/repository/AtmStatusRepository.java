@@ -5,6 +5,5 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface AtmStatusRepository extends JpaRepository<AtmStatus, String> {
-
+public interface AtmStatusRepository extends JpaRepository<AtmStatus, String>, AtmStatusRepositoryCustom {
 }
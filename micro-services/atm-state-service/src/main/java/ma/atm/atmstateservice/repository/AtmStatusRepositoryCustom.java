@@ -0,0 +1,26 @@
+package ma.atm.atmstateservice.repository;
+
+import ma.atm.atmstateservice.dto.AtmStateSummaryDto;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Set;
+
+/**
+ * Summary queries whose conditions depend on which filters are given, implemented in {@link AtmStatusRepositoryCustomImpl}.
+ */
+public interface AtmStatusRepositoryCustom {
+
+    // Summary fields findSummaries can sort on
+    Set<String> SUMMARY_SORT_PROPERTIES = Set.of(
+            "atmId", "operationalState", "overallHealth", "lowCashFlag", "lastUpdateTimestamp");
+
+    /**
+     * Fleet summary in one query: status joined with configuration health and the low-cash flag. Only the
+     * filters that are set become SQL conditions. An ATM without a configuration row reports
+     * {@link AtmStateSummaryDto#NO_CONFIGURATION_HEALTH}.
+     *
+     * @param pageable Sorted on {@link #SUMMARY_SORT_PROPERTIES}; may be unpaged
+     */
+    Page<AtmStateSummaryDto> findSummaries(String operationalState, String overallHealth, Boolean lowCash, Pageable pageable);
+}
@@ -0,0 +1,115 @@
+package ma.atm.atmstateservice.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import ma.atm.atmstateservice.dto.AtmStateSummaryDto;
+import ma.atm.atmstateservice.model.AtmConfiguration;
+import ma.atm.atmstateservice.model.AtmCounter;
+import ma.atm.atmstateservice.model.AtmStatus;
+import org.hibernate.Session;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+import org.hibernate.query.criteria.JpaRoot;
+import org.hibernate.query.sqm.tree.SqmJoinType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Built with the Criteria API rather than "(:x IS NULL OR ...)" in JPQL, so the planner only sees the
+// conditions that filter. The three tables share atm_id without a mapped association, hence Hibernate's
+// entity joins.
+public class AtmStatusRepositoryCustomImpl implements AtmStatusRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<AtmStateSummaryDto> findSummaries(String operationalState, String overallHealth, Boolean lowCash,
+                                                  Pageable pageable) {
+        HibernateCriteriaBuilder cb = entityManager.unwrap(Session.class).getCriteriaBuilder();
+
+        JpaCriteriaQuery<AtmStateSummaryDto> query = cb.createQuery(AtmStateSummaryDto.class);
+        JpaRoot<AtmStatus> s = query.from(AtmStatus.class);
+        From<?, AtmConfiguration> c = joinConfiguration(cb, s);
+        From<?, AtmCounter> k = joinCounter(cb, s);
+        Expression<String> health = cb.<String>selectCase()
+                .when(cb.isNull(c.get("atmId")), AtmStateSummaryDto.NO_CONFIGURATION_HEALTH)
+                .otherwise(c.<String>get("overallHealth"));
+        query.select(cb.construct(AtmStateSummaryDto.class, s.get("atmId"), s.get("operationalState"), health,
+                        k.get("lowCashFlag"), s.get("lastUpdateTimestamp")))
+                .where(filters(cb, s, c, k, operationalState, overallHealth, lowCash))
+                .orderBy(orders(cb, s, health, k, pageable.getSort()));
+
+        TypedQuery<AtmStateSummaryDto> typed = entityManager.createQuery(query);
+        if (pageable.isUnpaged()) {
+            List<AtmStateSummaryDto> content = typed.getResultList();
+            return new PageImpl<>(content, pageable, content.size());
+        }
+        List<AtmStateSummaryDto> content = typed.setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        return new PageImpl<>(content, pageable, count(cb, operationalState, overallHealth, lowCash));
+    }
+
+    private long count(HibernateCriteriaBuilder cb, String operationalState, String overallHealth, Boolean lowCash) {
+        JpaCriteriaQuery<Long> query = cb.createQuery(Long.class);
+        JpaRoot<AtmStatus> s = query.from(AtmStatus.class);
+        From<?, AtmConfiguration> c = overallHealth != null ? joinConfiguration(cb, s) : null;
+        From<?, AtmCounter> k = lowCash != null ? joinCounter(cb, s) : null;
+        query.select(cb.count(s))
+                .where(filters(cb, s, c, k, operationalState, overallHealth, lowCash));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static From<?, AtmConfiguration> joinConfiguration(HibernateCriteriaBuilder cb, JpaRoot<AtmStatus> s) {
+        var c = s.join(AtmConfiguration.class, SqmJoinType.LEFT);
+        c.on(cb.equal(c.get("atmId"), s.get("atmId")));
+        return c;
+    }
+
+    private static From<?, AtmCounter> joinCounter(HibernateCriteriaBuilder cb, JpaRoot<AtmStatus> s) {
+        var k = s.join(AtmCounter.class, SqmJoinType.LEFT);
+        k.on(cb.equal(k.get("atmId"), s.get("atmId")));
+        return k;
+    }
+
+    private static Predicate[] filters(HibernateCriteriaBuilder cb, JpaRoot<AtmStatus> s, From<?, AtmConfiguration> c,
+                                       From<?, AtmCounter> k, String operationalState, String overallHealth,
+                                       Boolean lowCash) {
+        List<Predicate> where = new ArrayList<>();
+        if (operationalState != null) {
+            where.add(cb.equal(s.get("operationalState"), operationalState));
+        }
+        if (overallHealth != null) {
+            where.add(cb.equal(c.get("overallHealth"), overallHealth));
+        }
+        if (lowCash != null) {
+            where.add(cb.equal(k.get("lowCashFlag"), lowCash));
+        }
+        return where.toArray(new Predicate[0]);
+    }
+
+    private static List<Order> orders(HibernateCriteriaBuilder cb, JpaRoot<AtmStatus> s, Expression<String> health,
+                                      From<?, AtmCounter> k, Sort sort) {
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            Expression<?> path = switch (order.getProperty()) {
+                case "atmId", "operationalState", "lastUpdateTimestamp" -> s.get(order.getProperty());
+                case "overallHealth" -> health;
+                case "lowCashFlag" -> k.get("lowCashFlag");
+                default -> throw new IllegalArgumentException("Unsortable summary property: " + order.getProperty());
+            };
+            orders.add(order.isAscending() ? cb.asc(path) : cb.desc(path));
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,105 @@
+package ma.atm.atmstateservice.service;
+
+import ma.atm.atmstateservice.dto.AtmCombinedDto;
+import ma.atm.atmstateservice.dto.AtmRegistryDto;
+import ma.atm.atmstateservice.dto.AtmStateSummaryDto;
+import ma.atm.atmstateservice.repository.AtmStatusRepository;
+import ma.atm.atmstateservice.store.FleetStateIndex;
+import ma.atm.atmstateservice.store.RegistrySnapshotCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the dashboard view of ATMs: state summary enriched with registry information.
+ */
+@Service
+public class AtmCombinedViewService {
+
+    private final AtmStatusRepository statusRepository;
+    private final FleetStateIndex fleetStateIndex;
+    private final RegistrySnapshotCache registrySnapshotCache;
+
+    @Autowired
+    public AtmCombinedViewService(AtmStatusRepository statusRepository,
+                                  FleetStateIndex fleetStateIndex,
+                                  RegistrySnapshotCache registrySnapshotCache) {
+        this.statusRepository = statusRepository;
+        this.fleetStateIndex = fleetStateIndex;
+        this.registrySnapshotCache = registrySnapshotCache;
+    }
+
+    /**
+     * Whole fleet, from a single summary query and the local registry snapshot.
+     */
+    public List<AtmCombinedDto> getFleet() {
+        Map<String, AtmRegistryDto> registryMap = registrySnapshotCache.snapshot();
+        return statusRepository.findSummaries(null, null, null, Pageable.unpaged())
+                .getContent()
+                .stream()
+                .map(summary -> createCombinedDto(summary, registryMap.get(summary.getAtmId())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Whole fleet from the fleet state index, which follows the changes of every instance. It can be ahead of
+     * {@link #getFleet()} by one flush interval.
+     */
+    public List<AtmCombinedDto> getLiveFleet() {
+        Map<String, AtmRegistryDto> registryMap = registrySnapshotCache.snapshot();
+        return fleetStateIndex.summaries().stream()
+                .map(summary -> createCombinedDto(summary, registryMap.get(summary.getAtmId())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * One ATM from the fleet state index, with the same defaults as {@link #getLiveFleet()}.
+     */
+    public Optional<AtmCombinedDto> getAtm(String atmId) {
+        return fleetStateIndex.getSummary(atmId)
+                .map(summary -> createCombinedDto(summary, registrySnapshotCache.get(atmId).orElse(null)));
+    }
+
+    /**
+     * @return Whether the ATM matches both filters; a null filter matches everything.
+     */
+    public static boolean matches(AtmCombinedDto atm, String region, String agencyCode) {
+        return (region == null || region.equalsIgnoreCase(atm.getRegion()))
+                && (agencyCode == null || agencyCode.equalsIgnoreCase(atm.getAgencyCode()));
+    }
+
+    /**
+     * Create combined DTO from state summary and registry data
+     */
+    public AtmCombinedDto createCombinedDto(AtmStateSummaryDto summary, AtmRegistryDto registry) {
+        AtmCombinedDto combined = new AtmCombinedDto();
+
+        // Copy state data
+        combined.setAtmId(summary.getAtmId());
+        combined.setOperationalState(summary.getOperationalState());
+        combined.setOverallHealth(summary.getOverallHealth());
+        combined.setLowCashFlag(summary.getLowCashFlag());
+        combined.setLastUpdateTimestamp(summary.getLastUpdateTimestamp());
+
+        // Copy registry data if available
+        if (registry != null) {
+            combined.setLabel(registry.getLabel());
+            combined.setBrand(registry.getBrand());
+            combined.setModel(registry.getModel());
+            combined.setRegion(registry.getRegion());
+            combined.setAgencyCode(registry.getAgencyCode());
+            combined.setAgencyName(registry.getAgencyName());
+            combined.setLocationAddress(registry.getLocationAddress());
+            combined.setLocationLatitude(registry.getLocationLatitude());
+            combined.setLocationLongitude(registry.getLocationLongitude());
+            combined.setIpAddress(registry.getIpAddress());
+        }
+
+        return combined;
+    }
+}
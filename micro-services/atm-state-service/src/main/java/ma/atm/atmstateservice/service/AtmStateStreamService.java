@@ -0,0 +1,351 @@
+package ma.atm.atmstateservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.dto.AtmCombinedDto;
+import ma.atm.atmstateservice.event.AtmPeripheralsChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes live ATM state to dashboard clients over Server-Sent Events.
+ * <p>
+ * A new subscriber first receives a {@code snapshot} event with every ATM matching its filters,
+ * then {@code delta} events holding only the ATMs that changed since. Changes are coalesced per ATM
+ * over {@code state.stream.push-interval-ms} and each changed ATM is built and serialized once per push,
+ * however many clients are connected. An ATM that stops matching the filters, after a registry change,
+ * is sent in a {@code removed} event. Configuration changes are also forwarded as {@code peripherals}
+ * events, holding only the peripherals that changed.
+ * <p>
+ * Snapshot and deltas are both built from the {@link ma.atm.atmstateservice.store.FleetStateIndex}. Changes
+ * arrive from the state-change and peripheral-change topics, which carry those of every instance, and from
+ * the registry topic, so every instance streams the whole fleet.
+ * <p>
+ * The push only queues events; a pool of {@code state.stream.sender-threads} writes them, one subscriber at a
+ * time each, so a slow client never holds up the others. A client more than {@code state.stream.max-queued-events}
+ * events behind is disconnected.
+ */
+@Service
+@Slf4j
+public class AtmStateStreamService {
+
+    private final AtmCombinedViewService atmCombinedViewService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${state.stream.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${state.stream.max-queued-events:100}")
+    private int maxQueuedEvents;
+
+    private final ExecutorService senders;
+
+    // ATMs changed since the last push
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Queue<AtmPeripheralsChangedEvent> pendingPeripherals = new ConcurrentLinkedQueue<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    public AtmStateStreamService(AtmCombinedViewService atmCombinedViewService,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${state.stream.sender-threads:4}") int senderThreads) {
+        this.atmCombinedViewService = atmCombinedViewService;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, task -> {
+            Thread sender = new Thread(task, "atm-stream-sender-" + threadCount.incrementAndGet());
+            sender.setDaemon(true);
+            return sender;
+        });
+
+        Gauge.builder("atm.state.stream.subscribers", subscribers, List::size)
+                .description("Clients connected to the live ATM state stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers a new client and sends it the initial snapshot.
+     *
+     * @param region     Only stream ATMs of this region, or all when null.
+     * @param agencyCode Only stream ATMs of this agency, or all when null.
+     */
+    public SseEmitter subscribe(String region, String agencyCode) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, region, agencyCode);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        // Registered before the snapshot is read, so changes made meanwhile are held back, not lost
+        subscribers.add(subscriber);
+
+        // From the index the deltas are built from, so it is at least as recent as the changes held back
+        List<AtmCombinedDto> snapshot = atmCombinedViewService.getLiveFleet().stream()
+                .filter(subscriber::accepts)
+                .toList();
+        synchronized (subscriber) {
+            send(subscriber, "snapshot", toJson(snapshot));
+            for (AtmCombinedDto atm : snapshot) {
+                subscriber.visible.add(atm.getAtmId());
+            }
+            subscriber.ready = true;
+            if (!subscriber.backlog.isEmpty()) {
+                List<Change> changes = loadChanged(subscriber.backlog);
+                subscriber.backlog.clear();
+                sendDelta(subscriber, changes);
+            }
+        }
+        log.info("Live state subscriber connected (region={}, agencyCode={}), {} ATMs in snapshot",
+                region, agencyCode, snapshot.size());
+        return emitter;
+    }
+
+    /**
+     * Called for every state or registry change of an ATM, whichever instance made it.
+     */
+    public void onAtmChanged(String atmId) {
+        pending.add(atmId);
+    }
+
+    public void onPeripheralsChanged(AtmPeripheralsChangedEvent event) {
+        if (!subscribers.isEmpty()) {
+            pendingPeripherals.add(event);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${state.stream.push-interval-ms:500}")
+    public void pushChanges() {
+        pushStateChanges();
+        pushPeripheralChanges();
+    }
+
+    private void pushStateChanges() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Set<String> changedIds = new HashSet<>();
+        for (Iterator<String> it = pending.iterator(); it.hasNext(); ) {
+            changedIds.add(it.next());
+            it.remove();
+        }
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        List<Change> changes = loadChanged(changedIds);
+        for (Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                if (!subscriber.ready) {
+                    subscriber.backlog.addAll(changedIds);
+                    continue;
+                }
+                sendDelta(subscriber, changes);
+            }
+        }
+    }
+
+    // Peripheral deltas are not part of the snapshot, so subscribers still waiting for it simply skip them
+    private void pushPeripheralChanges() {
+        List<Change> changes = new ArrayList<>();
+        AtmPeripheralsChangedEvent event;
+        while ((event = pendingPeripherals.poll()) != null) {
+            AtmCombinedDto atm = atmCombinedViewService.getAtm(event.getAtmId()).orElse(null);
+            changes.add(new Change(event.getAtmId(), atm, toJson(event)));
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                if (subscriber.ready) {
+                    sendPeripherals(subscriber, changes);
+                }
+            }
+        }
+    }
+
+    // Keeps idle connections from being closed by proxies
+    @Scheduled(fixedDelayString = "${state.stream.keepalive-interval-ms:15000}")
+    public void keepAlive() {
+        for (Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                if (subscriber.ready) {
+                    enqueue(subscriber, null, SseEmitter.event().comment("keepalive"));
+                }
+            }
+        }
+    }
+
+    // Each changed ATM is built and serialized once, then shared by every subscriber
+    private List<Change> loadChanged(Set<String> atmIds) {
+        List<Change> changes = new ArrayList<>(atmIds.size());
+        for (String atmId : atmIds) {
+            AtmCombinedDto atm = atmCombinedViewService.getAtm(atmId).orElse(null);
+            changes.add(new Change(atmId, atm, atm != null ? toJson(atm) : null));
+        }
+        return changes;
+    }
+
+    // ATMs the subscriber was sent but that no longer match its filters are listed in a "removed" event
+    private void sendDelta(Subscriber subscriber, List<Change> changes) {
+        StringJoiner delta = new StringJoiner(",", "[", "]");
+        List<String> removed = new ArrayList<>();
+        int count = 0;
+        for (Change change : changes) {
+            if (subscriber.accepts(change.atm())) {
+                subscriber.visible.add(change.atmId());
+                delta.add(change.json());
+                count++;
+            } else if (subscriber.visible.remove(change.atmId())) {
+                removed.add(change.atmId());
+            }
+        }
+        if (count > 0) {
+            send(subscriber, "delta", delta.toString());
+        }
+        if (!removed.isEmpty()) {
+            send(subscriber, "removed", toJson(removed));
+        }
+    }
+
+    private void sendPeripherals(Subscriber subscriber, List<Change> changes) {
+        StringJoiner delta = new StringJoiner(",", "[", "]");
+        int count = 0;
+        for (Change change : changes) {
+            if (subscriber.accepts(change.atm())) {
+                delta.add(change.json());
+                count++;
+            }
+        }
+        if (count > 0) {
+            send(subscriber, "peripherals", delta.toString());
+        }
+    }
+
+    private void send(Subscriber subscriber, String name, String data) {
+        enqueue(subscriber, name, SseEmitter.event().name(name).data(data));
+    }
+
+    private void enqueue(Subscriber subscriber, String name, SseEmitter.SseEventBuilder event) {
+        if (subscriber.closed) {
+            return;
+        }
+        if (subscriber.queued.incrementAndGet() > maxQueuedEvents) {
+            meterRegistry.counter("atm.state.stream.slow.dropped").increment();
+            drop(subscriber, new IllegalStateException("more than " + maxQueuedEvents + " events behind"));
+            return;
+        }
+        subscriber.outbox.add(new Outgoing(name, event));
+        if (subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    // Runs on a sender thread; the draining flag keeps a subscriber's events in order on one thread at a time
+    private void drain(Subscriber subscriber) {
+        do {
+            Outgoing next;
+            while ((next = subscriber.outbox.poll()) != null) {
+                subscriber.queued.decrementAndGet();
+                if (subscriber.closed) {
+                    continue;
+                }
+                try {
+                    subscriber.emitter.send(next.event());
+                    if (next.name() != null) {
+                        meterRegistry.counter("atm.state.stream.events", "type", next.name()).increment();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    drop(subscriber, e);
+                }
+            }
+            subscriber.draining.set(false);
+        } while (!subscriber.outbox.isEmpty() && subscriber.draining.compareAndSet(false, true));
+    }
+
+    private void drop(Subscriber subscriber, Exception e) {
+        if (subscriber.closed) {
+            return;
+        }
+        log.debug("Dropping live state subscriber: {}", e.getMessage());
+        remove(subscriber);
+        subscriber.emitter.completeWithError(e);
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize live state", e);
+        }
+    }
+
+    // atm is null for an ATM the index does not know
+    private record Change(String atmId, AtmCombinedDto atm, String json) {
+    }
+
+    // Name is null for comments, which are not counted
+    private record Outgoing(String name, SseEmitter.SseEventBuilder event) {
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final String region;
+        private final String agencyCode;
+        // Set once the snapshot is out; until then changes are parked in the backlog
+        private boolean ready;
+        private final Set<String> backlog = new HashSet<>();
+        // ATMs sent in the snapshot or a delta and not removed since
+        private final Set<String> visible = new HashSet<>();
+        // Events waiting for a sender thread
+        private final Queue<Outgoing> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, String region, String agencyCode) {
+            this.emitter = emitter;
+            this.region = region;
+            this.agencyCode = agencyCode;
+        }
+
+        boolean accepts(AtmCombinedDto atm) {
+            return atm != null && AtmCombinedViewService.matches(atm, region, agencyCode);
+        }
+    }
+}
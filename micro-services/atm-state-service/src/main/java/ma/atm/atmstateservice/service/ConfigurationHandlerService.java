@@ -1,85 +1,97 @@
 package ma.atm.atmstateservice.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import ma.atm.atmstateservice.event.AtmConfigurationChangedEvent;
-import ma.atm.atmstateservice.model.AtmConfiguration;
+import ma.atm.atmstateservice.event.AtmPeripheralsChangedEvent;
 import ma.atm.atmstateservice.model.AtmStatus;
-import ma.atm.atmstateservice.repository.AtmConfigurationRepository;
-import ma.atm.atmstateservice.repository.AtmStatusRepository;
+import ma.atm.atmstateservice.store.AtmStateStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Service
 @Slf4j
 public class ConfigurationHandlerService {
 
-    private final AtmConfigurationRepository atmConfigurationRepository;
-    private final ObjectMapper objectMapper;
-    private final AtmStatusRepository atmStatusRepository;
+    private final AtmStateStore atmStateStore;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public ConfigurationHandlerService(AtmConfigurationRepository atmConfigurationRepository,
-                                       ObjectMapper objectMapper, AtmStatusRepository atmStatusRepository) {
-        this.atmConfigurationRepository = atmConfigurationRepository;
-        this.objectMapper = objectMapper;
-        this.atmStatusRepository = atmStatusRepository;
+    public ConfigurationHandlerService(AtmStateStore atmStateStore, ApplicationEventPublisher eventPublisher) {
+        this.atmStateStore = atmStateStore;
+        this.eventPublisher = eventPublisher;
     }
 
 
-    @Transactional
     public void processConfigurationChange(AtmConfigurationChangedEvent event) {
         log.debug("Processing configuration change for ATM: {}", event.getAtmId());
 
-        // Retrieve existing configuration, or create a new one if not found.
-        AtmConfiguration configuration = atmConfigurationRepository.findById(event.getAtmId())
-                .orElse(new AtmConfiguration());
-        configuration.setAtmId(event.getAtmId());
-
         // Get the new peripherals configuration from the event.
         Map<String, Object> newPeripheralDetails = event.getPeripherals();
 
-        if (configuration.getPeripheralDetails() != null) {
-            try {
-                ObjectMapper mapper = new ObjectMapper();
-                // Convert maps to JsonNodes for deep comparison.
-                JsonNode storedNode = mapper.valueToTree(configuration.getPeripheralDetails());
-                JsonNode newNode = mapper.valueToTree(newPeripheralDetails);
-                if (storedNode.equals(newNode)) {
-                    log.info("No change detected in configuration for ATM: {}", event.getAtmId());
-                    return;
-                }
-            } catch (Exception e) {
-                log.error("Failed to compare configuration JSON: {}", e.getMessage(), e);
+        // Hashed once, outside the store update; an unchanged configuration is rejected on the hash alone
+        long newHash = PeripheralDigest.hash(newPeripheralDetails);
+        PeripheralDigest.Diff[] diff = {null};
+
+        boolean changed = atmStateStore.updateConfiguration(event.getAtmId(), configuration -> {
+            Long storedHash = configuration.getPeripheralHash();
+            if (storedHash == null && configuration.getPeripheralDetails() != null) {
+                // Row written before the hash was stored
+                storedHash = PeripheralDigest.hash(configuration.getPeripheralDetails());
+            }
+            if (storedHash != null && storedHash == newHash) {
+                return false;
+            }
+            diff[0] = PeripheralDigest.diff(configuration.getPeripheralDetails(), newPeripheralDetails);
+
+            // Update configuration as a significant change.
+            configuration.setPeripheralDetails(newPeripheralDetails);
+            configuration.setPeripheralHash(newHash);
+
+            // Calculate overall health based on the new peripheral details.
+            if (newPeripheralDetails != null) {
+                configuration.setOverallHealth(calculateOverallHealth(event.getAtmId()));
+            } else {
+                configuration.setOverallHealth("GRAY"); // Or some default value.
             }
-        }
 
-        // Update configuration as a significant change.
-        configuration.setPeripheralDetails(newPeripheralDetails);
+            configuration.setLastUpdateTimestamp(event.getTimestamp() != null ?
+                    event.getTimestamp().atOffset(ZoneOffset.UTC) : OffsetDateTime.now(ZoneOffset.UTC));
+            return true;
+        });
 
-        // Calculate overall health based on the new peripheral details.
-        if (newPeripheralDetails != null) {
-            configuration.setOverallHealth(calculateOverallHealth(event.getAtmId()));
+        if (changed) {
+            publishPeripheralDelta(event, diff[0]);
+            log.info("Successfully processed and updated configuration change for ATM: {}, peripherals changed: {}",
+                    event.getAtmId(), diff[0] != null ? diff[0].all() : "none");
         } else {
-            configuration.setOverallHealth("GRAY"); // Or some default value.
+            log.info("No change detected in configuration for ATM: {}", event.getAtmId());
         }
+    }
 
-        configuration.setLastUpdateTimestamp(event.getTimestamp() != null ?
-                event.getTimestamp().atOffset(ZoneOffset.UTC) : OffsetDateTime.now(ZoneOffset.UTC));
-
-        atmConfigurationRepository.save(configuration);
-        log.info("Successfully processed and updated configuration change for ATM: {}", event.getAtmId());
+    private void publishPeripheralDelta(AtmConfigurationChangedEvent event, PeripheralDigest.Diff diff) {
+        if (diff == null || diff.isEmpty()) {
+            return;
+        }
+        Map<String, Object> updated = new LinkedHashMap<>();
+        for (String peripheral : diff.added()) {
+            updated.put(peripheral, event.getPeripherals().get(peripheral));
+        }
+        for (String peripheral : diff.changed()) {
+            updated.put(peripheral, event.getPeripherals().get(peripheral));
+        }
+        eventPublisher.publishEvent(new AtmPeripheralsChangedEvent(event.getAtmId(),
+                event.getTimestamp() != null ? event.getTimestamp() : Instant.now(), updated, diff.removed()));
     }
 
     private String calculateOverallHealth(String atmId) {
-        AtmStatus atmStatus = atmStatusRepository.findById(atmId)
+        AtmStatus atmStatus = atmStateStore.getStatus(atmId)
                 .orElseThrow(() -> new RuntimeException("ATM status not found for ATM ID: " + atmId));
         return switch (atmStatus.getOperationalState()) {
             case "Good", "Working" -> "GREEN";
@@ -101,4 +113,4 @@ public class ConfigurationHandlerService {
                 componentKey.contains("validator") ||      // billValidator
                 componentKey.contains("sensor");           // security sensors
     }
-}
\ No newline at end of file
+}
@@ -4,18 +4,18 @@ package ma.atm.atmstateservice.service;
 import ma.atm.atmstateservice.event.AtmCountersUpdatedEvent;
 import ma.atm.atmstateservice.model.AtmCounter;
 import ma.atm.atmstateservice.model.Cassette;
-import ma.atm.atmstateservice.repository.AtmCounterRepository;
+import ma.atm.atmstateservice.store.AtmHistoryStore;
+import ma.atm.atmstateservice.store.AtmStateStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 
 
@@ -24,74 +24,108 @@ import java.util.Optional;
 public class CounterHandlerService {
 
     private static final Logger log = LoggerFactory.getLogger(CounterHandlerService.class);
-    private final AtmCounterRepository atmCounterRepository;
+    private final AtmStateStore atmStateStore;
+    private final AtmHistoryStore atmHistoryStore;
 
-    public CounterHandlerService(AtmCounterRepository atmCounterRepository) {
-        this.atmCounterRepository = atmCounterRepository;
+    public CounterHandlerService(AtmStateStore atmStateStore, AtmHistoryStore atmHistoryStore) {
+        this.atmStateStore = atmStateStore;
+        this.atmHistoryStore = atmHistoryStore;
     }
 
-    @Transactional
     public void processCounterUpdate(AtmCountersUpdatedEvent event) {
         log.debug("Processing counter update for ATM: {}", event.getAtmId());
 
-        AtmCounter counterSummary = atmCounterRepository.findById(event.getAtmId())
-                .orElse(new AtmCounter());
-
-        counterSummary.setAtmId(event.getAtmId());
-        counterSummary.setTotalCashAvailable(event.getTotalCashAvailable() != null ? event.getTotalCashAvailable().doubleValue() : null);
-        counterSummary.setRejectBinPercentageFull(event.getRejectBin() != null ? event.getRejectBin().getPercentageFull() : null);
-        counterSummary.setLastUpdateTimestamp(event.getTimestamp() != null ? event.getTimestamp().atOffset(ZoneOffset.UTC) : OffsetDateTime.now(ZoneOffset.UTC));
-
-        // Update Cassette details using unique cassetteId
-        List<Cassette> updatedCassettes = new ArrayList<>();
-        boolean isLowCash = false;
-        if (event.getCassettes() != null) {
-            for (Cassette info : event.getCassettes()) {
-                Cassette cassette = findOrCreateCassette(counterSummary, info.getCassetteId());
-                cassette.setAtmCounter(counterSummary);
-                cassette.setCassetteId(info.getCassetteId()); // Unique identifier
-                cassette.setDenomination(info.getDenomination());
-                cassette.setCurrency(info.getCurrency());
-                cassette.setNotesRemaining(info.getNotesRemaining());
-                cassette.setCassetteStatus(info.getCassetteStatus());
-                cassette.setTotalAmount(info.getTotalAmount());
-                cassette.setRejectCount(info.getRejectCount());
-                cassette.setDispensedSinceRefill(info.getDispensedSinceRefill());
-                updatedCassettes.add(cassette);
-
-                // Low Cash Logic
-                if ("OK".equalsIgnoreCase(info.getCassetteStatus()) && info.getNotesRemaining() != null && info.getNotesRemaining() < 200) {
-                    isLowCash = true;
-                }
-                if ("LOW".equalsIgnoreCase(info.getCassetteStatus()) || "EMPTY".equalsIgnoreCase(info.getCassetteStatus())) {
-                    isLowCash = true;
+        // Counter events are full snapshots; only one that changes the counters is kept and persisted.
+        boolean changed = atmStateStore.updateCounter(event.getAtmId(), counterSummary -> {
+            boolean isNew = counterSummary.getLastUpdateTimestamp() == null;
+            CounterContent previous = contentOf(counterSummary);
+
+            counterSummary.setTotalCashAvailable(event.getTotalCashAvailable() != null ? event.getTotalCashAvailable().doubleValue() : null);
+            counterSummary.setRejectBinPercentageFull(event.getRejectBin() != null ? event.getRejectBin().getPercentageFull() : null);
+            counterSummary.setLastUpdateTimestamp(event.getTimestamp() != null ? event.getTimestamp().atOffset(ZoneOffset.UTC) : OffsetDateTime.now(ZoneOffset.UTC));
+
+            // Update Cassette details using cassetteId, unique within the ATM
+            Map<String, Cassette> existingCassettes = indexByCassetteId(counterSummary.getCassettes());
+            List<Cassette> updatedCassettes = new ArrayList<>();
+            boolean isLowCash = false;
+            if (event.getCassettes() != null) {
+                for (AtmCountersUpdatedEvent.Cassette info : event.getCassettes()) {
+                    Cassette cassette = info.getCassetteId() != null ? existingCassettes.get(info.getCassetteId()) : null;
+                    if (cassette == null) {
+                        cassette = new Cassette();
+                    }
+                    cassette.setAtmCounter(counterSummary);
+                    cassette.setCassetteId(info.getCassetteId()); // Unique identifier
+                    cassette.setDenomination(info.getDenomination());
+                    cassette.setCurrency(info.getCurrency());
+                    cassette.setNotesRemaining(info.getNotesRemaining());
+                    cassette.setCassetteStatus(info.getCassetteStatus());
+                    cassette.setTotalAmount(info.getTotalAmount());
+                    cassette.setRejectCount(info.getRejectCount());
+                    cassette.setDispensedSinceRefill(info.getDispensedSinceRefill());
+                    updatedCassettes.add(cassette);
+
+                    // Low Cash Logic
+                    if ("OK".equalsIgnoreCase(info.getCassetteStatus()) && info.getNotesRemaining() != null && info.getNotesRemaining() < 200) {
+                        isLowCash = true;
+                    }
+                    if ("LOW".equalsIgnoreCase(info.getCassetteStatus()) || "EMPTY".equalsIgnoreCase(info.getCassetteStatus())) {
+                        isLowCash = true;
+                    }
                 }
             }
-        }
 
-        // Replace cassette list
-        if(counterSummary.getCassettes() == null) {
-            counterSummary.setCassettes(new ArrayList<>());
+            // Replace cassette list
+            if(counterSummary.getCassettes() == null) {
+                counterSummary.setCassettes(new ArrayList<>());
+            }
+            counterSummary.getCassettes().clear();
+            counterSummary.getCassettes().addAll(updatedCassettes);
+            counterSummary.setLowCashFlag(isLowCash);
+            return isNew || !previous.equals(contentOf(counterSummary));
+        });
+
+        atmStateStore.getCounter(event.getAtmId()).ifPresent(counter -> atmHistoryStore.appendCounter(event.getAtmId(),
+                event.getTimestamp(), counter.getTotalCashAvailable(), counter.getRejectBinPercentageFull(), counter.getLowCashFlag()));
+
+        if (changed) {
+            log.info("Successfully processed counter update for ATM: {}", event.getAtmId());
+        } else {
+            log.info("No counter change detected for ATM: {}. Skipping update.", event.getAtmId());
         }
-        counterSummary.getCassettes().clear();
-        counterSummary.getCassettes().addAll(updatedCassettes);
-        counterSummary.setLowCashFlag(isLowCash);
-
-        atmCounterRepository.save(counterSummary);
-        log.info("Successfully processed counter update for ATM: {}", event.getAtmId());
         log.info(String.valueOf(event));
     }
 
-    // New helper method that looks up by cassetteId in the counterSummary
-    private Cassette findOrCreateCassette(AtmCounter counterSummary, String cassetteId) {
-        if (counterSummary.getCassettes() != null && cassetteId != null) {
-            Optional<Cassette> existing = counterSummary.getCassettes().stream()
-                    .filter(c -> cassetteId.equals(c.getCassetteId()))
-                    .findFirst();
-            if (existing.isPresent()) {
-                return existing.get();
+    // What a counter update can change, the timestamp aside
+    private record CounterContent(Double totalCashAvailable, Integer rejectBinPercentageFull, Boolean lowCashFlag,
+                                  List<CassetteContent> cassettes) {
+    }
+
+    private record CassetteContent(String cassetteId, Integer denomination, String currency, Integer notesRemaining,
+                                   String cassetteStatus, Long totalAmount, Integer rejectCount, Integer dispensedSinceRefill) {
+    }
+
+    private static CounterContent contentOf(AtmCounter counter) {
+        List<CassetteContent> cassettes = new ArrayList<>();
+        if (counter.getCassettes() != null) {
+            for (Cassette c : counter.getCassettes()) {
+                cassettes.add(new CassetteContent(c.getCassetteId(), c.getDenomination(), c.getCurrency(), c.getNotesRemaining(),
+                        c.getCassetteStatus(), c.getTotalAmount(), c.getRejectCount(), c.getDispensedSinceRefill()));
+            }
+        }
+        return new CounterContent(counter.getTotalCashAvailable(), counter.getRejectBinPercentageFull(),
+                counter.getLowCashFlag(), cassettes);
+    }
+
+    private Map<String, Cassette> indexByCassetteId(List<Cassette> cassettes) {
+        Map<String, Cassette> index = new HashMap<>();
+        if (cassettes != null) {
+            for (Cassette cassette : cassettes) {
+                if (cassette.getCassetteId() != null) {
+                    index.put(cassette.getCassetteId(), cassette);
+                }
             }
         }
-        return new Cassette();
+        return index;
     }
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package ma.atm.atmstateservice.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stable 64-bit content hash of peripheral maps, and a per-peripheral diff built on it.
+ *
+ * <p>The hash walks the map as Jackson deserialized it (maps, lists, strings, numbers, booleans) without
+ * building JSON trees. Map entries are combined order-independently, so key order does not matter, while
+ * list order does. Numbers hash by value, so {@code 1}, {@code 1L} and {@code 1.0} are equal whether they come
+ * from an event or from the JSONB column. The hash does not depend on the JVM, so it can be stored.
+ */
+public final class PeripheralDigest {
+
+    // Type tags keep e.g. "1", 1 and [1] apart
+    private static final long NULL = 0x6a09e667f3bcc908L;
+    private static final long STRING = 0x3c6ef372fe94f82bL;
+    private static final long NUMBER = 0x510e527fade682d1L;
+    private static final long BOOLEAN = 0x1f83d9abfb41bd6bL;
+    private static final long LIST = 0x9b05688c2b3e6c1fL;
+    private static final long MAP = 0x5be0cd19137e2179L;
+
+    private PeripheralDigest() {
+    }
+
+    /**
+     * Changes between two peripheral maps, by top-level peripheral.
+     */
+    public record Diff(List<String> added, List<String> changed, List<String> removed) {
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        public List<String> all() {
+            List<String> all = new ArrayList<>(added.size() + changed.size() + removed.size());
+            all.addAll(added);
+            all.addAll(changed);
+            all.addAll(removed);
+            return all;
+        }
+    }
+
+    public static long hash(Map<String, Object> peripherals) {
+        return hashValue(peripherals);
+    }
+
+    /**
+     * Compares peripherals one by one, hashing each value instead of comparing trees.
+     */
+    public static Diff diff(Map<String, Object> previous, Map<String, Object> current) {
+        Map<String, Object> before = previous != null ? previous : Map.of();
+        Map<String, Object> after = current != null ? current : Map.of();
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : after.entrySet()) {
+            if (!before.containsKey(entry.getKey())) {
+                added.add(entry.getKey());
+            } else if (hashValue(before.get(entry.getKey())) != hashValue(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        return new Diff(added, changed, removed);
+    }
+
+    private static long hashValue(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        if (value instanceof CharSequence text) {
+            return mix(STRING ^ hashChars(text));
+        }
+        if (value instanceof Boolean bool) {
+            return mix(BOOLEAN ^ (bool ? 1 : 2));
+        }
+        if (value instanceof Number number) {
+            return mix(NUMBER ^ hashNumber(number));
+        }
+        if (value instanceof Map<?, ?> map) {
+            // Sum of entry hashes: independent of iteration order
+            long h = MAP + map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                h += mix(hashValue(String.valueOf(entry.getKey())) * 31 + hashValue(entry.getValue()));
+            }
+            return mix(h);
+        }
+        if (value instanceof Collection<?> items) {
+            long h = LIST + items.size();
+            for (Object item : items) {
+                h = h * 31 + hashValue(item);
+            }
+            return mix(h);
+        }
+        return mix(STRING ^ hashChars(value.toString()));
+    }
+
+    private static long hashNumber(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        if (number instanceof BigInteger big && big.bitLength() < 64) {
+            return big.longValue();
+        }
+        double d = number instanceof BigDecimal decimal ? decimal.doubleValue() : number.doubleValue();
+        // Integral doubles hash like the equivalent long
+        if (d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+            return (long) d;
+        }
+        return Double.doubleToLongBits(d);
+    }
+
+    // 64-bit FNV-1a over UTF-16 code units
+    private static long hashChars(CharSequence text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
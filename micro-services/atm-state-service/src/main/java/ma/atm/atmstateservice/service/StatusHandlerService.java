@@ -1,13 +1,10 @@
 package ma.atm.atmstateservice.service;
 
 
-import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import ma.atm.atmstateservice.event.AtmStatusUpdatedEvent;
-import ma.atm.atmstateservice.model.AtmStatus;
-import ma.atm.atmstateservice.repository.AtmStatusRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import ma.atm.atmstateservice.store.AtmHistoryStore;
+import ma.atm.atmstateservice.store.AtmStateStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -19,71 +16,68 @@ import java.util.Objects;
 @Slf4j
 public class StatusHandlerService {
 
-    private final AtmStatusRepository atmStatusRepository;
+    private final AtmStateStore atmStateStore;
+    private final AtmHistoryStore atmHistoryStore;
 
     @Autowired
-    public StatusHandlerService(AtmStatusRepository atmStatusRepository) {
-        this.atmStatusRepository = atmStatusRepository;
+    public StatusHandlerService(AtmStateStore atmStateStore, AtmHistoryStore atmHistoryStore) {
+        this.atmStateStore = atmStateStore;
+        this.atmHistoryStore = atmHistoryStore;
     }
 
-    @Transactional
     public void processStatusUpdate(AtmStatusUpdatedEvent event) {
         log.debug("Processing status update for ATM: {}", event.getAtmId());
 
-        // Find existing status or create a new one if not found.
-        AtmStatus status = atmStatusRepository.findById(event.getAtmId()).orElse(new AtmStatus());
+        // Applied to a copy of the in-memory status (or a new one); persisted by the store's next flush.
+        boolean changed = atmStateStore.updateStatus(event.getAtmId(), status -> {
+            boolean significant = status.getLastUpdateTimestamp() == null; // New record
 
-        boolean changed = false;
-
-        // Update atmId if it's a new record
-        if (status.getAtmId() == null) {
-            status.setAtmId(event.getAtmId());
-            changed = true;
-        }
-
-        // Only update operationalState if it is different from the existing value.
-        if (!Objects.equals(status.getOperationalState(), event.getOperationalState())) {
-            status.setOperationalState(event.getOperationalState());
-            changed = true;
-        }
+            // Only update operationalState if it is different from the existing value.
+            if (!Objects.equals(status.getOperationalState(), event.getOperationalState())) {
+                status.setOperationalState(event.getOperationalState());
+                significant = true;
+            }
 
-        // Only update maintenanceMode if it is different.
-        if (!Objects.equals(status.getMaintenanceMode(), event.getMaintenanceMode())) {
-            status.setMaintenanceMode(event.getMaintenanceMode());
-            changed = true;
-        }
+            // Only update maintenanceMode if it is different.
+            if (!Objects.equals(status.getMaintenanceMode(), event.getMaintenanceMode())) {
+                status.setMaintenanceMode(event.getMaintenanceMode());
+                significant = true;
+            }
 
-        // Only update lastSuccessfulConnection if it is different.
-        if (event.getLastSuccessfulConnection() != null) {
-            OffsetDateTime newLastSuccessfulConnection = event.getLastSuccessfulConnection().atOffset(ZoneOffset.UTC);
-            if (!Objects.equals(status.getLastSuccessfulConnection(), newLastSuccessfulConnection)) {
-                status.setLastSuccessfulConnection(newLastSuccessfulConnection);
-                changed = true;
+            // Only update lastSuccessfulConnection if it is different.
+            if (event.getLastSuccessfulConnection() != null) {
+                OffsetDateTime newLastSuccessfulConnection = event.getLastSuccessfulConnection().atOffset(ZoneOffset.UTC);
+                if (!Objects.equals(status.getLastSuccessfulConnection(), newLastSuccessfulConnection)) {
+                    status.setLastSuccessfulConnection(newLastSuccessfulConnection);
+                    significant = true;
+                }
             }
-        }
 
-        // Only update lastSuccessfulTransaction if it is different.
-        if (event.getLastSuccessfulTransaction() != null) {
-            OffsetDateTime newLastSuccessfulTransaction = event.getLastSuccessfulTransaction().atOffset(ZoneOffset.UTC);
-            if (!Objects.equals(status.getLastSuccessfulTransaction(), newLastSuccessfulTransaction)) {
-                status.setLastSuccessfulTransaction(newLastSuccessfulTransaction);
-                changed = true;
+            // Only update lastSuccessfulTransaction if it is different.
+            if (event.getLastSuccessfulTransaction() != null) {
+                OffsetDateTime newLastSuccessfulTransaction = event.getLastSuccessfulTransaction().atOffset(ZoneOffset.UTC);
+                if (!Objects.equals(status.getLastSuccessfulTransaction(), newLastSuccessfulTransaction)) {
+                    status.setLastSuccessfulTransaction(newLastSuccessfulTransaction);
+                    significant = true;
+                }
             }
-        }
 
-        // Always update lastUpdateTimestamp from event, to record the time when this event was processed.
-        status.setLastUpdateTimestamp(
-                (event.getTimestamp() != null)
-                        ? event.getTimestamp().atOffset(ZoneOffset.UTC)
-                        : OffsetDateTime.now(ZoneOffset.UTC)
-        );
+            // Record the time of this event along with the change.
+            status.setLastUpdateTimestamp(
+                    (event.getTimestamp() != null)
+                            ? event.getTimestamp().atOffset(ZoneOffset.UTC)
+                            : OffsetDateTime.now(ZoneOffset.UTC)
+            );
+            return significant;
+        });
+
+        // Every reported sample goes to history, changed or not
+        atmHistoryStore.appendStatus(event.getAtmId(), event.getTimestamp(), event.getOperationalState(), event.getMaintenanceMode());
 
-        // If any significant field changed OR the status entity is new, then save the updated entity.
-        if (changed || status.getAtmId() == null) {
-            atmStatusRepository.save(status);
+        if (changed) {
             log.info("Successfully processed status update for ATM: {}", event.getAtmId());
         } else {
             log.info("No meaningful change detected for ATM: {}. Skipping update.", event.getAtmId());
         }
     }
-}
\ No newline at end of file
+}
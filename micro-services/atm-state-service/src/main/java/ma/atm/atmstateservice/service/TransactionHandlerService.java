@@ -0,0 +1,50 @@
+package ma.atm.atmstateservice.service;
+
+
+import ma.atm.atmstateservice.event.AtmTransactionEvent;
+import ma.atm.atmstateservice.store.TransactionAggregateStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+
+@Service
+public class TransactionHandlerService {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionHandlerService.class);
+
+    // ISO 8583 "approved"; any other response code counts as a failed transaction
+    private static final Set<String> APPROVED_RESPONSE_CODES = Set.of("00", "000");
+
+    private final TransactionAggregateStore transactionAggregateStore;
+
+    public TransactionHandlerService(TransactionAggregateStore transactionAggregateStore) {
+        this.transactionAggregateStore = transactionAggregateStore;
+    }
+
+    public void processTransaction(AtmTransactionEvent event) {
+        if (event.getAtmId() == null) {
+            log.warn("Ignoring transaction {} without atmId", event.getTransactionId());
+            return;
+        }
+        log.debug("Processing transaction {} for ATM: {}", event.getTransactionId(), event.getAtmId());
+
+        long timestamp = event.getTimestamp() != null ? event.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+        boolean failed = event.getResponseCode() != null && !APPROVED_RESPONSE_CODES.contains(event.getResponseCode().trim());
+
+        long dispensed = 0;
+        if (event.getDispensedDenominations() != null) {
+            for (AtmTransactionEvent.DispensedDenomination d : event.getDispensedDenominations()) {
+                if (d.getDenomination() != null && d.getCount() != null) {
+                    dispensed += (long) d.getDenomination() * d.getCount();
+                }
+            }
+        }
+
+        transactionAggregateStore.record(event.getAtmId(), timestamp, failed,
+                event.getAmount() != null ? event.getAmount() : 0L,
+                dispensed,
+                event.getResponseTime() != null ? event.getResponseTime() : Double.NaN);
+    }
+}
@@ -0,0 +1,135 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.atm.atmstateservice.dto.AtmFullStateDto;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Assembled {@link AtmFullStateDto} per ATM, for the single-ATM detail endpoints. Bounded by
+ * {@code state.cache.max-size} (least recently used evicted first) and {@code state.cache.ttl-ms}.
+ *
+ * <p>Entries are tagged with the versions of the state they were built from, and are only served while they are
+ * at least as recent as the {@link FleetStateIndex}. The index follows the changes of every instance, so any ATM can
+ * be cached, whether or not the state store holds it, and a stale entry is never served even if it raced with an
+ * update. Entries are also dropped as soon as a change is applied here or arrives on the state-change topic,
+ * to free them early.
+ */
+@Component
+public class AtmFullStateCache {
+
+    private record Entry(FleetStateIndex.Versions versions, long loadedAtMillis, AtmFullStateDto state) {
+    }
+
+    private final int maxSize;
+    private final long ttlMillis;
+
+    // Access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+    private final Counter invalidations;
+
+    public AtmFullStateCache(MeterRegistry meterRegistry,
+                             @Value("${state.cache.max-size:10000}") int maxSize,
+                             @Value("${state.cache.ttl-ms:60000}") long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > AtmFullStateCache.this.maxSize) {
+                    sizeEvictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        hits = meterRegistry.counter("atm.state.cache.gets", "result", "hit");
+        misses = meterRegistry.counter("atm.state.cache.gets", "result", "miss");
+        sizeEvictions = meterRegistry.counter("atm.state.cache.evictions", "cause", "size");
+        expiredEvictions = meterRegistry.counter("atm.state.cache.evictions", "cause", "expired");
+        invalidations = meterRegistry.counter("atm.state.cache.evictions", "cause", "invalidated");
+        Gauge.builder("atm.state.cache.size", this, AtmFullStateCache::size)
+                .description("ATMs with an assembled full state in the cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached state of an ATM if it is at least as recent as {@code current}, or builds and caches it.
+     * The loader runs outside the cache lock.
+     *
+     * @param current The ATM's versions in the {@link FleetStateIndex}.
+     */
+    public Optional<AtmFullStateDto> get(String atmId, FleetStateIndex.Versions current,
+                                         Function<String, Optional<AtmFullStateDto>> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(atmId);
+            if (entry != null && entry.versions().isAtLeast(current) && now - entry.loadedAtMillis() < ttlMillis) {
+                hits.increment();
+                return Optional.ofNullable(entry.state());
+            }
+        }
+        misses.increment();
+
+        Optional<AtmFullStateDto> state = loader.apply(atmId);
+        FleetStateIndex.Versions loaded = state.map(FleetStateIndex.Versions::of).orElse(FleetStateIndex.Versions.NONE);
+        // Older than the index while another instance has not flushed yet: served, but read again next time
+        if (loaded.isAtLeast(current)) {
+            synchronized (entries) {
+                entries.put(atmId, new Entry(loaded, now, state.orElse(null)));
+            }
+        }
+        return state;
+    }
+
+    @EventListener
+    public void onStateChanged(AtmStateChangedEvent event) {
+        invalidate(event.getAtmId());
+    }
+
+    public void invalidate(String atmId) {
+        synchronized (entries) {
+            if (entries.remove(atmId) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    // Expired entries are otherwise only replaced when their ATM is read again
+    @Scheduled(fixedDelayString = "${state.cache.ttl-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().loadedAtMillis() >= ttlMillis) {
+                    it.remove();
+                    expiredEvictions.increment();
+                }
+            }
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.dto.AtmHistoryDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Append-only history of ATM status and counter samples, in the day-partitioned tables of
+ * {@link HistoryPartitionManager}.
+ *
+ * <p>Appending only puts the sample on a bounded in-memory queue, so the consumers never wait on Postgres.
+ * The queue is drained in JDBC batches every {@code state.history.flush-interval-ms}, each in its own
+ * transaction. A failed batch makes sure the partitions exist and is then written row by row, so only the
+ * samples that still fail are lost. History is best effort: when the queue is full, or a sample cannot be
+ * written, it is dropped and counted rather than slowing down ingestion.
+ */
+@Component
+@Slf4j
+public class AtmHistoryStore {
+
+    private static final String INSERT_STATUS = """
+            INSERT INTO atm_status_history (atm_id, recorded_at, operational_state, maintenance_mode)
+            VALUES (?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_COUNTER = """
+            INSERT INTO atm_counter_history (atm_id, recorded_at, total_cash_available, reject_bin_percentage_full, low_cash_flag)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    // One row per bucket; the state reported last in the bucket wins
+    private static final String SELECT_STATUS_BUCKETS = """
+            SELECT date_bin(?::interval, recorded_at, TIMESTAMPTZ '2000-01-01 00:00:00+00') AS bucket,
+                   (array_agg(operational_state ORDER BY recorded_at DESC))[1] AS operational_state,
+                   bool_or(maintenance_mode) AS maintenance_mode,
+                   count(*) AS samples
+            FROM atm_status_history
+            WHERE atm_id = ? AND recorded_at >= ? AND recorded_at < ?
+            GROUP BY bucket
+            ORDER BY bucket
+            """;
+
+    private static final String SELECT_COUNTER_BUCKETS = """
+            SELECT date_bin(?::interval, recorded_at, TIMESTAMPTZ '2000-01-01 00:00:00+00') AS bucket,
+                   avg(total_cash_available) AS avg_cash,
+                   min(total_cash_available) AS min_cash,
+                   max(reject_bin_percentage_full) AS max_reject_bin,
+                   bool_or(low_cash_flag) AS low_cash_flag,
+                   count(*) AS samples
+            FROM atm_counter_history
+            WHERE atm_id = ? AND recorded_at >= ? AND recorded_at < ?
+            GROUP BY bucket
+            ORDER BY bucket
+            """;
+
+    private record StatusSample(String atmId, long recordedAt, String operationalState, Boolean maintenanceMode) {
+    }
+
+    private record CounterSample(String atmId, long recordedAt, Double totalCashAvailable,
+                                 Integer rejectBinPercentageFull, Boolean lowCashFlag) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final HistoryPartitionManager partitionManager;
+    private final MeterRegistry meterRegistry;
+
+    private final BlockingQueue<StatusSample> statusQueue;
+    private final BlockingQueue<CounterSample> counterQueue;
+
+    @Value("${state.history.flush-batch-size:1000}")
+    private int flushBatchSize;
+
+    public AtmHistoryStore(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           HistoryPartitionManager partitionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${state.history.queue-capacity:100000}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.partitionManager = partitionManager;
+        this.meterRegistry = meterRegistry;
+        this.statusQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.counterQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("atm.state.history.queued", this, s -> s.statusQueue.size() + s.counterQueue.size())
+                .description("History samples waiting to be written to Postgres")
+                .register(meterRegistry);
+    }
+
+    // --- Appends (hot path) ---
+
+    public void appendStatus(String atmId, Instant recordedAt, String operationalState, Boolean maintenanceMode) {
+        long at = recordedAt != null ? recordedAt.toEpochMilli() : System.currentTimeMillis();
+        if (accept("status", at) && !statusQueue.offer(new StatusSample(atmId, at, operationalState, maintenanceMode))) {
+            dropped("status", "queue_full", 1);
+        }
+    }
+
+    public void appendCounter(String atmId, Instant recordedAt, Double totalCashAvailable,
+                              Integer rejectBinPercentageFull, Boolean lowCashFlag) {
+        long at = recordedAt != null ? recordedAt.toEpochMilli() : System.currentTimeMillis();
+        if (accept("counter", at) && !counterQueue.offer(new CounterSample(atmId, at, totalCashAvailable, rejectBinPercentageFull, lowCashFlag))) {
+            dropped("counter", "queue_full", 1);
+        }
+    }
+
+    // A sample without a partition would fail its whole batch
+    private boolean accept(String kind, long epochMillis) {
+        if (partitionManager.isWithinRetention(epochMillis)) {
+            return true;
+        }
+        dropped(kind, "out_of_range", 1);
+        return false;
+    }
+
+    private void dropped(String kind, String reason, int count) {
+        meterRegistry.counter("atm.state.history.dropped", "kind", kind, "reason", reason).increment(count);
+    }
+
+    // --- Write-behind ---
+
+    @Scheduled(fixedDelayString = "${state.history.flush-interval-ms:1000}")
+    public void flush() {
+        drain("status", statusQueue, this::writeStatuses);
+        drain("counter", counterQueue, this::writeCounters);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private <T> void drain(String kind, BlockingQueue<T> queue, Consumer<List<T>> writer) {
+        List<T> batch = new ArrayList<>(flushBatchSize);
+        while (queue.drainTo(batch, flushBatchSize) > 0) {
+            try {
+                // All or nothing, so the rows of a failed batch can be written again without duplicates
+                transactionTemplate.executeWithoutResult(tx -> writer.accept(batch));
+                meterRegistry.counter("atm.state.history.written", "kind", kind).increment(batch.size());
+            } catch (RuntimeException e) {
+                log.warn("Failed to write {} {} history samples, retrying one by one: {}", batch.size(), kind, e.getMessage());
+                retryEach(kind, batch, writer);
+            }
+            batch.clear();
+        }
+    }
+
+    private <T> void retryEach(String kind, List<T> batch, Consumer<List<T>> writer) {
+        // The usual cause is a day without a partition, e.g. right after midnight if maintenance is late
+        try {
+            partitionManager.maintainPartitions();
+        } catch (RuntimeException e) {
+            log.error("Failed to create history partitions: {}", e.getMessage(), e);
+        }
+        int failed = 0;
+        RuntimeException lastError = null;
+        for (T sample : batch) {
+            try {
+                writer.accept(List.of(sample));
+            } catch (RuntimeException e) {
+                failed++;
+                lastError = e;
+            }
+        }
+        meterRegistry.counter("atm.state.history.written", "kind", kind).increment(batch.size() - failed);
+        if (failed > 0) {
+            dropped(kind, "write_failed", failed);
+            log.error("Dropped {} of {} {} history samples that could not be written: {}", failed, batch.size(), kind,
+                    lastError.getMessage(), lastError);
+        }
+    }
+
+    private void writeStatuses(List<StatusSample> rows) {
+        jdbcTemplate.batchUpdate(INSERT_STATUS, rows, rows.size(), (ps, s) -> {
+            ps.setString(1, s.atmId());
+            ps.setObject(2, toDateTime(s.recordedAt()));
+            ps.setString(3, s.operationalState());
+            ps.setObject(4, s.maintenanceMode());
+        });
+    }
+
+    private void writeCounters(List<CounterSample> rows) {
+        jdbcTemplate.batchUpdate(INSERT_COUNTER, rows, rows.size(), (ps, c) -> {
+            ps.setString(1, c.atmId());
+            ps.setObject(2, toDateTime(c.recordedAt()));
+            ps.setObject(3, c.totalCashAvailable());
+            ps.setObject(4, c.rejectBinPercentageFull());
+            ps.setObject(5, c.lowCashFlag());
+        });
+    }
+
+    // --- Queries ---
+
+    /**
+     * Downsamples an ATM's history into buckets of {@code resolution}, in the database.
+     * Empty buckets are omitted.
+     */
+    public AtmHistoryDto getHistory(String atmId, Instant from, Instant to, Duration resolution) {
+        String interval = resolution.toSeconds() + " seconds";
+        Timestamp fromTs = Timestamp.from(from);
+        Timestamp toTs = Timestamp.from(to);
+
+        List<AtmHistoryDto.StatusPoint> status = jdbcTemplate.query(SELECT_STATUS_BUCKETS,
+                (rs, i) -> new AtmHistoryDto.StatusPoint(
+                        rs.getObject("bucket", OffsetDateTime.class),
+                        rs.getString("operational_state"),
+                        (Boolean) rs.getObject("maintenance_mode"),
+                        rs.getLong("samples")),
+                interval, atmId, fromTs, toTs);
+
+        List<AtmHistoryDto.CounterPoint> counters = jdbcTemplate.query(SELECT_COUNTER_BUCKETS,
+                (rs, i) -> new AtmHistoryDto.CounterPoint(
+                        rs.getObject("bucket", OffsetDateTime.class),
+                        (Double) rs.getObject("avg_cash"),
+                        (Double) rs.getObject("min_cash"),
+                        (Integer) rs.getObject("max_reject_bin"),
+                        (Boolean) rs.getObject("low_cash_flag"),
+                        rs.getLong("samples")),
+                interval, atmId, fromTs, toTs);
+
+        return new AtmHistoryDto(atmId, toDateTime(from.toEpochMilli()), toDateTime(to.toEpochMilli()),
+                resolution.toSeconds(), status, counters);
+    }
+
+    public int getRetentionDays() {
+        return partitionManager.getRetentionDays();
+    }
+
+    private static OffsetDateTime toDateTime(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC);
+    }
+}
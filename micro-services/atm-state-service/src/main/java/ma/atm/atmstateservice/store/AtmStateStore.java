@@ -0,0 +1,563 @@
+package ma.atm.atmstateservice.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import ma.atm.atmstateservice.model.AtmConfiguration;
+import ma.atm.atmstateservice.model.AtmCounter;
+import ma.atm.atmstateservice.model.AtmStatus;
+import ma.atm.atmstateservice.model.Cassette;
+import ma.atm.atmstateservice.repository.AtmConfigurationRepository;
+import ma.atm.atmstateservice.repository.AtmCounterRepository;
+import ma.atm.atmstateservice.repository.AtmStatusRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory, write-behind state of the ATMs this instance is processing events for.
+ *
+ * <p>The handler services apply events here instead of running a find + save transaction per event.
+ * State is loaded from Postgres the first time an ATM is updated, updated in memory, and the ATMs that
+ * changed are written back in JDBC batches every {@code state.store.flush-interval-ms}. Several events
+ * for the same ATM between two flushes result in a single row write.
+ *
+ * <p>Only ATMs updated by this instance are held. With several instances each one processes its own
+ * Key_Shared slice of the ATMs, so state this instance does not update is read from Postgres on every call
+ * rather than cached. A held ATM is dropped once it has been flushed and left idle for
+ * {@code state.store.idle-ttl-ms}, and its next update starts again from Postgres.
+ *
+ * <p>After a rebalance the previous owner may flush after the new one. Each flush locks the rows it writes
+ * and skips any ATM whose row carries a newer {@code last_update_timestamp}; such an ATM is dropped from
+ * memory, since another instance now owns it.
+ *
+ * <p>Stored objects are never mutated once published: an update works on a copy and replaces it, so
+ * readers and the flusher always see a consistent snapshot without locking.
+ *
+ * <p>Durability: an event is acknowledged to Pulsar once it is applied in memory, so a crash loses at most
+ * the updates of the last flush interval (plus a flush that was in progress). A failed flush keeps the
+ * ATMs dirty and retries them on the next run, and pending changes are flushed on shutdown. After a crash
+ * the lost state is recovered from the next status, counter or configuration snapshot the ATM sends,
+ * since each of them carries the full state of its kind.
+ *
+ * <p>Every change is announced with an {@link AtmStateChangedEvent}; versions that hold across instances are
+ * kept by {@link FleetStateIndex}.
+ */
+@Component
+@Slf4j
+public class AtmStateStore {
+
+    /**
+     * Applies an event to a private copy of an ATM's state.
+     *
+     * @param <T> The state type.
+     */
+    @FunctionalInterface
+    public interface Mutation<T> {
+        /**
+         * @param state A copy of the current state, or a new instance with only the atmId set.
+         * @return Whether the state changed and must be kept and persisted.
+         */
+        boolean apply(T state);
+    }
+
+    private static final String UPSERT_STATUS = """
+            INSERT INTO atm_status (atm_id, operational_state, maintenance_mode, last_successful_connection,
+                                    last_successful_transaction, last_update_timestamp)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (atm_id) DO UPDATE SET
+                operational_state = EXCLUDED.operational_state,
+                maintenance_mode = EXCLUDED.maintenance_mode,
+                last_successful_connection = EXCLUDED.last_successful_connection,
+                last_successful_transaction = EXCLUDED.last_successful_transaction,
+                last_update_timestamp = EXCLUDED.last_update_timestamp
+            """;
+
+    private static final String UPSERT_CONFIGURATION = """
+            INSERT INTO atm_configuration (atm_id, peripheral_details, overall_health, last_update_timestamp, peripheral_hash)
+            VALUES (?, ?::jsonb, ?, ?, ?)
+            ON CONFLICT (atm_id) DO UPDATE SET
+                peripheral_details = EXCLUDED.peripheral_details,
+                overall_health = EXCLUDED.overall_health,
+                last_update_timestamp = EXCLUDED.last_update_timestamp,
+                peripheral_hash = EXCLUDED.peripheral_hash
+            """;
+
+    private static final String UPSERT_COUNTER = """
+            INSERT INTO atm_counter_summary (atm_id, total_cash_available, low_cash_flag,
+                                             reject_bin_percentage_full, last_update_timestamp)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (atm_id) DO UPDATE SET
+                total_cash_available = EXCLUDED.total_cash_available,
+                low_cash_flag = EXCLUDED.low_cash_flag,
+                reject_bin_percentage_full = EXCLUDED.reject_bin_percentage_full,
+                last_update_timestamp = EXCLUDED.last_update_timestamp
+            """;
+
+    private static final String UPSERT_CASSETTE = """
+            INSERT INTO cassette (cassette_id, atm_id, denomination, currency, notes_remaining, cassette_status,
+                                  total_amount, reject_count, dispensed_since_refill)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (atm_id, cassette_id) DO UPDATE SET
+                denomination = EXCLUDED.denomination,
+                currency = EXCLUDED.currency,
+                notes_remaining = EXCLUDED.notes_remaining,
+                cassette_status = EXCLUDED.cassette_status,
+                total_amount = EXCLUDED.total_amount,
+                reject_count = EXCLUDED.reject_count,
+                dispensed_since_refill = EXCLUDED.dispensed_since_refill
+            """;
+
+    // Cassettes that are no longer reported by the ATM
+    private static final String DELETE_STALE_CASSETTES =
+            "DELETE FROM cassette WHERE atm_id = ? AND NOT (cassette_id = ANY (?))";
+
+    // Locks the rows about to be written, so two instances flushing the same ATM are ordered
+    private static final String LOCK_ROWS =
+            "SELECT atm_id, last_update_timestamp FROM %s WHERE atm_id = ANY (?) FOR UPDATE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final StateTable<AtmStatus> statuses;
+    private final StateTable<AtmConfiguration> configurations;
+    private final StateTable<AtmCounter> counters;
+
+    @Value("${state.store.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${state.store.idle-ttl-ms:60000}")
+    private long idleTtlMillis;
+
+    public AtmStateStore(AtmStatusRepository statusRepository,
+                         AtmConfigurationRepository configurationRepository,
+                         AtmCounterRepository counterRepository,
+                         JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+
+        this.statuses = new StateTable<>(AtmStateChangedEvent.Kind.STATUS, "atm_status",
+                statusRepository::findById, AtmStateStore::copyOf, id -> {
+                    AtmStatus status = new AtmStatus();
+                    status.setAtmId(id);
+                    return status;
+                }, AtmStatus::getAtmId, AtmStatus::getLastUpdateTimestamp, this::writeStatuses);
+        this.configurations = new StateTable<>(AtmStateChangedEvent.Kind.CONFIGURATION, "atm_configuration",
+                configurationRepository::findById, AtmStateStore::copyOf, id -> {
+                    AtmConfiguration configuration = new AtmConfiguration();
+                    configuration.setAtmId(id);
+                    return configuration;
+                }, AtmConfiguration::getAtmId, AtmConfiguration::getLastUpdateTimestamp, this::writeConfigurations);
+        this.counters = new StateTable<>(AtmStateChangedEvent.Kind.COUNTER, "atm_counter_summary",
+                counterRepository::findById, AtmStateStore::copyOf, id -> {
+                    AtmCounter counter = new AtmCounter();
+                    counter.setAtmId(id);
+                    counter.setCassettes(new ArrayList<>());
+                    return counter;
+                }, AtmCounter::getAtmId, AtmCounter::getLastUpdateTimestamp, this::writeCounters);
+
+        Gauge.builder("atm.state.store.dirty", this, s -> s.statuses.dirty.size() + s.configurations.dirty.size() + s.counters.dirty.size())
+                .description("ATM state changes applied in memory and not yet written to Postgres")
+                .register(meterRegistry);
+        Gauge.builder("atm.state.store.held", this, s -> s.statuses.held.size() + s.configurations.held.size() + s.counters.held.size())
+                .description("ATM states held in memory by this instance")
+                .register(meterRegistry);
+    }
+
+    // --- Reads ---
+
+    // Held state if this instance updates the ATM, otherwise straight from Postgres
+
+    public Optional<AtmStatus> getStatus(String atmId) {
+        return statuses.get(atmId);
+    }
+
+    public Optional<AtmConfiguration> getConfiguration(String atmId) {
+        return configurations.get(atmId);
+    }
+
+    public Optional<AtmCounter> getCounter(String atmId) {
+        return counters.get(atmId);
+    }
+
+    /**
+     * @return The ATMs with at least one kind of state held here, including changes not yet flushed.
+     */
+    public Set<String> getHeldAtmIds() {
+        Set<String> atmIds = new HashSet<>(statuses.held.keySet());
+        atmIds.addAll(configurations.held.keySet());
+        atmIds.addAll(counters.held.keySet());
+        return atmIds;
+    }
+
+    // --- Updates ---
+
+    /**
+     * @return Whether the status changed.
+     */
+    public boolean updateStatus(String atmId, Mutation<AtmStatus> mutation) {
+        return statuses.update(atmId, mutation);
+    }
+
+    /**
+     * @return Whether the configuration changed.
+     */
+    public boolean updateConfiguration(String atmId, Mutation<AtmConfiguration> mutation) {
+        return configurations.update(atmId, mutation);
+    }
+
+    /**
+     * @return Whether the counters changed.
+     */
+    public boolean updateCounter(String atmId, Mutation<AtmCounter> mutation) {
+        return counters.update(atmId, mutation);
+    }
+
+    // --- Write-behind ---
+
+    @Scheduled(fixedDelayString = "${state.store.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Flushing ATM state before shutdown");
+        flush();
+    }
+
+    /**
+     * Writes every ATM changed since the last flush to Postgres.
+     */
+    public synchronized void flush() {
+        statuses.flush();
+        configurations.flush();
+        counters.flush();
+    }
+
+    /**
+     * Drops the held ATMs that are flushed and were not updated for {@code state.store.idle-ttl-ms}.
+     * Synchronized with {@link #flush()}, so an ATM is never dropped while its write is in flight.
+     */
+    @Scheduled(fixedDelayString = "${state.store.idle-ttl-ms:60000}")
+    public synchronized void evictIdle() {
+        long now = System.currentTimeMillis();
+        statuses.evictIdle(now);
+        configurations.evictIdle(now);
+        counters.evictIdle(now);
+    }
+
+    private record Held<T>(T state, long touchedAtMillis) {
+    }
+
+    @FunctionalInterface
+    private interface RowWriter<T> {
+        void write(List<T> rows);
+    }
+
+    /**
+     * Held state, dirty set and persistence of one kind of state.
+     */
+    private final class StateTable<T> {
+
+        private final AtmStateChangedEvent.Kind kind;
+        private final String table;
+        private final Function<String, Optional<T>> loader;
+        private final UnaryOperator<T> copier;
+        private final Function<String, T> creator;
+        private final Function<T, String> atmIdOf;
+        private final Function<T, OffsetDateTime> timestampOf;
+        private final RowWriter<T> writer;
+        private final String metricKind;
+
+        private final Map<String, Held<T>> held = new ConcurrentHashMap<>();
+        private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+        StateTable(AtmStateChangedEvent.Kind kind, String table, Function<String, Optional<T>> loader,
+                   UnaryOperator<T> copier, Function<String, T> creator, Function<T, String> atmIdOf,
+                   Function<T, OffsetDateTime> timestampOf, RowWriter<T> writer) {
+            this.kind = kind;
+            this.table = table;
+            this.loader = loader;
+            this.copier = copier;
+            this.creator = creator;
+            this.atmIdOf = atmIdOf;
+            this.timestampOf = timestampOf;
+            this.writer = writer;
+            this.metricKind = kind.name().toLowerCase();
+        }
+
+        Optional<T> get(String atmId) {
+            Held<T> entry = held.get(atmId);
+            return entry != null ? Optional.of(entry.state()) : loader.apply(atmId);
+        }
+
+        boolean update(String atmId, Mutation<T> mutation) {
+            boolean[] changed = {false};
+            held.compute(atmId, (id, current) -> {
+                long now = System.currentTimeMillis();
+                // An idle entry may have been superseded by another instance; start again from Postgres
+                if (current != null && now - current.touchedAtMillis() >= idleTtlMillis && !dirty.contains(id)) {
+                    current = null;
+                }
+                Held<T> base = current != null ? current
+                        : loader.apply(id).map(state -> new Held<>(state, now)).orElse(null);
+                T next = base != null ? copier.apply(base.state()) : creator.apply(id);
+                if (!mutation.apply(next)) {
+                    return base != null ? new Held<>(base.state(), now) : null;
+                }
+                changed[0] = true;
+                return new Held<>(next, now);
+            });
+            // Marked only once the new state is published, so a concurrent flush can never clear the flag
+            // and then write the previous state
+            if (changed[0]) {
+                dirty.add(atmId);
+                eventPublisher.publishEvent(new AtmStateChangedEvent(atmId, kind));
+            }
+            return changed[0];
+        }
+
+        void flush() {
+            while (!dirty.isEmpty()) {
+                List<String> atmIds = new ArrayList<>(flushBatchSize);
+                List<T> rows = new ArrayList<>(flushBatchSize);
+                Iterator<String> it = dirty.iterator();
+                while (it.hasNext() && rows.size() < flushBatchSize) {
+                    String atmId = it.next();
+                    it.remove();
+                    Held<T> entry = held.get(atmId);
+                    if (entry != null) {
+                        atmIds.add(atmId);
+                        rows.add(entry.state());
+                    }
+                }
+                if (rows.isEmpty()) {
+                    continue;
+                }
+
+                Timer.Sample sample = Timer.start(meterRegistry);
+                List<T> superseded;
+                try {
+                    superseded = transactionTemplate.execute(tx -> write(atmIds, rows));
+                    sample.stop(meterRegistry.timer("atm.state.store.flush", "kind", metricKind, "outcome", "success"));
+                    meterRegistry.counter("atm.state.store.flushed", "kind", metricKind).increment(rows.size() - superseded.size());
+                } catch (RuntimeException e) {
+                    sample.stop(meterRegistry.timer("atm.state.store.flush", "kind", metricKind, "outcome", "failure"));
+                    // Keep them dirty; the next scheduled flush retries
+                    dirty.addAll(atmIds);
+                    log.error("Failed to flush {} {} rows, will retry: {}", rows.size(), metricKind, e.getMessage(), e);
+                    return;
+                }
+                dropSuperseded(superseded);
+            }
+        }
+
+        // Writes the rows that are not older than what Postgres holds, and returns the others
+        private List<T> write(List<String> atmIds, List<T> rows) {
+            Map<String, OffsetDateTime> stored = new HashMap<>();
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(LOCK_ROWS.formatted(table));
+                ps.setArray(1, con.createArrayOf("varchar", atmIds.toArray()));
+                return ps;
+            }, rs -> {
+                stored.put(rs.getString(1), rs.getObject(2, OffsetDateTime.class));
+            });
+
+            List<T> current = new ArrayList<>(rows.size());
+            List<T> superseded = new ArrayList<>();
+            for (T row : rows) {
+                OffsetDateTime storedAt = stored.get(atmIdOf.apply(row));
+                OffsetDateTime ours = timestampOf.apply(row);
+                if (storedAt != null && ours != null && ours.isBefore(storedAt)) {
+                    superseded.add(row);
+                } else {
+                    current.add(row);
+                }
+            }
+            if (!current.isEmpty()) {
+                writer.write(current);
+            }
+            return superseded;
+        }
+
+        // Another instance wrote newer state: stop serving ours, unless it was updated again meanwhile
+        private void dropSuperseded(List<T> superseded) {
+            for (T row : superseded) {
+                String atmId = atmIdOf.apply(row);
+                Held<T> removed = held.computeIfPresent(atmId, (id, entry) -> entry.state() == row ? null : entry);
+                if (removed == null) {
+                    log.info("Dropped {} of ATM {}: Postgres holds newer state from another instance", metricKind, atmId);
+                    meterRegistry.counter("atm.state.store.superseded", "kind", metricKind).increment();
+                    eventPublisher.publishEvent(new AtmStateChangedEvent(atmId, kind));
+                }
+            }
+        }
+
+        void evictIdle(long now) {
+            for (String atmId : held.keySet()) {
+                held.computeIfPresent(atmId, (id, entry) ->
+                        !dirty.contains(id) && now - entry.touchedAtMillis() >= idleTtlMillis ? null : entry);
+            }
+        }
+    }
+
+    private void writeStatuses(List<AtmStatus> rows) {
+        jdbcTemplate.batchUpdate(UPSERT_STATUS, rows, rows.size(), (ps, s) -> {
+            ps.setString(1, s.getAtmId());
+            ps.setString(2, s.getOperationalState());
+            ps.setObject(3, s.getMaintenanceMode());
+            ps.setObject(4, s.getLastSuccessfulConnection());
+            ps.setObject(5, s.getLastSuccessfulTransaction());
+            ps.setObject(6, s.getLastUpdateTimestamp());
+        });
+    }
+
+    private void writeConfigurations(List<AtmConfiguration> rows) {
+        jdbcTemplate.batchUpdate(UPSERT_CONFIGURATION, rows, rows.size(), (ps, c) -> {
+            ps.setString(1, c.getAtmId());
+            ps.setString(2, toJson(c.getPeripheralDetails()));
+            ps.setString(3, c.getOverallHealth());
+            ps.setObject(4, c.getLastUpdateTimestamp());
+            ps.setObject(5, c.getPeripheralHash());
+        });
+    }
+
+    private void writeCounters(List<AtmCounter> rows) {
+        jdbcTemplate.batchUpdate(UPSERT_COUNTER, rows, rows.size(), (ps, c) -> {
+            ps.setString(1, c.getAtmId());
+            ps.setObject(2, c.getTotalCashAvailable());
+            ps.setObject(3, c.getLowCashFlag());
+            ps.setObject(4, c.getRejectBinPercentageFull());
+            ps.setObject(5, c.getLastUpdateTimestamp());
+        });
+
+        List<CassetteRow> cassettes = new ArrayList<>();
+        for (AtmCounter counter : rows) {
+            if (counter.getCassettes() == null) {
+                continue;
+            }
+            for (Cassette cassette : counter.getCassettes()) {
+                if (cassette.getCassetteId() != null) {
+                    cassettes.add(new CassetteRow(counter.getAtmId(), cassette));
+                } else {
+                    log.warn("Skipping cassette without cassetteId for ATM {}", counter.getAtmId());
+                }
+            }
+        }
+        if (!cassettes.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_CASSETTE, cassettes, cassettes.size(), (ps, row) -> {
+                Cassette c = row.cassette();
+                ps.setString(1, c.getCassetteId());
+                ps.setString(2, row.atmId());
+                ps.setObject(3, c.getDenomination());
+                ps.setString(4, c.getCurrency());
+                ps.setObject(5, c.getNotesRemaining());
+                ps.setString(6, c.getCassetteStatus());
+                ps.setObject(7, c.getTotalAmount());
+                ps.setObject(8, c.getRejectCount());
+                ps.setObject(9, c.getDispensedSinceRefill());
+            });
+        }
+
+        jdbcTemplate.batchUpdate(DELETE_STALE_CASSETTES, rows, rows.size(), (ps, c) -> {
+            ps.setString(1, c.getAtmId());
+            ps.setArray(2, cassetteIdArray(ps, c));
+        });
+    }
+
+    private record CassetteRow(String atmId, Cassette cassette) {
+    }
+
+    private java.sql.Array cassetteIdArray(PreparedStatement ps, AtmCounter counter) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        if (counter.getCassettes() != null) {
+            for (Cassette cassette : counter.getCassettes()) {
+                if (cassette.getCassetteId() != null) {
+                    ids.add(cassette.getCassetteId());
+                }
+            }
+        }
+        return ps.getConnection().createArrayOf("varchar", ids.toArray());
+    }
+
+    private String toJson(Map<String, Object> peripherals) {
+        if (peripherals == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(peripherals);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize peripheral details: " + e.getMessage(), e);
+        }
+    }
+
+    // --- Copies handed to mutations ---
+
+    private static AtmStatus copyOf(AtmStatus s) {
+        return new AtmStatus(s.getAtmId(), s.getOperationalState(), s.getMaintenanceMode(),
+                s.getLastSuccessfulConnection(), s.getLastSuccessfulTransaction(), s.getLastUpdateTimestamp());
+    }
+
+    // Peripheral maps are replaced, never modified in place, so sharing the reference is safe
+    private static AtmConfiguration copyOf(AtmConfiguration c) {
+        return new AtmConfiguration(c.getAtmId(), c.getPeripheralDetails(), c.getOverallHealth(), c.getLastUpdateTimestamp(),
+                c.getPeripheralHash());
+    }
+
+    private static AtmCounter copyOf(AtmCounter c) {
+        AtmCounter copy = new AtmCounter(c.getAtmId(), c.getTotalCashAvailable(), c.getLowCashFlag(),
+                c.getRejectBinPercentageFull(), new ArrayList<>(), c.getLastUpdateTimestamp());
+        if (c.getCassettes() != null) {
+            for (Cassette cassette : c.getCassettes()) {
+                Cassette cassetteCopy = new Cassette();
+                cassetteCopy.setId(cassette.getId());
+                cassetteCopy.setCassetteId(cassette.getCassetteId());
+                cassetteCopy.setAtmCounter(copy);
+                cassetteCopy.setDenomination(cassette.getDenomination());
+                cassetteCopy.setCurrency(cassette.getCurrency());
+                cassetteCopy.setNotesRemaining(cassette.getNotesRemaining());
+                cassetteCopy.setCassetteStatus(cassette.getCassetteStatus());
+                cassetteCopy.setTotalAmount(cassette.getTotalAmount());
+                cassetteCopy.setRejectCount(cassette.getRejectCount());
+                cassetteCopy.setDispensedSinceRefill(cassette.getDispensedSinceRefill());
+                copy.getCassettes().add(cassetteCopy);
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,280 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.atm.atmstateservice.dto.CashForecastDto;
+import ma.atm.atmstateservice.dto.CassetteForecastDto;
+import ma.atm.atmstateservice.event.AtmCountersUpdatedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Cash depletion forecast per ATM, updated incrementally from counter snapshots.
+ *
+ * <p>Each cassette keeps a short ring of its last samples and an exponentially weighted depletion rate
+ * (notes per hour), so an update costs O(1) per cassette. An ATM is projected empty when its first cassette
+ * runs out. ATMs are kept in an index ordered by that instant, so the ATMs running dry soonest are read
+ * from the head of the index without scanning the fleet.
+ *
+ * <p>Fed by {@link ma.atm.atmstateservice.pulsar.consumer.CashForecastListener} with the counter events of the
+ * whole fleet, so every instance ranks every ATM. ATMs that sent no counters for {@code state.forecast.stale-after-ms},
+ * and ATMs deleted from the registry, are dropped.
+ *
+ * <p>Kept in memory only: after a restart the rates are rebuilt from the next counter updates.
+ */
+@Component
+public class CashForecastStore {
+
+    private static final int HISTORY_SIZE = 48;
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+    private static final double MAX_HORIZON_MILLIS = 365 * 24 * MILLIS_PER_HOUR;
+
+    private final Map<String, AtmForecast> atms = new ConcurrentHashMap<>();
+
+    // Only ATMs with at least one depleting cassette, soonest empty first
+    private final ConcurrentSkipListSet<Rank> bySoonestEmpty = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong(Rank::emptyAtMillis).thenComparing(Rank::atmId));
+
+    // Time constant of the rate smoothing: a sample this old weighs 1/e of a fresh one
+    @Value("${state.forecast.rate-time-constant-hours:6}")
+    private double rateTimeConstantHours;
+
+    @Value("${state.forecast.stale-after-ms:86400000}")
+    private long staleAfterMillis;
+
+    public CashForecastStore(MeterRegistry meterRegistry) {
+        Gauge.builder("atm.state.forecast.depleting", bySoonestEmpty, Set::size)
+                .description("ATMs with a finite time-to-empty estimate")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Applies a counter snapshot. Cassettes missing from the snapshot are forgotten.
+     */
+    public void record(String atmId, long epochMillis, List<AtmCountersUpdatedEvent.Cassette> cassettes) {
+        // Recorded inside compute so a concurrent eviction cannot drop the ATM between lookup and update
+        atms.compute(atmId, (id, current) -> {
+            AtmForecast atm = current != null ? current : new AtmForecast();
+            synchronized (atm) {
+                update(atmId, atm, epochMillis, cassettes);
+            }
+            return atm;
+        });
+    }
+
+    private void update(String atmId, AtmForecast atm, long epochMillis, List<AtmCountersUpdatedEvent.Cassette> cassettes) {
+        atm.receivedAtMillis = System.currentTimeMillis();
+        Set<String> reported = new HashSet<>();
+        if (cassettes != null) {
+            for (AtmCountersUpdatedEvent.Cassette cassette : cassettes) {
+                if (cassette.getCassetteId() == null || cassette.getNotesRemaining() == null) {
+                    continue;
+                }
+                reported.add(cassette.getCassetteId());
+                atm.cassettes.computeIfAbsent(cassette.getCassetteId(), id -> new CassetteSeries())
+                        .add(epochMillis, cassette, rateTimeConstantHours);
+            }
+        }
+        atm.cassettes.keySet().retainAll(reported);
+
+        long emptyAt = Long.MAX_VALUE;
+        for (CassetteSeries series : atm.cassettes.values()) {
+            emptyAt = Math.min(emptyAt, series.emptyAtMillis());
+        }
+        if (atm.rank != null) {
+            bySoonestEmpty.remove(atm.rank);
+        }
+        atm.rank = emptyAt == Long.MAX_VALUE ? null : new Rank(emptyAt, atmId);
+        if (atm.rank != null) {
+            bySoonestEmpty.add(atm.rank);
+        }
+    }
+
+    /**
+     * @return Up to {@code limit} ATMs, the one projected to run out of cash first at the head.
+     */
+    public List<CashForecastDto> getSoonestEmpty(int limit) {
+        long now = System.currentTimeMillis();
+        List<CashForecastDto> result = new ArrayList<>(Math.min(limit, bySoonestEmpty.size()));
+        for (Rank rank : bySoonestEmpty) {
+            if (result.size() >= limit) {
+                break;
+            }
+            AtmForecast atm = atms.get(rank.atmId());
+            if (atm != null) {
+                synchronized (atm) {
+                    result.add(toDto(rank.atmId(), atm, now, false));
+                }
+            }
+        }
+        return result;
+    }
+
+    public Optional<CashForecastDto> getForecast(String atmId) {
+        AtmForecast atm = atms.get(atmId);
+        if (atm == null) {
+            return Optional.empty();
+        }
+        synchronized (atm) {
+            return Optional.of(toDto(atmId, atm, System.currentTimeMillis(), true));
+        }
+    }
+
+    /**
+     * Drops an ATM, e.g. once it is deleted from the registry.
+     */
+    public void remove(String atmId) {
+        atms.computeIfPresent(atmId, (id, atm) -> {
+            synchronized (atm) {
+                if (atm.rank != null) {
+                    bySoonestEmpty.remove(atm.rank);
+                }
+            }
+            return null;
+        });
+    }
+
+    // An ATM that stopped reporting would otherwise stay ranked on its last rate forever
+    @Scheduled(fixedDelayString = "${state.forecast.eviction-interval-ms:600000}")
+    public void evictStale() {
+        long cutoff = System.currentTimeMillis() - staleAfterMillis;
+        for (String atmId : atms.keySet()) {
+            atms.computeIfPresent(atmId, (id, atm) -> {
+                synchronized (atm) {
+                    if (atm.receivedAtMillis >= cutoff) {
+                        return atm;
+                    }
+                    if (atm.rank != null) {
+                        bySoonestEmpty.remove(atm.rank);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static CashForecastDto toDto(String atmId, AtmForecast atm, long now, boolean withHistory) {
+        List<CassetteForecastDto> cassettes = new ArrayList<>(atm.cassettes.size());
+        String limitingCassetteId = null;
+        long emptyAt = Long.MAX_VALUE;
+        for (Map.Entry<String, CassetteSeries> entry : atm.cassettes.entrySet()) {
+            CassetteSeries series = entry.getValue();
+            long cassetteEmptyAt = series.emptyAtMillis();
+            if (cassetteEmptyAt < emptyAt) {
+                emptyAt = cassetteEmptyAt;
+                limitingCassetteId = entry.getKey();
+            }
+            cassettes.add(new CassetteForecastDto(entry.getKey(), series.denomination, series.lastNotes(),
+                    Double.isNaN(series.ratePerHour) ? null : series.ratePerHour,
+                    toDateTime(cassetteEmptyAt),
+                    withHistory ? series.history() : null));
+        }
+        Double hoursToEmpty = emptyAt == Long.MAX_VALUE ? null : Math.max(0, emptyAt - now) / MILLIS_PER_HOUR;
+        return new CashForecastDto(atmId, toDateTime(emptyAt), hoursToEmpty, limitingCassetteId, cassettes);
+    }
+
+    private static OffsetDateTime toDateTime(long epochMillis) {
+        return epochMillis == Long.MAX_VALUE ? null : Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC);
+    }
+
+    private record Rank(long emptyAtMillis, String atmId) {
+    }
+
+    private static final class AtmForecast {
+        private final Map<String, CassetteSeries> cassettes = new LinkedHashMap<>();
+        private Rank rank;
+        private long receivedAtMillis;
+    }
+
+    /**
+     * Last samples of one cassette, in a ring of primitive arrays, and its smoothed depletion rate.
+     */
+    private static final class CassetteSeries {
+        private final long[] times = new long[HISTORY_SIZE];
+        private final int[] notes = new int[HISTORY_SIZE];
+        private final int[] dispensed = new int[HISTORY_SIZE]; // -1 when not reported
+        private int size;
+        private int head; // next slot to write
+        private Integer denomination;
+        private double ratePerHour = Double.NaN;
+
+        void add(long epochMillis, AtmCountersUpdatedEvent.Cassette cassette, double timeConstantHours) {
+            int notesRemaining = cassette.getNotesRemaining();
+            int dispensedSinceRefill = cassette.getDispensedSinceRefill() != null ? cassette.getDispensedSinceRefill() : -1;
+            denomination = cassette.getDenomination();
+
+            if (size > 0) {
+                int last = (head - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+                long dtMillis = epochMillis - times[last];
+                if (dtMillis <= 0) {
+                    // Out of order or duplicate snapshot: keep the newer sample
+                    return;
+                }
+                boolean refilled = notesRemaining > notes[last]
+                        || (dispensedSinceRefill >= 0 && dispensed[last] >= 0 && dispensedSinceRefill < dispensed[last]);
+                // A refill only resets the baseline; the usage rate of the ATM carries over
+                if (!refilled) {
+                    double dtHours = dtMillis / MILLIS_PER_HOUR;
+                    double sampleRate = (notes[last] - notesRemaining) / dtHours;
+                    if (Double.isNaN(ratePerHour)) {
+                        ratePerHour = sampleRate;
+                    } else {
+                        double alpha = 1 - Math.exp(-dtHours / timeConstantHours);
+                        ratePerHour += alpha * (sampleRate - ratePerHour);
+                    }
+                }
+            }
+
+            times[head] = epochMillis;
+            notes[head] = notesRemaining;
+            dispensed[head] = dispensedSinceRefill;
+            head = (head + 1) % HISTORY_SIZE;
+            size = Math.min(size + 1, HISTORY_SIZE);
+        }
+
+        int lastNotes() {
+            return notes[(head - 1 + HISTORY_SIZE) % HISTORY_SIZE];
+        }
+
+        long emptyAtMillis() {
+            int last = (head - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+            if (notes[last] <= 0) {
+                return times[last];
+            }
+            if (Double.isNaN(ratePerHour) || ratePerHour <= 0) {
+                return Long.MAX_VALUE;
+            }
+            double millisToEmpty = notes[last] / ratePerHour * MILLIS_PER_HOUR;
+            // Practically not depleting; also keeps the sum below from overflowing
+            if (millisToEmpty > MAX_HORIZON_MILLIS) {
+                return Long.MAX_VALUE;
+            }
+            return times[last] + (long) millisToEmpty;
+        }
+
+        List<CassetteForecastDto.Sample> history() {
+            List<CassetteForecastDto.Sample> samples = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int slot = (head - size + i + HISTORY_SIZE) % HISTORY_SIZE;
+                samples.add(new CassetteForecastDto.Sample(toDateTime(times[slot]), notes[slot],
+                        dispensed[slot] >= 0 ? dispensed[slot] : null));
+            }
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ma.atm.atmstateservice.store;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Moves the cassette table from a global unique {@code cassette_id} to the {@code (atm_id, cassette_id)} key
+ * used by the state store's upserts. Hibernate's schema update adds new constraints but never drops old ones,
+ * so this runs once the entity manager (and its schema update) is initialized. Idempotent.
+ */
+@Component
+@Slf4j
+public class CassetteSchemaMigration {
+
+    private static final String FIND_SINGLE_COLUMN_UNIQUE = """
+            SELECT con.conname
+            FROM pg_constraint con
+            JOIN pg_class rel ON rel.oid = con.conrelid
+            JOIN pg_attribute att ON att.attrelid = rel.oid AND att.attnum = ANY (con.conkey)
+            WHERE rel.relname = 'cassette' AND con.contype = 'u'
+            GROUP BY con.conname
+            HAVING array_agg(att.attname::text) = ARRAY['cassette_id']
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Only injected so the migration runs after Hibernate's schema update
+    public CassetteSchemaMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        jdbcTemplate.execute("""
+                DO $$
+                BEGIN
+                    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'uk_cassette_atm_cassette') THEN
+                        ALTER TABLE cassette ADD CONSTRAINT uk_cassette_atm_cassette UNIQUE (atm_id, cassette_id);
+                    END IF;
+                END $$
+                """);
+
+        List<String> legacy = jdbcTemplate.queryForList(FIND_SINGLE_COLUMN_UNIQUE, String.class);
+        for (String constraint : legacy) {
+            jdbcTemplate.execute("ALTER TABLE cassette DROP CONSTRAINT \"" + constraint + "\"");
+            log.info("Dropped global unique constraint {} on cassette.cassette_id", constraint);
+        }
+    }
+}
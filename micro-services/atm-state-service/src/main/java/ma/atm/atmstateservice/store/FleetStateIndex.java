@@ -0,0 +1,185 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.dto.AtmFullStateDto;
+import ma.atm.atmstateservice.dto.AtmStateSummaryDto;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import ma.atm.atmstateservice.event.AtmSummaryChangedEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Summary and versions of every ATM in the fleet, whichever instance processes its events.
+ *
+ * <p>The version of a kind of state is its {@code last_update_timestamp} in microseconds. It is the same on every
+ * instance and does not depend on the state store holding the ATM, so it can back HTTP ETags and cache checks.
+ * The store's flush already orders the states of an ATM by that timestamp, and the index keeps the newest per kind.
+ *
+ * <p>Loaded from Postgres, then kept current by the state-change topic, on which every instance publishes the
+ * changes it applies. Changes are published when applied rather than when flushed, so the index can be ahead of
+ * Postgres by one flush interval. The periodic reload repairs anything missed while the subscription was down.
+ */
+@Component
+@Slf4j
+public class FleetStateIndex {
+
+    /**
+     * Version of a kind of state the ATM does not have.
+     */
+    public static final long NONE = 0;
+
+    /**
+     * Versions of the three kinds of state of an ATM.
+     */
+    public record Versions(long status, long configuration, long counter) {
+
+        public static final Versions NONE = new Versions(FleetStateIndex.NONE, FleetStateIndex.NONE, FleetStateIndex.NONE);
+
+        /**
+         * @return The versions an assembled state was built from.
+         */
+        public static Versions of(AtmFullStateDto state) {
+            return new Versions(
+                    state.getStatus() != null ? versionOf(state.getStatus().getLastUpdateTimestamp()) : FleetStateIndex.NONE,
+                    state.getConfiguration() != null ? versionOf(state.getConfiguration().getLastUpdateTimestamp()) : FleetStateIndex.NONE,
+                    state.getCounters() != null ? versionOf(state.getCounters().getLastUpdateTimestamp()) : FleetStateIndex.NONE);
+        }
+
+        /**
+         * @return Whether every kind is at least as recent as in {@code other}.
+         */
+        public boolean isAtLeast(Versions other) {
+            return status >= other.status && configuration >= other.configuration && counter >= other.counter;
+        }
+    }
+
+    private record Entry(String operationalState, String overallHealth, Boolean lowCashFlag, Versions versions) {
+
+        static final Entry EMPTY = new Entry(null, null, null, Versions.NONE);
+
+        // Older versions of a kind are ignored, so changes can be applied in any order
+        Entry merge(AtmSummaryChangedEvent change) {
+            long version = change.getVersion();
+            Versions v = versions;
+            return switch (change.getKind()) {
+                case STATUS -> version > v.status()
+                        ? new Entry(change.getOperationalState(), overallHealth, lowCashFlag,
+                        new Versions(version, v.configuration(), v.counter()))
+                        : this;
+                case CONFIGURATION -> version > v.configuration()
+                        ? new Entry(operationalState, change.getOverallHealth(), lowCashFlag,
+                        new Versions(v.status(), version, v.counter()))
+                        : this;
+                case COUNTER -> version > v.counter()
+                        ? new Entry(operationalState, overallHealth, change.getLowCashFlag(),
+                        new Versions(v.status(), v.configuration(), version))
+                        : this;
+            };
+        }
+
+        // Same defaults as AtmStatusRepository.findSummaries
+        AtmStateSummaryDto toSummary(String atmId) {
+            return new AtmStateSummaryDto(atmId,
+                    versions.status() != NONE ? operationalState : AtmStateSummaryDto.UNKNOWN_OPERATIONAL_STATE,
+                    versions.configuration() != NONE ? overallHealth : AtmStateSummaryDto.NO_CONFIGURATION_HEALTH,
+                    lowCashFlag,
+                    versions.status() != NONE ? timestampOf(versions.status()) : null);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Entry> atms = new ConcurrentHashMap<>();
+
+    public FleetStateIndex(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+
+        Gauge.builder("atm.state.index.size", atms, Map::size)
+                .description("ATMs in the fleet-wide state index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return The version of a state timestamp, or {@link #NONE} for a missing one.
+     */
+    public static long versionOf(OffsetDateTime timestamp) {
+        return timestamp != null ? ChronoUnit.MICROS.between(Instant.EPOCH, timestamp.toInstant()) : NONE;
+    }
+
+    private static OffsetDateTime timestampOf(long version) {
+        return OffsetDateTime.ofInstant(Instant.EPOCH.plus(version, ChronoUnit.MICROS), ZoneOffset.UTC);
+    }
+
+    /**
+     * @return Whether the change was newer than what the index held for that kind.
+     */
+    public boolean apply(AtmSummaryChangedEvent change) {
+        if (change.getAtmId() == null || change.getKind() == null) {
+            return false;
+        }
+        boolean[] changed = {false};
+        atms.compute(change.getAtmId(), (atmId, current) -> {
+            Entry base = current != null ? current : Entry.EMPTY;
+            Entry next = base.merge(change);
+            changed[0] = next != base;
+            return next;
+        });
+        return changed[0];
+    }
+
+    /**
+     * @return The versions of the ATM's state, {@link Versions#NONE} for an ATM the index does not know.
+     */
+    public Versions getVersions(String atmId) {
+        Entry entry = atms.get(atmId);
+        return entry != null ? entry.versions() : Versions.NONE;
+    }
+
+    public Optional<AtmStateSummaryDto> getSummary(String atmId) {
+        return Optional.ofNullable(atms.get(atmId)).map(entry -> entry.toSummary(atmId));
+    }
+
+    /**
+     * @return The summary of every ATM with at least one kind of state.
+     */
+    public List<AtmStateSummaryDto> summaries() {
+        return atms.entrySet().stream()
+                .map(entry -> entry.getValue().toSummary(entry.getKey()))
+                .toList();
+    }
+
+    // Merged like topic changes, so a reload never moves an ATM back to an older state
+    @Scheduled(fixedDelayString = "${state.index.refresh-interval-ms:300000}")
+    public void reload() {
+        try {
+            jdbcTemplate.query("SELECT atm_id, operational_state, last_update_timestamp FROM atm_status", rs -> {
+                apply(new AtmSummaryChangedEvent(rs.getString(1), AtmStateChangedEvent.Kind.STATUS,
+                        versionOf(rs.getObject(3, OffsetDateTime.class)), rs.getString(2), null, null));
+            });
+            jdbcTemplate.query("SELECT atm_id, overall_health, last_update_timestamp FROM atm_configuration", rs -> {
+                apply(new AtmSummaryChangedEvent(rs.getString(1), AtmStateChangedEvent.Kind.CONFIGURATION,
+                        versionOf(rs.getObject(3, OffsetDateTime.class)), null, rs.getString(2), null));
+            });
+            jdbcTemplate.query("SELECT atm_id, low_cash_flag, last_update_timestamp FROM atm_counter_summary", rs -> {
+                apply(new AtmSummaryChangedEvent(rs.getString(1), AtmStateChangedEvent.Kind.COUNTER,
+                        versionOf(rs.getObject(3, OffsetDateTime.class)), null, null, rs.getObject(2, Boolean.class)));
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not reload the fleet state index, keeping {} ATMs: {}", atms.size(), e.getMessage());
+            return;
+        }
+        log.debug("Reloaded the fleet state index with {} ATMs", atms.size());
+    }
+}
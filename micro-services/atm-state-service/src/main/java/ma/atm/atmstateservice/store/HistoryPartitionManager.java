@@ -0,0 +1,120 @@
+package ma.atm.atmstateservice.store;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Owns the schema of the history tables, which Hibernate cannot create: both are partitioned by UTC day
+ * on {@code recorded_at}. Partitions are created ahead of time for the whole retention window and a couple
+ * of days into the future, and dropped once they fall out of retention, which is much cheaper than deleting rows.
+ *
+ * <p>Each partition gets a BRIN index on {@code recorded_at} (tiny, since rows arrive roughly in time order)
+ * and a B-tree on {@code (atm_id, recorded_at)} for single-ATM range queries.
+ */
+@Component
+@Slf4j
+public class HistoryPartitionManager {
+
+    static final String STATUS_TABLE = "atm_status_history";
+    static final String COUNTER_TABLE = "atm_counter_history";
+
+    private static final int DAYS_AHEAD = 2;
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String CREATE_STATUS_TABLE = """
+            CREATE TABLE IF NOT EXISTS atm_status_history (
+                atm_id            varchar(255) NOT NULL,
+                recorded_at       timestamptz  NOT NULL,
+                operational_state varchar(255),
+                maintenance_mode  boolean
+            ) PARTITION BY RANGE (recorded_at)
+            """;
+
+    private static final String CREATE_COUNTER_TABLE = """
+            CREATE TABLE IF NOT EXISTS atm_counter_history (
+                atm_id                     varchar(255) NOT NULL,
+                recorded_at                timestamptz  NOT NULL,
+                total_cash_available       double precision,
+                reject_bin_percentage_full integer,
+                low_cash_flag              boolean
+            ) PARTITION BY RANGE (recorded_at)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${state.history.retention-days:30}")
+    private int retentionDays;
+
+    public HistoryPartitionManager(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void createSchema() {
+        jdbcTemplate.execute(CREATE_STATUS_TABLE);
+        jdbcTemplate.execute(CREATE_COUNTER_TABLE);
+        for (String table : List.of(STATUS_TABLE, COUNTER_TABLE)) {
+            // Created on the parent, so Postgres adds them to every partition
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + table + "_recorded_at_brin ON " + table + " USING brin (recorded_at)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + table + "_atm_recorded_at_idx ON " + table + " (atm_id, recorded_at)");
+        }
+        maintainPartitions();
+    }
+
+    // Also run by the history store when a write fails, hence synchronized
+    @Scheduled(fixedDelayString = "${state.history.maintenance-interval-ms:3600000}", initialDelayString = "${state.history.maintenance-interval-ms:3600000}")
+    public synchronized void maintainPartitions() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (String table : List.of(STATUS_TABLE, COUNTER_TABLE)) {
+            for (LocalDate day = today.minusDays(retentionDays); !day.isAfter(today.plusDays(DAYS_AHEAD)); day = day.plusDays(1)) {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(table, day)
+                        + " PARTITION OF " + table
+                        + " FOR VALUES FROM ('" + day + "T00:00:00Z') TO ('" + day.plusDays(1) + "T00:00:00Z')");
+            }
+            dropExpiredPartitions(table, today.minusDays(retentionDays));
+        }
+    }
+
+    /**
+     * @return Whether a sample taken at this time has a partition to go to.
+     */
+    boolean isWithinRetention(long epochMillis) {
+        LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(epochMillis, 86_400_000L));
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        return !day.isBefore(today.minusDays(retentionDays)) && !day.isAfter(today.plusDays(DAYS_AHEAD));
+    }
+
+    int getRetentionDays() {
+        return retentionDays;
+    }
+
+    private void dropExpiredPartitions(String table, LocalDate oldestKept) {
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = ?
+                """, String.class, table);
+        String oldestName = partitionName(table, oldestKept);
+        for (String partition : partitions) {
+            // Suffixes are yyyyMMdd, so names sort by day
+            if (partition.startsWith(table + "_p") && partition.compareTo(oldestName) < 0) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                log.info("Dropped expired history partition {}", partition);
+            }
+        }
+    }
+
+    private static String partitionName(String table, LocalDate day) {
+        return table + "_p" + day.format(PARTITION_SUFFIX);
+    }
+}
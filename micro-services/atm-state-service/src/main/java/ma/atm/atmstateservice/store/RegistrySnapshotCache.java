@@ -0,0 +1,110 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.dto.AtmRegistryDto;
+import ma.atm.atmstateservice.event.AtmRegistryChangedEvent;
+import ma.atm.atmstateservice.feign.RegistryServiceClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local copy of the ATM registry used to enrich dashboard responses without calling the registry service.
+ *
+ * <p>Kept current by registry change events; a periodic full reload through Feign fills the cache at startup
+ * and repairs anything missed while the event subscription was down. An entry changed by an event while a reload
+ * is in flight is not overwritten by the (older) reloaded copy.
+ */
+@Component
+@Slf4j
+public class RegistrySnapshotCache {
+
+    private final RegistryServiceClient registryClient;
+
+    private final Map<String, AtmRegistryDto> atms = new ConcurrentHashMap<>();
+
+    // When each ATM was last changed by an event, to arbitrate against a concurrent full reload
+    private final Map<String, Long> lastEventNanos = new ConcurrentHashMap<>();
+
+    private volatile long lastReloadMillis;
+
+    public RegistrySnapshotCache(RegistryServiceClient registryClient, MeterRegistry meterRegistry) {
+        this.registryClient = registryClient;
+
+        Gauge.builder("atm.state.registry.cache.size", atms, Map::size)
+                .description("ATMs in the local registry snapshot")
+                .register(meterRegistry);
+        Gauge.builder("atm.state.registry.cache.age", this,
+                        c -> c.lastReloadMillis == 0 ? -1 : (System.currentTimeMillis() - c.lastReloadMillis) / 1000.0)
+                .description("Seconds since the last successful full reload, -1 before the first one")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public Optional<AtmRegistryDto> get(String atmId) {
+        return Optional.ofNullable(atms.get(atmId));
+    }
+
+    /**
+     * @return A read-only view of the cached registry, keyed by atmId.
+     */
+    public Map<String, AtmRegistryDto> snapshot() {
+        return Collections.unmodifiableMap(atms);
+    }
+
+    public void apply(AtmRegistryChangedEvent event) {
+        if (event.getAtmId() == null) {
+            return;
+        }
+        lastEventNanos.put(event.getAtmId(), System.nanoTime());
+        if (event.isDeleted() || event.getAtm() == null) {
+            atms.remove(event.getAtmId());
+        } else {
+            atms.put(event.getAtmId(), event.getAtm());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${registry.cache.refresh-interval-ms:300000}")
+    public void reload() {
+        long startedNanos = System.nanoTime();
+        List<AtmRegistryDto> registry;
+        try {
+            registry = registryClient.getAllAtmRegistry();
+        } catch (Exception e) {
+            log.warn("Could not reload registry snapshot, keeping {} cached ATMs: {}", atms.size(), e.getMessage());
+            return;
+        }
+
+        Map<String, AtmRegistryDto> reloaded = new HashMap<>();
+        for (AtmRegistryDto atm : registry) {
+            if (atm.getAtmId() != null) {
+                reloaded.put(atm.getAtmId(), atm);
+            }
+        }
+
+        // Replace or drop entries that events have not touched since the reload started
+        for (AtmRegistryDto atm : reloaded.values()) {
+            if (!changedSince(atm.getAtmId(), startedNanos)) {
+                atms.put(atm.getAtmId(), atm);
+            }
+        }
+        atms.keySet().removeIf(atmId -> !reloaded.containsKey(atmId) && !changedSince(atmId, startedNanos));
+        lastEventNanos.values().removeIf(nanos -> nanos - startedNanos < 0);
+
+        lastReloadMillis = System.currentTimeMillis();
+        log.debug("Reloaded registry snapshot with {} ATMs", atms.size());
+    }
+
+    private boolean changedSince(String atmId, long startedNanos) {
+        Long nanos = lastEventNanos.get(atmId);
+        return nanos != null && nanos - startedNanos >= 0;
+    }
+}
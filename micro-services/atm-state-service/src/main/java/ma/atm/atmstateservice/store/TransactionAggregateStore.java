@@ -0,0 +1,182 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.atmstateservice.dto.TransactionStatsDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory rolling transaction aggregates per ATM (1m, 15m, 1h and 24h windows).
+ *
+ * <p>Every instance reads the whole transaction topic on its own non-durable subscription, so each one holds the
+ * aggregates of the whole fleet and any instance can answer for any ATM. There is no partitioning, hence nothing
+ * to rebalance.
+ *
+ * <p>Each ATM uses a fixed amount of memory, and ATMs without a transaction for 24 hours are evicted,
+ * so the store is bounded by the number of active ATMs. The aggregates are written to a local snapshot
+ * file every {@code state.transactions.snapshot-interval-ms} and on shutdown, and read back at startup.
+ * A non-durable subscription starts from the latest message, so transactions published between the last
+ * snapshot and the restart are missing from this instance's aggregates until they leave the windows.
+ */
+@Component
+@Slf4j
+public class TransactionAggregateStore {
+
+    private static final int SNAPSHOT_FORMAT = 1;
+    private static final long RETENTION_MILLIS = 24 * 3_600_000L;
+
+    private final Map<String, TransactionWindows> windows = new ConcurrentHashMap<>();
+
+    @Value("${state.transactions.snapshot-path:./data/transaction-aggregates.bin}")
+    private Path snapshotPath;
+
+    public TransactionAggregateStore(MeterRegistry meterRegistry) {
+        Gauge.builder("atm.state.transactions.atms", windows, Map::size)
+                .description("ATMs with transaction aggregates in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param responseTime The reported response time, or NaN when there was none.
+     */
+    public void record(String atmId, long epochMillis, boolean failed, long amount, long dispensed, double responseTime) {
+        long now = System.currentTimeMillis();
+        // Recorded inside compute so a concurrent eviction cannot drop the ATM between lookup and update
+        windows.compute(atmId, (id, atm) -> {
+            TransactionWindows target = atm != null ? atm : new TransactionWindows();
+            synchronized (target) {
+                target.record(epochMillis, now, failed, amount, dispensed, responseTime);
+            }
+            return target;
+        });
+    }
+
+    /**
+     * @return The ATM's aggregates for every window, or empty if it had no transaction in the last 24 hours.
+     */
+    public Optional<List<TransactionStatsDto>> getStats(String atmId) {
+        TransactionWindows atm = windows.get(atmId);
+        if (atm == null) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        List<TransactionStatsDto> stats = new ArrayList<>();
+        synchronized (atm) {
+            for (TransactionWindow window : TransactionWindow.values()) {
+                stats.add(atm.stats(atmId, window, now));
+            }
+        }
+        return Optional.of(stats);
+    }
+
+    /**
+     * @return One window's aggregates for every ATM that had a transaction in it.
+     */
+    public List<TransactionStatsDto> getFleetStats(TransactionWindow window) {
+        long now = System.currentTimeMillis();
+        List<TransactionStatsDto> stats = new ArrayList<>(windows.size());
+        windows.forEach((atmId, atm) -> {
+            TransactionStatsDto atmStats;
+            synchronized (atm) {
+                atmStats = atm.stats(atmId, window, now);
+            }
+            if (atmStats.getTransactionCount() > 0) {
+                stats.add(atmStats);
+            }
+        });
+        return stats;
+    }
+
+    // --- Snapshots ---
+
+    @PostConstruct
+    public void restore() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            int format = in.readInt();
+            if (format != SNAPSHOT_FORMAT) {
+                log.warn("Ignoring transaction aggregate snapshot {} with unknown format {}", snapshotPath, format);
+                return;
+            }
+            int atms = in.readInt();
+            for (int i = 0; i < atms; i++) {
+                windows.put(in.readUTF(), TransactionWindows.readFrom(in));
+            }
+            log.info("Restored transaction aggregates of {} ATMs from {}", atms, snapshotPath);
+        } catch (NoSuchFileException e) {
+            log.info("No transaction aggregate snapshot at {}, starting empty", snapshotPath);
+        } catch (IOException e) {
+            windows.clear();
+            log.error("Could not read transaction aggregate snapshot {}, starting empty: {}", snapshotPath, e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${state.transactions.snapshot-interval-ms:60000}")
+    public void scheduledSnapshot() {
+        evictIdle();
+        snapshot();
+    }
+
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        snapshot();
+    }
+
+    /**
+     * Writes all aggregates to a temporary file and moves it over the previous snapshot,
+     * so a crash while writing never leaves a truncated snapshot behind.
+     */
+    public synchronized void snapshot() {
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try {
+            if (snapshotPath.getParent() != null) {
+                Files.createDirectories(snapshotPath.getParent());
+            }
+            List<Map.Entry<String, TransactionWindows>> entries = new ArrayList<>(windows.entrySet());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_FORMAT);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, TransactionWindows> entry : entries) {
+                    out.writeUTF(entry.getKey());
+                    synchronized (entry.getValue()) {
+                        entry.getValue().writeTo(out);
+                    }
+                }
+            }
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Wrote transaction aggregates of {} ATMs to {}", entries.size(), snapshotPath);
+        } catch (IOException e) {
+            log.error("Could not write transaction aggregate snapshot {}: {}", snapshotPath, e.getMessage(), e);
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - RETENTION_MILLIS;
+        for (String atmId : windows.keySet()) {
+            windows.computeIfPresent(atmId, (id, atm) -> {
+                synchronized (atm) {
+                    return atm.getLastEventMillis() < cutoff ? null : atm;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ma.atm.atmstateservice.store;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Rolling windows maintained for transaction aggregates.
+ * Windows are aligned on minute (hour for 24h) boundaries and include the current, partial unit.
+ */
+public enum TransactionWindow {
+    ONE_MINUTE("1m", false, 1),
+    FIFTEEN_MINUTES("15m", false, 15),
+    ONE_HOUR("1h", false, 60),
+    ONE_DAY("24h", true, 24);
+
+    private final String label;
+    private final boolean hourly;
+    private final int units;
+
+    TransactionWindow(String label, boolean hourly, int units) {
+        this.label = label;
+        this.hourly = hourly;
+        this.units = units;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    boolean isHourly() {
+        return hourly;
+    }
+
+    int getUnits() {
+        return units;
+    }
+
+    public static Optional<TransactionWindow> fromLabel(String label) {
+        return Arrays.stream(values()).filter(w -> w.label.equalsIgnoreCase(label)).findFirst();
+    }
+}
@@ -0,0 +1,227 @@
+package ma.atm.atmstateservice.store;
+
+import ma.atm.atmstateservice.dto.TransactionStatsDto;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Rolling transaction aggregates of one ATM: a ring of 60 minute buckets (1m, 15m and 1h windows)
+ * and a ring of 24 hour buckets (24h window). Memory per ATM is fixed; old buckets are overwritten.
+ *
+ * <p>Response times go into a log-scale histogram per bucket, so percentiles are approximate
+ * (within about 10%) but can be merged across buckets. Not thread safe on its own; the store
+ * synchronizes on the instance.
+ */
+final class TransactionWindows {
+
+    // Log-scale response time buckets: bucket 0 holds values <= MIN, bucket i holds (MIN*GROWTH^(i-1), MIN*GROWTH^i]
+    static final int LATENCY_BUCKETS = 64;
+    private static final double LATENCY_MIN = 1.0;
+    private static final double LATENCY_GROWTH = 1.2;
+    private static final double LOG_GROWTH = Math.log(LATENCY_GROWTH);
+
+    // Timestamps further ahead of the local clock are counted as this far ahead
+    static final long MAX_CLOCK_SKEW_MILLIS = 60_000L;
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private final Ring minutes;
+    private final Ring hours;
+    private long lastEventMillis;
+
+    TransactionWindows() {
+        this(new Ring(60), new Ring(24), 0);
+    }
+
+    private TransactionWindows(Ring minutes, Ring hours, long lastEventMillis) {
+        this.minutes = minutes;
+        this.hours = hours;
+        this.lastEventMillis = lastEventMillis;
+    }
+
+    /**
+     * @param nowMillis The local clock. A transaction dated in the future would otherwise move the rings ahead
+     *                  and overwrite the current buckets.
+     */
+    void record(long epochMillis, long nowMillis, boolean failed, long amount, long dispensed, double responseTime) {
+        epochMillis = Math.min(epochMillis, nowMillis + MAX_CLOCK_SKEW_MILLIS);
+        int latencyBucket = Double.isNaN(responseTime) ? -1 : latencyBucket(responseTime);
+        minutes.add(Math.floorDiv(epochMillis, MILLIS_PER_MINUTE), failed, amount, dispensed, latencyBucket);
+        hours.add(Math.floorDiv(epochMillis, MILLIS_PER_HOUR), failed, amount, dispensed, latencyBucket);
+        lastEventMillis = Math.max(lastEventMillis, epochMillis);
+    }
+
+    long getLastEventMillis() {
+        return lastEventMillis;
+    }
+
+    TransactionStatsDto stats(String atmId, TransactionWindow window, long nowMillis) {
+        Ring ring = window.isHourly() ? hours : minutes;
+        long now = Math.floorDiv(nowMillis, window.isHourly() ? MILLIS_PER_HOUR : MILLIS_PER_MINUTE);
+
+        long count = 0;
+        long failures = 0;
+        long amount = 0;
+        long dispensed = 0;
+        int[] latency = new int[LATENCY_BUCKETS];
+        for (int slot = 0; slot < ring.unit.length; slot++) {
+            long unit = ring.unit[slot];
+            if (unit <= now - window.getUnits() || unit > now) {
+                continue;
+            }
+            count += ring.count[slot];
+            failures += ring.failures[slot];
+            amount += ring.amount[slot];
+            dispensed += ring.dispensed[slot];
+            if (ring.latency[slot] != null) {
+                for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                    latency[i] += ring.latency[slot][i];
+                }
+            }
+        }
+
+        return new TransactionStatsDto(atmId, window.getLabel(), count, failures,
+                count == 0 ? null : (double) failures / count,
+                percentile(latency, 0.50), percentile(latency, 0.95),
+                amount, dispensed);
+    }
+
+    static int latencyBucket(double value) {
+        if (value <= LATENCY_MIN) {
+            return 0;
+        }
+        int bucket = 1 + (int) (Math.log(value / LATENCY_MIN) / LOG_GROWTH);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    // Geometric midpoint of the bucket holding the requested rank
+    private static Double percentile(int[] latency, double quantile) {
+        long total = 0;
+        for (int n : latency) {
+            total += n;
+        }
+        if (total == 0) {
+            return null;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += latency[i];
+            if (seen >= rank) {
+                return i == 0 ? LATENCY_MIN : LATENCY_MIN * Math.pow(LATENCY_GROWTH, i - 0.5);
+            }
+        }
+        return LATENCY_MIN * Math.pow(LATENCY_GROWTH, LATENCY_BUCKETS - 1);
+    }
+
+    // --- Snapshots ---
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(lastEventMillis);
+        minutes.writeTo(out);
+        hours.writeTo(out);
+    }
+
+    static TransactionWindows readFrom(DataInput in) throws IOException {
+        long lastEventMillis = in.readLong();
+        Ring minutes = Ring.readFrom(in);
+        Ring hours = Ring.readFrom(in);
+        return new TransactionWindows(minutes, hours, lastEventMillis);
+    }
+
+    /**
+     * Fixed-size ring of time buckets, indexed by unit (epoch minute or hour) modulo its size.
+     */
+    private static final class Ring {
+        private final long[] unit; // unit held by each slot, -1 when empty
+        private final int[] count;
+        private final int[] failures;
+        private final long[] amount;
+        private final long[] dispensed;
+        private final int[][] latency; // allocated on the first response time of a slot
+        private long latest = Long.MIN_VALUE;
+
+        Ring(int size) {
+            unit = new long[size];
+            Arrays.fill(unit, -1L);
+            count = new int[size];
+            failures = new int[size];
+            amount = new long[size];
+            dispensed = new long[size];
+            latency = new int[size][];
+        }
+
+        void add(long u, boolean failed, long txAmount, long txDispensed, int latencyBucket) {
+            // Too old for this ring: its slot already belongs to a later unit
+            if (latest != Long.MIN_VALUE && u <= latest - unit.length) {
+                return;
+            }
+            int slot = (int) Math.floorMod(u, (long) unit.length);
+            if (unit[slot] != u) {
+                unit[slot] = u;
+                count[slot] = 0;
+                failures[slot] = 0;
+                amount[slot] = 0;
+                dispensed[slot] = 0;
+                if (latency[slot] != null) {
+                    Arrays.fill(latency[slot], 0);
+                }
+            }
+            latest = Math.max(latest, u);
+
+            count[slot]++;
+            if (failed) {
+                failures[slot]++;
+            }
+            amount[slot] += txAmount;
+            dispensed[slot] += txDispensed;
+            if (latencyBucket >= 0) {
+                if (latency[slot] == null) {
+                    latency[slot] = new int[LATENCY_BUCKETS];
+                }
+                latency[slot][latencyBucket]++;
+            }
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(unit.length);
+            out.writeLong(latest);
+            for (int slot = 0; slot < unit.length; slot++) {
+                out.writeLong(unit[slot]);
+                out.writeInt(count[slot]);
+                out.writeInt(failures[slot]);
+                out.writeLong(amount[slot]);
+                out.writeLong(dispensed[slot]);
+                out.writeBoolean(latency[slot] != null);
+                if (latency[slot] != null) {
+                    for (int n : latency[slot]) {
+                        out.writeInt(n);
+                    }
+                }
+            }
+        }
+
+        static Ring readFrom(DataInput in) throws IOException {
+            Ring ring = new Ring(in.readInt());
+            ring.latest = in.readLong();
+            for (int slot = 0; slot < ring.unit.length; slot++) {
+                ring.unit[slot] = in.readLong();
+                ring.count[slot] = in.readInt();
+                ring.failures[slot] = in.readInt();
+                ring.amount[slot] = in.readLong();
+                ring.dispensed[slot] = in.readLong();
+                if (in.readBoolean()) {
+                    ring.latency[slot] = new int[LATENCY_BUCKETS];
+                    for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                        ring.latency[slot][i] = in.readInt();
+                    }
+                }
+            }
+            return ring;
+        }
+    }
+}
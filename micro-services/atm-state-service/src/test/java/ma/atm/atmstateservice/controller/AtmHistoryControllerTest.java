@@ -0,0 +1,56 @@
+package ma.atm.atmstateservice.controller;
+
+import ma.atm.atmstateservice.store.AtmHistoryStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AtmHistoryControllerTest {
+
+	private static final Instant T0 = Instant.parse("2025-01-01T12:00:00Z");
+
+	private AtmHistoryStore historyStore;
+	private AtmHistoryController controller;
+
+	@BeforeEach
+	void setUp() {
+		historyStore = mock(AtmHistoryStore.class);
+		when(historyStore.getRetentionDays()).thenReturn(30);
+		controller = new AtmHistoryController(historyStore);
+	}
+
+	@Test
+	void picksResolutionFromRangeWhenNoneIsGiven() {
+		controller.getHistory("ATM1", T0.minus(Duration.ofDays(1)), T0, null);
+		verify(historyStore).getHistory("ATM1", T0.minus(Duration.ofDays(1)), T0, Duration.ofSeconds(86_400 / 500));
+
+		// Never finer than a minute
+		controller.getHistory("ATM1", T0.minus(Duration.ofHours(1)), T0, null);
+		verify(historyStore).getHistory("ATM1", T0.minus(Duration.ofHours(1)), T0, Duration.ofMinutes(1));
+
+		controller.getHistory("ATM1", T0.minus(Duration.ofHours(6)), T0, Duration.ofMinutes(5));
+		verify(historyStore).getHistory("ATM1", T0.minus(Duration.ofHours(6)), T0, Duration.ofMinutes(5));
+	}
+
+	@Test
+	void rejectsEmptyOrOversizedRanges() {
+		assertEquals(HttpStatus.BAD_REQUEST, controller.getHistory("ATM1", T0, T0, null).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, controller.getHistory("ATM1", T0.minus(Duration.ofDays(40)), T0, null).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST,
+				controller.getHistory("ATM1", T0.minus(Duration.ofDays(1)), T0, Duration.ofSeconds(1)).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST,
+				controller.getHistory("ATM1", T0.minus(Duration.ofDays(1)), T0, Duration.ZERO).getStatusCode());
+		verify(historyStore, never()).getHistory(any(), any(), any(), any());
+	}
+
+}
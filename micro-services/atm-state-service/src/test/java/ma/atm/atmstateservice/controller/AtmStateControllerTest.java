@@ -0,0 +1,129 @@
+package ma.atm.atmstateservice.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmstateservice.dto.AtmFullStateDto;
+import ma.atm.atmstateservice.dto.AtmStatusDto;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import ma.atm.atmstateservice.event.AtmSummaryChangedEvent;
+import ma.atm.atmstateservice.feign.RegistryServiceClient;
+import ma.atm.atmstateservice.model.AtmStatus;
+import ma.atm.atmstateservice.repository.AtmStatusRepository;
+import ma.atm.atmstateservice.service.AtmCombinedViewService;
+import ma.atm.atmstateservice.store.AtmFullStateCache;
+import ma.atm.atmstateservice.store.AtmStateStore;
+import ma.atm.atmstateservice.store.FleetStateIndex;
+import ma.atm.atmstateservice.store.RegistrySnapshotCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AtmStateControllerTest {
+
+	private static final OffsetDateTime T0 = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+	private AtmStateStore atmStateStore;
+	private FleetStateIndex fleetStateIndex;
+	private AtmStateController controller;
+
+	@BeforeEach
+	void setUp() {
+		atmStateStore = mock(AtmStateStore.class);
+		fleetStateIndex = new FleetStateIndex(mock(JdbcTemplate.class), new SimpleMeterRegistry());
+		controller = newController(atmStateStore);
+	}
+
+	@Test
+	void etagIsDerivedFromTheStateTimestamp() {
+		indexStatus("ATM1", T0);
+		when(atmStateStore.getStatus("ATM1")).thenReturn(Optional.of(status("ATM1", T0)));
+
+		ResponseEntity<AtmStatusDto> response = controller.getAtmStatus("ATM1", null);
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals(etag(T0), response.getHeaders().getETag());
+
+		// Another instance, with its own store and cache, answers with the same tag
+		AtmStateStore otherStore = mock(AtmStateStore.class);
+		when(otherStore.getStatus("ATM1")).thenReturn(Optional.of(status("ATM1", T0)));
+		assertEquals(etag(T0), newController(otherStore).getAtmStatus("ATM1", null).getHeaders().getETag());
+	}
+
+	@Test
+	void matchingTagIsAnsweredFromTheIndexAlone() {
+		indexStatus("ATM1", T0);
+
+		ResponseEntity<AtmStatusDto> response = controller.getAtmStatus("ATM1", "W/" + etag(T0));
+		assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		assertEquals(etag(T0), response.getHeaders().getETag());
+
+		String fullTag = "\"" + Long.toString(FleetStateIndex.versionOf(T0), 36) + "-0-0\"";
+		assertEquals(HttpStatus.NOT_MODIFIED, controller.getFullAtmState("ATM1", fullTag).getStatusCode());
+		verifyNoInteractions(atmStateStore);
+	}
+
+	@Test
+	void newerStateInTheIndexIsRead() {
+		indexStatus("ATM1", T0.plusSeconds(1));
+		when(atmStateStore.getStatus("ATM1")).thenReturn(Optional.of(status("ATM1", T0.plusSeconds(1))));
+
+		ResponseEntity<AtmStatusDto> response = controller.getAtmStatus("ATM1", etag(T0));
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals(etag(T0.plusSeconds(1)), response.getHeaders().getETag());
+		assertEquals(T0.plusSeconds(1), response.getBody().getLastUpdateTimestamp());
+	}
+
+	@Test
+	void stateNotFlushedYetIsTaggedWithWhatWasRead() {
+		// Indexed from another instance's change, while Postgres still holds the previous status
+		indexStatus("ATM1", T0.plusSeconds(1));
+		when(atmStateStore.getStatus("ATM1")).thenReturn(Optional.of(status("ATM1", T0)));
+
+		ResponseEntity<AtmFullStateDto> response = controller.getFullAtmState("ATM1", null);
+		String readTag = response.getHeaders().getETag();
+		assertEquals("\"" + Long.toString(FleetStateIndex.versionOf(T0), 36) + "-0-0\"", readTag);
+
+		// Not answered from the index, so the client gets the newer state once it is flushed
+		assertEquals(HttpStatus.NOT_MODIFIED, controller.getFullAtmState("ATM1", readTag).getStatusCode());
+		verify(atmStateStore, times(2)).getStatus("ATM1");
+	}
+
+	@Test
+	void unknownAtmIsNotFound() {
+		assertEquals(HttpStatus.NOT_FOUND, controller.getAtmStatus("NONE", "\"0\"").getStatusCode());
+		assertEquals(HttpStatus.NOT_FOUND, controller.getFullAtmState("NONE", "\"0-0-0\"").getStatusCode());
+	}
+
+	private AtmStateController newController(AtmStateStore store) {
+		return new AtmStateController(mock(AtmStatusRepository.class), mock(RegistryServiceClient.class), store,
+				mock(RegistrySnapshotCache.class), mock(AtmCombinedViewService.class),
+				new AtmFullStateCache(new SimpleMeterRegistry(), 100, 60_000), fleetStateIndex);
+	}
+
+	private void indexStatus(String atmId, OffsetDateTime timestamp) {
+		fleetStateIndex.apply(new AtmSummaryChangedEvent(atmId, AtmStateChangedEvent.Kind.STATUS,
+				FleetStateIndex.versionOf(timestamp), "IN_SERVICE", null, null));
+	}
+
+	private static AtmStatus status(String atmId, OffsetDateTime timestamp) {
+		return new AtmStatus(atmId, "IN_SERVICE", false, null, null, timestamp);
+	}
+
+	private static String etag(OffsetDateTime timestamp) {
+		return "\"" + Long.toString(FleetStateIndex.versionOf(timestamp), 36) + "\"";
+	}
+
+}
@@ -0,0 +1,126 @@
+package ma.atm.atmstateservice.pulsar.consumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.pulsar.config.PulsarListenerEndpointRegistry;
+import org.springframework.pulsar.listener.Acknowledgement;
+import org.springframework.pulsar.listener.MessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AtmEventLanesTest {
+
+	private PulsarListenerEndpointRegistry listenerRegistry;
+	private MessageListenerContainer statusListener;
+	private AtmEventLanes lanes;
+
+	@BeforeEach
+	void setUp() {
+		listenerRegistry = mock(PulsarListenerEndpointRegistry.class);
+		statusListener = mock(MessageListenerContainer.class);
+		when(listenerRegistry.getListenerContainer(AtmEventLanes.STATUS_LISTENER)).thenReturn(statusListener);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		lanes.shutdown();
+	}
+
+	@Test
+	void eventsOfOneAtmAreProcessedInOrder() throws InterruptedException {
+		lanes = new AtmEventLanes(listenerRegistry, new SimpleMeterRegistry(), 4, 1000, 0.8, 0.5);
+		Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+		Acknowledgement acknowledgement = mock(Acknowledgement.class);
+		CountDownLatch done = new CountDownLatch(400);
+
+		for (int i = 0; i < 100; i++) {
+			for (String atmId : List.of("ATM1", "ATM2", "ATM3", "ATM4")) {
+				int sequence = i;
+				lanes.submit(atmId, acknowledgement, () -> {
+					processed.computeIfAbsent(atmId, id -> Collections.synchronizedList(new ArrayList<>())).add(sequence);
+					done.countDown();
+				});
+			}
+		}
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		for (List<Integer> sequences : processed.values()) {
+			assertEquals(100, sequences.size());
+			for (int i = 0; i < sequences.size(); i++) {
+				assertEquals(i, sequences.get(i));
+			}
+		}
+		verify(acknowledgement, timeout(1000).times(400)).acknowledge();
+	}
+
+	@Test
+	void failedEventIsNackedAndItsLaneGoesOn() throws InterruptedException {
+		lanes = new AtmEventLanes(listenerRegistry, new SimpleMeterRegistry(), 1, 1000, 0.8, 0.5);
+		Acknowledgement failing = mock(Acknowledgement.class);
+		Acknowledgement next = mock(Acknowledgement.class);
+		CountDownLatch done = new CountDownLatch(1);
+
+		lanes.submit("ATM1", failing, () -> {
+			throw new IllegalStateException("database down");
+		});
+		lanes.submit("ATM1", next, done::countDown);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		verify(failing, timeout(1000)).nack();
+		verify(failing, never()).acknowledge();
+		verify(next, timeout(1000)).acknowledge();
+	}
+
+	@Test
+	void fullLanePausesListenersUntilDrained() throws InterruptedException {
+		lanes = new AtmEventLanes(listenerRegistry, new SimpleMeterRegistry(), 1, 10, 0.5, 0.2);
+		Acknowledgement acknowledgement = mock(Acknowledgement.class);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		lanes.submit("ATM1", acknowledgement, () -> {
+			started.countDown();
+			awaitQuietly(release);
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 4; i++) {
+			lanes.submit("ATM1", acknowledgement, () -> { });
+		}
+		verify(statusListener, never()).pause();
+
+		lanes.submit("ATM1", acknowledgement, () -> { });
+		verify(statusListener).pause();
+		verify(statusListener, never()).resume();
+
+		release.countDown();
+		verify(statusListener, timeout(5000)).resume();
+		verify(acknowledgement, timeout(5000).times(6)).acknowledge();
+		verify(statusListener, times(1)).pause();
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
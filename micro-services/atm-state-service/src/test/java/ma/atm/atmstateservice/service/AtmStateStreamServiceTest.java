@@ -0,0 +1,180 @@
+package ma.atm.atmstateservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmstateservice.config.JacksonConfig;
+import ma.atm.atmstateservice.dto.AtmRegistryDto;
+import ma.atm.atmstateservice.dto.AtmStateSummaryDto;
+import ma.atm.atmstateservice.event.AtmPeripheralsChangedEvent;
+import ma.atm.atmstateservice.event.AtmRegistryChangedEvent;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import ma.atm.atmstateservice.event.AtmSummaryChangedEvent;
+import ma.atm.atmstateservice.feign.RegistryServiceClient;
+import ma.atm.atmstateservice.repository.AtmStatusRepository;
+import ma.atm.atmstateservice.store.FleetStateIndex;
+import ma.atm.atmstateservice.store.RegistrySnapshotCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+
+class AtmStateStreamServiceTest {
+
+	private static final OffsetDateTime T0 = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+	// Rendered events, as written to the client
+	private final List<String> events = new CopyOnWriteArrayList<>();
+
+	private MockedConstruction<SseEmitter> emitters;
+	private FleetStateIndex fleetStateIndex;
+	private RegistrySnapshotCache registrySnapshotCache;
+	private AtmStateStreamService stream;
+
+	@BeforeEach
+	void setUp() {
+		emitters = mockConstruction(SseEmitter.class, (emitter, context) ->
+				doAnswer(invocation -> {
+					events.add(render(invocation.getArgument(0)));
+					return null;
+				}).when(emitter).send(any(SseEmitter.SseEventBuilder.class)));
+
+		fleetStateIndex = new FleetStateIndex(mock(JdbcTemplate.class), new SimpleMeterRegistry());
+		registrySnapshotCache = new RegistrySnapshotCache(mock(RegistryServiceClient.class), new SimpleMeterRegistry());
+		AtmCombinedViewService views = new AtmCombinedViewService(mock(AtmStatusRepository.class), fleetStateIndex,
+				registrySnapshotCache);
+		ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+		stream = new AtmStateStreamService(views, objectMapper, new SimpleMeterRegistry(), 1);
+		ReflectionTestUtils.setField(stream, "emitterTimeoutMs", 60_000L);
+		ReflectionTestUtils.setField(stream, "maxQueuedEvents", 100);
+
+		register("ATM1", "CASA");
+		register("ATM2", "RABAT");
+		indexStatus("ATM1", "IN_SERVICE", T0);
+		indexStatus("ATM2", "IN_SERVICE", T0);
+	}
+
+	@AfterEach
+	void tearDown() {
+		stream.shutdown();
+		emitters.close();
+	}
+
+	@Test
+	void snapshotHoldsMatchingAtmsWithTheSummaryDefaults() throws InterruptedException {
+		stream.subscribe("CASA", null);
+
+		String snapshot = awaitEvents(1).get(0);
+		assertTrue(snapshot.startsWith("event:snapshot\n"));
+		assertTrue(snapshot.contains("\"atmId\":\"ATM1\""));
+		assertFalse(snapshot.contains("ATM2"));
+		// No configuration yet
+		assertTrue(snapshot.contains("\"overallHealth\":\"" + AtmStateSummaryDto.NO_CONFIGURATION_HEALTH + "\""));
+	}
+
+	@Test
+	void changesFromAnyInstanceAreCoalescedIntoOneDelta() throws InterruptedException {
+		stream.subscribe("CASA", null);
+		awaitEvents(1);
+
+		// As received from the state-change topic, whichever instance applied them
+		indexStatus("ATM1", "OUT_OF_SERVICE", T0.plusSeconds(1));
+		stream.onAtmChanged("ATM1");
+		indexStatus("ATM1", "IN_SERVICE", T0.plusSeconds(2));
+		stream.onAtmChanged("ATM1");
+		indexStatus("ATM2", "OUT_OF_SERVICE", T0.plusSeconds(1));
+		stream.onAtmChanged("ATM2");
+		stream.pushChanges();
+
+		String delta = awaitEvents(2).get(1);
+		assertTrue(delta.startsWith("event:delta\n"));
+		assertEquals(1, delta.split("\"atmId\"", -1).length - 1);
+		assertTrue(delta.contains("\"operationalState\":\"IN_SERVICE\""));
+	}
+
+	@Test
+	void atmMovedOutOfTheFilterIsRemoved() throws InterruptedException {
+		stream.subscribe("CASA", null);
+		awaitEvents(1);
+
+		register("ATM1", "RABAT");
+		stream.onAtmChanged("ATM1");
+		stream.pushChanges();
+
+		String removed = awaitEvents(2).get(1);
+		assertTrue(removed.startsWith("event:removed\n"));
+		assertTrue(removed.contains("[\"ATM1\"]"));
+
+		// Not sent again while it stays out
+		stream.onAtmChanged("ATM1");
+		stream.pushChanges();
+		stream.onPeripheralsChanged(new AtmPeripheralsChangedEvent("ATM2", Instant.now(), Map.of("printer", "OK"), List.of()));
+		stream.pushChanges();
+		Thread.sleep(100);
+		assertEquals(2, events.size());
+	}
+
+	@Test
+	void peripheralDeltasFollowTheFilters() throws InterruptedException {
+		stream.subscribe("CASA", null);
+		awaitEvents(1);
+
+		stream.onPeripheralsChanged(new AtmPeripheralsChangedEvent("ATM1", Instant.now(), Map.of("printer", "PAPER_LOW"), List.of()));
+		stream.onPeripheralsChanged(new AtmPeripheralsChangedEvent("ATM2", Instant.now(), Map.of("printer", "OK"), List.of()));
+		stream.pushChanges();
+
+		String peripherals = awaitEvents(2).get(1);
+		assertTrue(peripherals.startsWith("event:peripherals\n"));
+		assertTrue(peripherals.contains("PAPER_LOW"));
+		assertFalse(peripherals.contains("ATM2"));
+	}
+
+	private void register(String atmId, String region) {
+		AtmRegistryDto atm = new AtmRegistryDto();
+		atm.setAtmId(atmId);
+		atm.setRegion(region);
+		registrySnapshotCache.apply(new AtmRegistryChangedEvent(atmId, "UPDATED", atm, Instant.now()));
+	}
+
+	private void indexStatus(String atmId, String operationalState, OffsetDateTime timestamp) {
+		fleetStateIndex.apply(new AtmSummaryChangedEvent(atmId, AtmStateChangedEvent.Kind.STATUS,
+				FleetStateIndex.versionOf(timestamp), operationalState, null, null));
+	}
+
+	// Events are written by a sender thread
+	private List<String> awaitEvents(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (events.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, events.size());
+		return events;
+	}
+
+	private static String render(SseEmitter.SseEventBuilder event) {
+		StringBuilder text = new StringBuilder();
+		for (ResponseBodyEmitter.DataWithMediaType part : event.build()) {
+			text.append(part.getData());
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,67 @@
+package ma.atm.atmstateservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeripheralDigestTest {
+
+	@Test
+	void hashIgnoresKeyOrder() {
+		Map<String, Object> first = new LinkedHashMap<>();
+		first.put("cardReader", Map.of("status", "OK"));
+		first.put("printer", Map.of("status", "PAPER_LOW"));
+		Map<String, Object> second = new LinkedHashMap<>();
+		second.put("printer", Map.of("status", "PAPER_LOW"));
+		second.put("cardReader", Map.of("status", "OK"));
+
+		assertEquals(PeripheralDigest.hash(first), PeripheralDigest.hash(second));
+	}
+
+	@Test
+	void hashDependsOnListOrder() {
+		assertNotEquals(PeripheralDigest.hash(Map.of("errors", List.of("E1", "E2"))),
+				PeripheralDigest.hash(Map.of("errors", List.of("E2", "E1"))));
+	}
+
+	@Test
+	void hashComparesNumbersByValue() {
+		long asInt = PeripheralDigest.hash(Map.of("level", 1));
+		assertEquals(asInt, PeripheralDigest.hash(Map.of("level", 1L)));
+		assertEquals(asInt, PeripheralDigest.hash(Map.of("level", 1.0)));
+		assertNotEquals(asInt, PeripheralDigest.hash(Map.of("level", "1")));
+	}
+
+	@Test
+	void diffListsAddedChangedAndRemovedPeripherals() {
+		Map<String, Object> previous = Map.of(
+				"cardReader", Map.of("status", "OK"),
+				"printer", Map.of("status", "OK"),
+				"camera", Map.of("status", "OK"));
+		Map<String, Object> current = Map.of(
+				"cardReader", Map.of("status", "OK"),
+				"printer", Map.of("status", "PAPER_LOW"),
+				"pinPad", Map.of("status", "OK"));
+
+		PeripheralDigest.Diff diff = PeripheralDigest.diff(previous, current);
+
+		assertEquals(List.of("pinPad"), diff.added());
+		assertEquals(List.of("printer"), diff.changed());
+		assertEquals(List.of("camera"), diff.removed());
+		assertEquals(3, diff.all().size());
+	}
+
+	@Test
+	void diffTreatsNullAsEmpty() {
+		assertTrue(PeripheralDigest.diff(null, null).isEmpty());
+		assertEquals(List.of("printer"), PeripheralDigest.diff(null, Map.of("printer", "OK")).added());
+		assertEquals(List.of("printer"), PeripheralDigest.diff(Map.of("printer", "OK"), null).removed());
+	}
+
+}
@@ -0,0 +1,117 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmstateservice.dto.AtmFullStateDto;
+import ma.atm.atmstateservice.dto.AtmStatusDto;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtmFullStateCacheTest {
+
+	private static final OffsetDateTime T0 = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+	private SimpleMeterRegistry meterRegistry;
+	private AtmFullStateCache cache;
+
+	// What the loader reads, and how often it was called per ATM
+	private final Map<String, AtmFullStateDto> stored = new HashMap<>();
+	private final Map<String, Integer> loads = new HashMap<>();
+	private final Function<String, Optional<AtmFullStateDto>> loader = atmId -> {
+		loads.merge(atmId, 1, Integer::sum);
+		return Optional.ofNullable(stored.get(atmId));
+	};
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		cache = new AtmFullStateCache(meterRegistry, 100, 60_000);
+	}
+
+	@Test
+	void servesCachedStateWhileTheIndexHasNothingNewer() {
+		stored.put("ATM1", state("ATM1", T0));
+
+		AtmFullStateDto first = cache.get("ATM1", versions(T0), loader).orElseThrow();
+		assertSame(first, cache.get("ATM1", versions(T0), loader).orElseThrow());
+		assertEquals(1, loads.get("ATM1"));
+		assertEquals(1, meterRegistry.counter("atm.state.cache.gets", "result", "hit").count());
+
+		// Another instance applied a newer status
+		stored.put("ATM1", state("ATM1", T0.plusSeconds(1)));
+		AtmFullStateDto updated = cache.get("ATM1", versions(T0.plusSeconds(1)), loader).orElseThrow();
+		assertEquals(T0.plusSeconds(1), updated.getStatus().getLastUpdateTimestamp());
+		assertEquals(2, loads.get("ATM1"));
+	}
+
+	@Test
+	void loadOlderThanTheIndexIsServedButNotCached() {
+		// Applied elsewhere and indexed, but not flushed to Postgres yet
+		stored.put("ATM1", state("ATM1", T0));
+
+		assertEquals(T0, cache.get("ATM1", versions(T0.plusSeconds(1)), loader).orElseThrow()
+				.getStatus().getLastUpdateTimestamp());
+		cache.get("ATM1", versions(T0.plusSeconds(1)), loader);
+		assertEquals(2, loads.get("ATM1"));
+
+		stored.put("ATM1", state("ATM1", T0.plusSeconds(1)));
+		cache.get("ATM1", versions(T0.plusSeconds(1)), loader);
+		cache.get("ATM1", versions(T0.plusSeconds(1)), loader);
+		assertEquals(3, loads.get("ATM1"));
+	}
+
+	@Test
+	void unknownAtmIsCachedUntilItGetsState() {
+		assertTrue(cache.get("ATM1", FleetStateIndex.Versions.NONE, loader).isEmpty());
+		assertTrue(cache.get("ATM1", FleetStateIndex.Versions.NONE, loader).isEmpty());
+		assertEquals(1, loads.get("ATM1"));
+
+		stored.put("ATM1", state("ATM1", T0));
+		assertTrue(cache.get("ATM1", versions(T0), loader).isPresent());
+		assertEquals(2, loads.get("ATM1"));
+	}
+
+	@Test
+	void invalidatedOnChangeAndBoundedBySizeAndAge() {
+		stored.put("ATM1", state("ATM1", T0));
+		stored.put("ATM2", state("ATM2", T0));
+
+		cache.get("ATM1", versions(T0), loader);
+		cache.onStateChanged(new AtmStateChangedEvent("ATM1", AtmStateChangedEvent.Kind.STATUS));
+		cache.get("ATM1", versions(T0), loader);
+		assertEquals(2, loads.get("ATM1"));
+		assertEquals(1, meterRegistry.counter("atm.state.cache.evictions", "cause", "invalidated").count());
+
+		cache = new AtmFullStateCache(meterRegistry, 1, 60_000);
+		cache.get("ATM1", versions(T0), loader);
+		cache.get("ATM2", versions(T0), loader);
+		cache.get("ATM1", versions(T0), loader);
+		assertEquals(4, loads.get("ATM1"));
+
+		cache = new AtmFullStateCache(meterRegistry, 100, 0);
+		cache.get("ATM2", versions(T0), loader);
+		cache.get("ATM2", versions(T0), loader);
+		assertEquals(3, loads.get("ATM2"));
+	}
+
+	private static FleetStateIndex.Versions versions(OffsetDateTime statusTimestamp) {
+		return new FleetStateIndex.Versions(FleetStateIndex.versionOf(statusTimestamp), FleetStateIndex.NONE, FleetStateIndex.NONE);
+	}
+
+	private static AtmFullStateDto state(String atmId, OffsetDateTime statusTimestamp) {
+		AtmStatusDto status = new AtmStatusDto(atmId, "IN_SERVICE", false, null, null, statusTimestamp);
+		return new AtmFullStateDto(atmId, status, null, null);
+	}
+
+}
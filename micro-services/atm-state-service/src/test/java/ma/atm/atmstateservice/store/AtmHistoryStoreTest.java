@@ -0,0 +1,135 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmstateservice.dto.AtmHistoryDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AtmHistoryStoreTest {
+
+	private static final Instant T0 = Instant.parse("2025-01-01T12:00:00Z");
+
+	private JdbcTemplate jdbcTemplate;
+	private HistoryPartitionManager partitionManager;
+	private SimpleMeterRegistry meterRegistry;
+	private AtmHistoryStore store;
+
+	// Sizes of the status batches written, in order, and the calls that fail
+	private final List<Integer> statusBatches = new ArrayList<>();
+	private final Set<Integer> failingCalls = new HashSet<>();
+
+	@BeforeEach
+	void setUp() {
+		jdbcTemplate = mock(JdbcTemplate.class);
+		partitionManager = mock(HistoryPartitionManager.class);
+		when(partitionManager.isWithinRetention(anyLong())).thenReturn(true);
+		meterRegistry = new SimpleMeterRegistry();
+		store = newStore(100);
+		// Sizes are taken on the call, since the store reuses its batch list
+		doAnswer(invocation -> {
+			statusBatches.add(invocation.<Collection<?>>getArgument(1).size());
+			if (failingCalls.contains(statusBatches.size() - 1)) {
+				throw new DataIntegrityViolationException("no partition for row");
+			}
+			return null;
+		}).when(jdbcTemplate).batchUpdate(contains("INSERT INTO atm_status_history"), any(Collection.class), anyInt(),
+				any(ParameterizedPreparedStatementSetter.class));
+	}
+
+	@Test
+	void writesQueuedSamplesInBatches() {
+		ReflectionTestUtils.setField(store, "flushBatchSize", 2);
+		store.appendStatus("ATM1", T0, "IN_SERVICE", false);
+		store.appendStatus("ATM1", T0.plusSeconds(30), "OUT_OF_SERVICE", false);
+		store.appendStatus("ATM2", T0, "IN_SERVICE", true);
+		assertTrue(statusBatches.isEmpty());
+
+		store.flush();
+
+		assertEquals(List.of(2, 1), statusBatches);
+		assertEquals(3, meterRegistry.counter("atm.state.history.written", "kind", "status").count());
+
+		// Drained
+		store.flush();
+		assertEquals(2, statusBatches.size());
+	}
+
+	@Test
+	void dropsSamplesOutsideThePartitionsOrBeyondTheQueue() {
+		when(partitionManager.isWithinRetention(anyLong())).thenReturn(false);
+		store.appendCounter("ATM1", T0, 1000.0, 10, false);
+		assertEquals(1, meterRegistry.counter("atm.state.history.dropped", "kind", "counter", "reason", "out_of_range").count());
+
+		when(partitionManager.isWithinRetention(anyLong())).thenReturn(true);
+		store = newStore(1);
+		store.appendCounter("ATM1", T0, 1000.0, 10, false);
+		store.appendCounter("ATM1", T0.plusSeconds(30), 900.0, 10, false);
+		assertEquals(1, meterRegistry.counter("atm.state.history.dropped", "kind", "counter", "reason", "queue_full").count());
+	}
+
+	@Test
+	void failedBatchIsRetriedRowByRow() {
+		store.appendStatus("ATM1", T0, "IN_SERVICE", false);
+		store.appendStatus("ATM2", T0, "IN_SERVICE", false);
+		store.appendStatus("ATM3", T0, "IN_SERVICE", false);
+		// The batch, then the second row on its own
+		failingCalls.addAll(Set.of(0, 2));
+
+		store.flush();
+
+		assertEquals(List.of(3, 1, 1, 1), statusBatches);
+		verify(partitionManager).maintainPartitions();
+		assertEquals(2, meterRegistry.counter("atm.state.history.written", "kind", "status").count());
+		assertEquals(1, meterRegistry.counter("atm.state.history.dropped", "kind", "status", "reason", "write_failed").count());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void bucketsHistoryInTheDatabase() {
+		doReturn(List.of()).when(jdbcTemplate).query(any(String.class), any(RowMapper.class), any(Object[].class));
+
+		AtmHistoryDto history = store.getHistory("ATM1", T0, T0.plus(Duration.ofHours(6)), Duration.ofMinutes(5));
+
+		verify(jdbcTemplate).query(contains("FROM atm_status_history"), any(RowMapper.class),
+				eq("300 seconds"), eq("ATM1"), eq(Timestamp.from(T0)), eq(Timestamp.from(T0.plus(Duration.ofHours(6)))));
+		verify(jdbcTemplate).query(contains("FROM atm_counter_history"), any(RowMapper.class),
+				eq("300 seconds"), eq("ATM1"), eq(Timestamp.from(T0)), eq(Timestamp.from(T0.plus(Duration.ofHours(6)))));
+		assertEquals(300, history.getResolutionSeconds());
+	}
+
+	private AtmHistoryStore newStore(int queueCapacity) {
+		AtmHistoryStore historyStore = new AtmHistoryStore(jdbcTemplate, mock(PlatformTransactionManager.class),
+				partitionManager, meterRegistry, queueCapacity);
+		ReflectionTestUtils.setField(historyStore, "flushBatchSize", 1000);
+		return historyStore;
+	}
+
+}
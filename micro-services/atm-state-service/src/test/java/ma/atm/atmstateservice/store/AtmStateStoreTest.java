@@ -0,0 +1,175 @@
+package ma.atm.atmstateservice.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmstateservice.event.AtmStateChangedEvent;
+import ma.atm.atmstateservice.model.AtmStatus;
+import ma.atm.atmstateservice.repository.AtmConfigurationRepository;
+import ma.atm.atmstateservice.repository.AtmCounterRepository;
+import ma.atm.atmstateservice.repository.AtmStatusRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.verification.VerificationMode;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AtmStateStoreTest {
+
+	private static final OffsetDateTime T0 = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+	private AtmStatusRepository statusRepository;
+	private JdbcTemplate jdbcTemplate;
+	private ApplicationEventPublisher eventPublisher;
+	private SimpleMeterRegistry meterRegistry;
+	private AtmStateStore store;
+
+	@BeforeEach
+	void setUp() {
+		statusRepository = mock(AtmStatusRepository.class);
+		jdbcTemplate = mock(JdbcTemplate.class);
+		eventPublisher = mock(ApplicationEventPublisher.class);
+		meterRegistry = new SimpleMeterRegistry();
+		store = new AtmStateStore(statusRepository, mock(AtmConfigurationRepository.class), mock(AtmCounterRepository.class),
+				jdbcTemplate, mock(PlatformTransactionManager.class), new ObjectMapper(), meterRegistry, eventPublisher);
+		ReflectionTestUtils.setField(store, "flushBatchSize", 500);
+		ReflectionTestUtils.setField(store, "idleTtlMillis", 60_000L);
+	}
+
+	@Test
+	void holdsUpdatedStateUntilFlushedOnShutdown() {
+		assertTrue(store.updateStatus("ATM1", status -> setState(status, "IN_SERVICE", T0)));
+
+		assertEquals("IN_SERVICE", store.getStatus("ATM1").orElseThrow().getOperationalState());
+		assertTrue(store.getHeldAtmIds().contains("ATM1"));
+		verify(statusRepository, times(1)).findById("ATM1");
+		verify(eventPublisher).publishEvent(new AtmStateChangedEvent("ATM1", AtmStateChangedEvent.Kind.STATUS));
+		verifyStatusWrites(never());
+
+		store.flushOnShutdown();
+
+		List<AtmStatus> written = verifyStatusWrites(times(1));
+		assertEquals(1, written.size());
+		assertEquals("ATM1", written.get(0).getAtmId());
+		assertEquals(T0, written.get(0).getLastUpdateTimestamp());
+
+		// Nothing left to write
+		store.flush();
+		verifyStatusWrites(times(1));
+	}
+
+	@Test
+	void unchangedStateIsNotWritten() {
+		store.updateStatus("ATM1", status -> setState(status, "IN_SERVICE", T0));
+		store.flush();
+
+		assertFalse(store.updateStatus("ATM1", status -> false));
+		verify(eventPublisher, times(1)).publishEvent(new AtmStateChangedEvent("ATM1", AtmStateChangedEvent.Kind.STATUS));
+		store.flush();
+		verifyStatusWrites(times(1));
+	}
+
+	@Test
+	void failedFlushKeepsStateDirty() {
+		doThrow(new DataAccessResourceFailureException("connection refused"))
+				.doReturn(null)
+				.when(jdbcTemplate).batchUpdate(contains("INSERT INTO atm_status"), any(Collection.class), anyInt(),
+						any(ParameterizedPreparedStatementSetter.class));
+		store.updateStatus("ATM1", status -> setState(status, "IN_SERVICE", T0));
+
+		store.flushOnShutdown();
+		store.flush();
+
+		verifyStatusWrites(times(2));
+		store.flush();
+		verifyStatusWrites(times(2));
+	}
+
+	@Test
+	void reloadsFromDatabaseAfterIdleEviction() {
+		store.updateStatus("ATM1", status -> setState(status, "IN_SERVICE", T0));
+		ReflectionTestUtils.setField(store, "idleTtlMillis", 0L);
+
+		// Not flushed yet, so it must stay
+		store.evictIdle();
+		assertTrue(store.getHeldAtmIds().contains("ATM1"));
+
+		store.flush();
+		store.evictIdle();
+		assertTrue(store.getHeldAtmIds().isEmpty());
+
+		AtmStatus stored = new AtmStatus("ATM1", "OFFLINE", false, null, null, T0.plusMinutes(5));
+		when(statusRepository.findById("ATM1")).thenReturn(Optional.of(stored));
+		assertSame(stored, store.getStatus("ATM1").orElseThrow());
+
+		// The next update starts from what another instance wrote
+		store.updateStatus("ATM1", status -> {
+			assertEquals("OFFLINE", status.getOperationalState());
+			return setState(status, "IN_SERVICE", T0.plusMinutes(6));
+		});
+		assertEquals("IN_SERVICE", store.getStatus("ATM1").orElseThrow().getOperationalState());
+	}
+
+	@Test
+	void dropsStateSupersededInDatabase() throws Exception {
+		ResultSet row = mock(ResultSet.class);
+		when(row.getString(1)).thenReturn("ATM1");
+		when(row.getObject(2, OffsetDateTime.class)).thenReturn(T0.plusMinutes(1));
+		doAnswer(invocation -> {
+			invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+			return null;
+		}).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+		store.updateStatus("ATM1", status -> setState(status, "IN_SERVICE", T0));
+		store.flush();
+
+		verifyStatusWrites(never());
+		assertFalse(store.getHeldAtmIds().contains("ATM1"));
+		assertEquals(1, meterRegistry.counter("atm.state.store.superseded", "kind", "status").count());
+		// Once for the update, once so that subscribers refetch the newer state
+		verify(eventPublisher, times(2)).publishEvent(new AtmStateChangedEvent("ATM1", AtmStateChangedEvent.Kind.STATUS));
+	}
+
+	private static boolean setState(AtmStatus status, String operationalState, OffsetDateTime timestamp) {
+		status.setOperationalState(operationalState);
+		status.setLastUpdateTimestamp(timestamp);
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<AtmStatus> verifyStatusWrites(VerificationMode mode) {
+		ArgumentCaptor<Collection<AtmStatus>> rows = ArgumentCaptor.forClass(Collection.class);
+		verify(jdbcTemplate, mode).batchUpdate(contains("INSERT INTO atm_status"), rows.capture(), anyInt(),
+				any(ParameterizedPreparedStatementSetter.class));
+		return rows.getAllValues().isEmpty() ? List.of() : List.copyOf(rows.getValue());
+	}
+
+}
@@ -0,0 +1,147 @@
+package ma.atm.atmstateservice.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.atmstateservice.dto.CashForecastDto;
+import ma.atm.atmstateservice.dto.CassetteForecastDto;
+import ma.atm.atmstateservice.event.AtmCountersUpdatedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CashForecastStoreTest {
+
+	private static final long T0 = 1_700_000_000_000L;
+	private static final long HOUR = 3_600_000L;
+
+	private CashForecastStore store;
+
+	@BeforeEach
+	void setUp() {
+		store = new CashForecastStore(new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(store, "rateTimeConstantHours", 6.0);
+	}
+
+	@Test
+	void projectsEmptyTimeFromDepletionRate() {
+		store.record("ATM1", T0, List.of(cassette("C1", 1000, null)));
+		store.record("ATM1", T0 + HOUR, List.of(cassette("C1", 900, null)));
+
+		CashForecastDto forecast = store.getForecast("ATM1").orElseThrow();
+		CassetteForecastDto cassette = forecast.getCassettes().get(0);
+		assertEquals(100, cassette.getDepletionRatePerHour(), 1e-9);
+		assertEquals(at(T0 + 10 * HOUR), forecast.getProjectedEmptyAt());
+		assertEquals("C1", forecast.getLimitingCassetteId());
+		assertEquals(2, cassette.getHistory().size());
+	}
+
+	@Test
+	void smoothsLaterSamples() {
+		store.record("ATM1", T0, List.of(cassette("C1", 1000, null)));
+		store.record("ATM1", T0 + HOUR, List.of(cassette("C1", 900, null)));
+		store.record("ATM1", T0 + 2 * HOUR, List.of(cassette("C1", 700, null)));
+
+		double alpha = 1 - Math.exp(-1 / 6.0);
+		double expected = 100 + alpha * (200 - 100);
+		assertEquals(expected, store.getForecast("ATM1").orElseThrow().getCassettes().get(0).getDepletionRatePerHour(), 1e-9);
+	}
+
+	@Test
+	void refillResetsBaselineAndKeepsRate() {
+		store.record("ATM1", T0, List.of(cassette("C1", 1000, 0)));
+		store.record("ATM1", T0 + HOUR, List.of(cassette("C1", 900, 100)));
+		store.record("ATM1", T0 + 2 * HOUR, List.of(cassette("C1", 2000, 0)));
+
+		CashForecastDto forecast = store.getForecast("ATM1").orElseThrow();
+		assertEquals(100, forecast.getCassettes().get(0).getDepletionRatePerHour(), 1e-9);
+		assertEquals(at(T0 + 22 * HOUR), forecast.getProjectedEmptyAt());
+	}
+
+	@Test
+	void ignoresOutOfOrderSamples() {
+		store.record("ATM1", T0, List.of(cassette("C1", 1000, null)));
+		store.record("ATM1", T0 + HOUR, List.of(cassette("C1", 900, null)));
+		store.record("ATM1", T0 + HOUR / 2, List.of(cassette("C1", 100, null)));
+
+		CassetteForecastDto cassette = store.getForecast("ATM1").orElseThrow().getCassettes().get(0);
+		assertEquals(900, cassette.getNotesRemaining());
+		assertEquals(100, cassette.getDepletionRatePerHour(), 1e-9);
+	}
+
+	@Test
+	void ranksDepletingAtmsSoonestFirst() {
+		store.record("SLOW", T0, List.of(cassette("C1", 1000, null)));
+		store.record("SLOW", T0 + HOUR, List.of(cassette("C1", 990, null)));
+		store.record("FAST", T0, List.of(cassette("C1", 1000, null), cassette("C2", 500, null)));
+		store.record("FAST", T0 + HOUR, List.of(cassette("C1", 900, null), cassette("C2", 300, null)));
+		store.record("IDLE", T0, List.of(cassette("C1", 1000, null)));
+		store.record("IDLE", T0 + HOUR, List.of(cassette("C1", 1000, null)));
+
+		List<CashForecastDto> ranking = store.getSoonestEmpty(10);
+		assertEquals(List.of("FAST", "SLOW"), ranking.stream().map(CashForecastDto::getAtmId).toList());
+		assertEquals("C2", ranking.get(0).getLimitingCassetteId());
+		assertNull(ranking.get(0).getCassettes().get(0).getHistory());
+		assertEquals(1, store.getSoonestEmpty(1).size());
+
+		CashForecastDto idle = store.getForecast("IDLE").orElseThrow();
+		assertNull(idle.getProjectedEmptyAt());
+		assertNull(idle.getHoursToEmpty());
+	}
+
+	@Test
+	void forgetsCassettesMissingFromSnapshot() {
+		store.record("ATM1", T0, List.of(cassette("C1", 1000, null), cassette("C2", 100, null)));
+		store.record("ATM1", T0 + HOUR, List.of(cassette("C1", 900, null), cassette("C2", 50, null)));
+		store.record("ATM1", T0 + 2 * HOUR, List.of(cassette("C1", 800, null)));
+
+		CashForecastDto forecast = store.getForecast("ATM1").orElseThrow();
+		assertEquals(List.of("C1"), forecast.getCassettes().stream().map(CassetteForecastDto::getCassetteId).toList());
+
+		store.record("ATM1", T0 + 3 * HOUR, List.of());
+		assertTrue(store.getSoonestEmpty(10).isEmpty());
+	}
+
+	@Test
+	void dropsRemovedAndStaleAtms() {
+		store.record("GONE", T0, List.of(cassette("C1", 1000, null)));
+		store.record("GONE", T0 + HOUR, List.of(cassette("C1", 900, null)));
+		store.record("QUIET", T0, List.of(cassette("C1", 1000, null)));
+		store.record("QUIET", T0 + HOUR, List.of(cassette("C1", 800, null)));
+
+		store.remove("GONE");
+		assertTrue(store.getForecast("GONE").isEmpty());
+		assertEquals(List.of("QUIET"), store.getSoonestEmpty(10).stream().map(CashForecastDto::getAtmId).toList());
+
+		// Still within the staleness limit
+		ReflectionTestUtils.setField(store, "staleAfterMillis", 60_000L);
+		store.evictStale();
+		assertTrue(store.getForecast("QUIET").isPresent());
+
+		ReflectionTestUtils.setField(store, "staleAfterMillis", -1L);
+		store.evictStale();
+		assertTrue(store.getForecast("QUIET").isEmpty());
+		assertTrue(store.getSoonestEmpty(10).isEmpty());
+	}
+
+	private static AtmCountersUpdatedEvent.Cassette cassette(String cassetteId, int notesRemaining, Integer dispensedSinceRefill) {
+		AtmCountersUpdatedEvent.Cassette cassette = new AtmCountersUpdatedEvent.Cassette();
+		cassette.setCassetteId(cassetteId);
+		cassette.setDenomination(200);
+		cassette.setNotesRemaining(notesRemaining);
+		cassette.setDispensedSinceRefill(dispensedSinceRefill);
+		return cassette;
+	}
+
+	private static OffsetDateTime at(long epochMillis) {
+		return Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC);
+	}
+
+}
@@ -0,0 +1,93 @@
+package ma.atm.atmstateservice.store;
+
+import ma.atm.atmstateservice.dto.TransactionStatsDto;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionWindowsTest {
+
+	// Half past an arbitrary minute
+	private static final long NOW = 28_333_333L * 60_000 + 30_000;
+
+	@Test
+	void countsOnlyTransactionsInsideTheWindow() {
+		TransactionWindows windows = new TransactionWindows();
+		windows.record(NOW - 10 * 60_000, NOW, false, 100, 100, 120);
+		windows.record(NOW - 30_000, NOW, true, 200, 0, 800);
+		windows.record(NOW, NOW, false, 300, 300, 150);
+
+		TransactionStatsDto lastMinute = windows.stats("ATM1", TransactionWindow.ONE_MINUTE, NOW);
+		assertEquals("1m", lastMinute.getWindow());
+		assertEquals(2, lastMinute.getTransactionCount());
+		assertEquals(1, lastMinute.getFailureCount());
+		assertEquals(0.5, lastMinute.getFailureRate());
+		assertEquals(500, lastMinute.getTransactionAmount());
+		assertEquals(300, lastMinute.getDispensedAmount());
+
+		TransactionStatsDto lastQuarter = windows.stats("ATM1", TransactionWindow.FIFTEEN_MINUTES, NOW);
+		assertEquals(3, lastQuarter.getTransactionCount());
+		assertEquals(400, lastQuarter.getDispensedAmount());
+
+		TransactionStatsDto later = windows.stats("ATM1", TransactionWindow.ONE_HOUR, NOW + 2 * 3_600_000);
+		assertEquals(0, later.getTransactionCount());
+		assertNull(later.getFailureRate());
+		assertNull(later.getResponseTimeP50());
+		assertEquals(3, windows.stats("ATM1", TransactionWindow.ONE_DAY, NOW + 2 * 3_600_000).getTransactionCount());
+	}
+
+	@Test
+	void percentilesFallInTheBucketOfTheRank() {
+		TransactionWindows windows = new TransactionWindows();
+		for (int i = 0; i < 19; i++) {
+			windows.record(NOW, NOW, false, 0, 0, 100);
+		}
+		windows.record(NOW, NOW, false, 0, 0, 5000);
+		windows.record(NOW, NOW, false, 0, 0, Double.NaN);
+
+		TransactionStatsDto stats = windows.stats("ATM1", TransactionWindow.ONE_MINUTE, NOW);
+		assertEquals(21, stats.getTransactionCount());
+		// Buckets grow by 20%, so the midpoint is within 10% of the recorded value
+		assertEquals(100, stats.getResponseTimeP50(), 10);
+		assertEquals(100, stats.getResponseTimeP95(), 10);
+		assertTrue(TransactionWindows.latencyBucket(5000) > TransactionWindows.latencyBucket(100));
+		assertEquals(TransactionWindows.LATENCY_BUCKETS - 1, TransactionWindows.latencyBucket(Double.MAX_VALUE));
+		assertEquals(0, TransactionWindows.latencyBucket(0));
+	}
+
+	@Test
+	void futureTimestampDoesNotEvictCurrentBuckets() {
+		TransactionWindows windows = new TransactionWindows();
+		windows.record(NOW + 24 * 3_600_000, NOW, false, 100, 100, 100);
+		windows.record(NOW, NOW, false, 100, 100, 100);
+
+		assertEquals(NOW + TransactionWindows.MAX_CLOCK_SKEW_MILLIS, windows.getLastEventMillis());
+		assertEquals(1, windows.stats("ATM1", TransactionWindow.ONE_MINUTE, NOW).getTransactionCount());
+		assertEquals(2, windows.stats("ATM1", TransactionWindow.FIFTEEN_MINUTES, NOW + 2 * 60_000).getTransactionCount());
+	}
+
+	@Test
+	void snapshotRoundTrip() throws IOException {
+		TransactionWindows windows = new TransactionWindows();
+		windows.record(NOW - 2 * 3_600_000, NOW, true, 50, 0, 300);
+		windows.record(NOW, NOW, false, 100, 100, 100);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		windows.writeTo(new DataOutputStream(bytes));
+		TransactionWindows restored = TransactionWindows.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(windows.getLastEventMillis(), restored.getLastEventMillis());
+		for (TransactionWindow window : TransactionWindow.values()) {
+			assertEquals(windows.stats("ATM1", window, NOW), restored.stats("ATM1", window, NOW));
+		}
+	}
+
+}
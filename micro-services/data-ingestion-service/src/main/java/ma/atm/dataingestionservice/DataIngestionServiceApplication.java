@@ -3,9 +3,11 @@ package ma.atm.dataingestionservice;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.pulsar.annotation.EnablePulsar;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnablePulsar
+@EnableScheduling
 public class DataIngestionServiceApplication {
 
 	public static void main(String[] args) {
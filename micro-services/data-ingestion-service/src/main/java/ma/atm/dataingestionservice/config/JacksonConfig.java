@@ -27,9 +27,6 @@ public class JacksonConfig {
         // Allow missing properties
         mapper.configure(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES, false);
 
-        // Pretty print JSON (optional, for debugging)
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-
         return mapper;
     }
 }
\ No newline at end of file
@@ -1,11 +1,26 @@
 package ma.atm.dataingestionservice.config;
 
 
+import ma.atm.dataingestionservice.model.CounterMessage;
+import ma.atm.dataingestionservice.model.StatusMessage;
+import ma.atm.dataingestionservice.model.TransactionMessage;
+import org.apache.pulsar.client.admin.PulsarAdmin;
+import org.apache.pulsar.client.api.BatchReceivePolicy;
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.DeadLetterPolicy;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.schema.SchemaDefinition;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.pulsar.core.DefaultSchemaResolver;
+import org.springframework.pulsar.core.ProducerBuilderCustomizer;
+import org.springframework.pulsar.core.SchemaResolver;
+import org.springframework.pulsar.annotation.PulsarListenerConsumerBuilderCustomizer;
+
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class PulsarConfig {
@@ -13,10 +28,113 @@ public class PulsarConfig {
     @Value("${spring.pulsar.client.service-url}")
     private String serviceUrl;
 
+    @Value("${spring.pulsar.consumer.dead-letter-policy-max-redeliver-count:3}")
+    private int maxRedeliverCount;
+
+    @Value("${pulsar.consumer.dead-letter-topic}")
+    private String deadLetterTopic;
+
+    @Value("${pulsar.consumer.dead-letter-subscription-name}")
+    private String deadLetterSubscriptionName;
+
+    @Value("${spring.pulsar.admin.service-url}")
+    private String adminServiceUrl;
+
+    @Value("${pulsar.consumer.retry-letter-topic}")
+    private String retryLetterTopic;
+
+    @Value("${pulsar.consumer.batch.max-messages:500}")
+    private int batchMaxMessages;
+
+    @Value("${pulsar.consumer.batch.max-wait-ms:100}")
+    private int batchMaxWaitMs;
+
+    @Value("${pulsar.producer.batching.max-publish-delay-ms:5}")
+    private long producerBatchMaxDelayMs;
+
+    @Value("${pulsar.producer.batching.max-messages:1000}")
+    private int producerBatchMaxMessages;
+
+    @Value("${pulsar.producer.max-in-flight:1000}")
+    private int producerMaxInFlight;
+
     @Bean
     public PulsarClient pulsarClient() throws PulsarClientException {
         return PulsarClient.builder()
                 .serviceUrl(serviceUrl)
                 .build();
     }
-}
\ No newline at end of file
+
+    // Reads the dead-letter subscription backlog for the parked message endpoints
+    @Bean
+    public PulsarAdmin pulsarAdmin() throws PulsarClientException {
+        return PulsarAdmin.builder()
+                .serviceHttpUrl(adminServiceUrl)
+                .build();
+    }
+
+    @Bean
+    public PulsarListenerConsumerBuilderCustomizer<String> rawMessageRetryCustomizer() {
+        return builder -> builder
+                .enableRetry(true)
+                .deadLetterPolicy(rawMessageDeadLetterPolicy());
+    }
+
+    // Bounds the batches handed to RawMessageBatchConsumer: whichever limit is hit first closes the batch
+    @Bean
+    public PulsarListenerConsumerBuilderCustomizer<String> rawMessageBatchReceiveCustomizer() {
+        return builder -> builder
+                .enableRetry(true)
+                .deadLetterPolicy(rawMessageDeadLetterPolicy())
+                .batchReceivePolicy(BatchReceivePolicy.builder()
+                        .maxNumMessages(batchMaxMessages)
+                        .timeout(batchMaxWaitMs, TimeUnit.MILLISECONDS)
+                        .build());
+    }
+
+    // Failed raw messages are retried through the retry-letter topic, then dead-lettered.
+    // The dead-letter topic is created with its subscription, so no dead letter is ever unretained.
+    private DeadLetterPolicy rawMessageDeadLetterPolicy() {
+        return DeadLetterPolicy.builder()
+                .maxRedeliverCount(maxRedeliverCount)
+                .retryLetterTopic(retryLetterTopic)
+                .deadLetterTopic(deadLetterTopic)
+                .initialSubscriptionName(deadLetterSubscriptionName)
+                .build();
+    }
+
+    // Key_Shared consumers require batches to hold a single key, otherwise a whole batch
+    // would be routed to the consumer owning the first key in it.
+    // The pending queue matches the publisher's in-flight window so sendAsync never fails on a full queue.
+    @Bean
+    public ProducerBuilderCustomizer<Object> producerBatchingCustomizer() {
+        return builder -> builder
+                .enableBatching(true)
+                .batcherBuilder(BatcherBuilder.KEY_BASED)
+                .batchingMaxPublishDelay(producerBatchMaxDelayMs, TimeUnit.MILLISECONDS)
+                .batchingMaxMessages(producerBatchMaxMessages)
+                .maxPendingMessages(producerMaxInFlight)
+                .blockIfQueueFull(true);
+    }
+
+    // Status, counter and transaction events go out as Avro; the schema is registered on the topic
+    // so consumers can decode every version. Configuration events keep JSON: their peripherals are
+    // a free-form map that has no fixed Avro shape.
+    @Bean
+    public SchemaResolver.SchemaResolverCustomizer<DefaultSchemaResolver> internalEventSchemaCustomizer() {
+        return resolver -> {
+            resolver.addCustomSchemaMapping(StatusMessage.class, avroSchema(StatusMessage.class));
+            resolver.addCustomSchemaMapping(CounterMessage.class, avroSchema(CounterMessage.class));
+            resolver.addCustomSchemaMapping(TransactionMessage.class, avroSchema(TransactionMessage.class));
+        };
+    }
+
+    // Every field is nullable so adding or dropping optional fields stays compatible
+    private static <T> Schema<T> avroSchema(Class<T> type) {
+        return Schema.AVRO(SchemaDefinition.<T>builder()
+                .withPojo(type)
+                .withAlwaysAllowNull(true)
+                .withJSR310ConversionEnabled(true)
+                .build());
+    }
+}
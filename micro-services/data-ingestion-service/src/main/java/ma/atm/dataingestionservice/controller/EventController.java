@@ -1,26 +1,49 @@
 package ma.atm.dataingestionservice.controller;
 
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import ma.atm.dataingestionservice.exception.MessageProcessingException;
+import ma.atm.dataingestionservice.model.ParkedMessage;
+import ma.atm.dataingestionservice.model.ReplayReport;
+import ma.atm.dataingestionservice.service.BulkIngestionService;
 import ma.atm.dataingestionservice.service.MessageDispatcherService;
+import ma.atm.dataingestionservice.service.ParkedMessageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 @Controller
 @RequestMapping("/events")
 @Slf4j
 public class EventController {
 
+    private static final int MAX_PARKED_LIMIT = 1000;
+    private static final int MAX_REPLAY_LIMIT = 10000;
+
     @Autowired
     private MessageDispatcherService messageDispatcherService;
 
+    @Autowired
+    private ParkedMessageService parkedMessageService;
+
+    @Autowired
+    private BulkIngestionService bulkIngestionService;
+
     @PostMapping("/dispatch")
     @ResponseStatus(HttpStatus.ACCEPTED)
     public ResponseEntity<String> dispatchEvent(@RequestBody String event) throws MessageProcessingException {
@@ -33,4 +56,39 @@ public class EventController {
         return ResponseEntity.ok("Event dispatched successfully");
     }
 
+    // NDJSON bulk upload, one raw message per line, optionally gzip-compressed.
+    // Per-line results are streamed back as NDJSON while the body is still being read.
+    @PostMapping(value = "/bulk", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> dispatchBulk(HttpServletRequest request,
+                                                              @RequestParam(defaultValue = "false") boolean failuresOnly) throws IOException {
+        InputStream body = isGzip(request)
+                ? new GZIPInputStream(request.getInputStream())
+                : request.getInputStream();
+        StreamingResponseBody results = out -> bulkIngestionService.ingest(body, out, failuresOnly);
+        return ResponseEntity.ok(results);
+    }
+
+    private boolean isGzip(HttpServletRequest request) {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        return (encoding != null && encoding.toLowerCase().contains("gzip"))
+                || "application/gzip".equalsIgnoreCase(request.getContentType());
+    }
+
+    // Dead letters shared by every instance, after any message this instance could not dead-letter yet
+    @GetMapping("/parked")
+    public ResponseEntity<List<ParkedMessage>> getParkedMessages(@RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(parkedMessageService.getParkedMessages(Math.min(limit, MAX_PARKED_LIMIT)));
+    }
+
+    @PostMapping("/parked/replay")
+    public ResponseEntity<ReplayReport> replayParkedMessages(@RequestParam(defaultValue = "1000") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(parkedMessageService.replay(Math.min(limit, MAX_REPLAY_LIMIT)));
+    }
+
 }
@@ -0,0 +1,17 @@
+package ma.atm.dataingestionservice.exception;
+
+/**
+ * Raised for messages that can never be processed, whatever the number of retries
+ * (unparseable JSON, unknown message type, missing mandatory fields).
+ * Such messages are sent straight to the dead-letter topic instead of being redelivered.
+ */
+public class PoisonMessageException extends MessageProcessingException {
+
+    public PoisonMessageException(String message) {
+        super(message);
+    }
+
+    public PoisonMessageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,28 @@
+package ma.atm.dataingestionservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Announces that an ATM is sending messages. Sent on the discovery topic when this instance first sees an ATM,
+ * then at most once per heartbeat interval, so services that only need to know which ATMs exist stay off
+ * the high-volume topics.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AtmSeenMessage {
+
+    private String atmId;
+
+    // First time this ingestion instance saw the ATM since it started
+    private boolean firstSeen;
+
+    // Type of the message that triggered the announcement
+    private String messageType;
+
+    private Instant seenAt;
+}
@@ -0,0 +1,32 @@
+package ma.atm.dataingestionservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of dispatching a single raw payload as part of a batch.
+ * The index refers to the position of the payload in the submitted batch.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DispatchResult {
+
+    private int index;
+
+    private boolean success;
+
+    // Only meaningful for failures: false means the payload is poison and must not be redelivered
+    private boolean retryable;
+
+    private String error;
+
+    public static DispatchResult success(int index) {
+        return new DispatchResult(index, true, false, null);
+    }
+
+    public static DispatchResult failure(int index, String error, boolean retryable) {
+        return new DispatchResult(index, false, retryable, error);
+    }
+}
@@ -0,0 +1,31 @@
+package ma.atm.dataingestionservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A raw ATM message that could not be processed and is waiting for an operator replay.
+ * The id is the Pulsar message id for dead letters, and a local UUID for messages parked locally.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ParkedMessage {
+
+    private String id;
+
+    private String payload;
+
+    // Message key, the atmId when the original message had one
+    private String key;
+
+    private String reason;
+
+    // Where the message was parked from, e.g. "dead-letter-topic" or "publish-fallback"
+    private String source;
+
+    private Instant parkedAt;
+}
@@ -0,0 +1,23 @@
+package ma.atm.dataingestionservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Summary of a bulk replay of parked messages.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayReport {
+
+    private int replayed;
+
+    private int succeeded;
+
+    // Messages that failed again and were parked back
+    private int reparked;
+
+    private int remaining;
+}
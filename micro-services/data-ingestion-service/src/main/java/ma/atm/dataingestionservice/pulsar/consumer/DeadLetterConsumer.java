@@ -0,0 +1,160 @@
+package ma.atm.dataingestionservice.pulsar.consumer;
+
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.model.ParkedMessage;
+import ma.atm.dataingestionservice.model.ReplayReport;
+import ma.atm.dataingestionservice.pulsar.producer.DeadLetterPublisher;
+import org.apache.pulsar.client.admin.PulsarAdmin;
+import org.apache.pulsar.client.admin.PulsarAdminException;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionInitialPosition;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.policies.data.SubscriptionStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the raw dead-letter topic through its durable subscription, which is where parked messages live:
+ * they stay in the subscription backlog, shared by every instance and kept across restarts, until a replay
+ * processes them. A message is only acknowledged once it was replayed successfully, or once its new failure
+ * was written back to the topic.
+ */
+@Service
+@Slf4j
+public class DeadLetterConsumer {
+
+    public static final String SOURCE = "dead-letter-topic";
+
+    @FunctionalInterface
+    public interface Replayer {
+        /**
+         * @return null when the message was processed, otherwise why it failed again
+         */
+        String replay(ParkedMessage message);
+    }
+
+    @Autowired
+    private PulsarClient pulsarClient;
+
+    @Autowired
+    private PulsarAdmin pulsarAdmin;
+
+    @Autowired
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @Value("${pulsar.consumer.dead-letter-topic}")
+    private String deadLetterTopic;
+
+    @Value("${pulsar.consumer.dead-letter-subscription-name}")
+    private String subscriptionName;
+
+    @Value("${pulsar.consumer.parked.receive-timeout-ms:1000}")
+    private int receiveTimeoutMs;
+
+    // Without the subscription, dead letters would not be retained
+    @PostConstruct
+    public void createSubscription() {
+        try (Consumer<String> ignored = subscribe(1)) {
+            log.info("Dead-letter subscription {} on {} is ready", subscriptionName, deadLetterTopic);
+        } catch (PulsarClientException e) {
+            log.warn("Could not create dead-letter subscription {} on {} yet: {}", subscriptionName, deadLetterTopic, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} dead letters, oldest first, without consuming them.
+     */
+    public List<ParkedMessage> peek(int limit) throws PulsarAdminException {
+        List<ParkedMessage> result = new ArrayList<>();
+        for (Message<byte[]> message : pulsarAdmin.topics().peekMessages(deadLetterTopic, subscriptionName, limit)) {
+            result.add(toParked(new String(message.getData(), StandardCharsets.UTF_8), message));
+        }
+        return result;
+    }
+
+    /**
+     * Replays up to {@code limit} dead letters, oldest first. Messages that fail again are written back to the
+     * topic with the new reason before the old copy is acknowledged; if that write fails, the old copy stays.
+     */
+    public synchronized ReplayReport replay(int limit, Replayer replayer) throws PulsarClientException {
+        long startedAt = System.currentTimeMillis();
+        int replayed = 0;
+        int succeeded = 0;
+        int reparked = 0;
+
+        // Unacknowledged messages go back to the subscription when the consumer is closed
+        try (Consumer<String> consumer = subscribe(Math.max(1, Math.min(limit, 1000)))) {
+            Message<String> message;
+            while (replayed < limit && (message = consumer.receive(receiveTimeoutMs, TimeUnit.MILLISECONDS)) != null) {
+                if (message.getPublishTime() >= startedAt) {
+                    // Parked back by this replay; leave it for the next one
+                    break;
+                }
+                replayed++;
+                ParkedMessage parked = toParked(message.getValue(), message);
+                String error = replayer.replay(parked);
+                if (error == null) {
+                    consumer.acknowledge(message);
+                    succeeded++;
+                    continue;
+                }
+                try {
+                    deadLetterPublisher.send(parked.getPayload(), parked.getKey(), error);
+                    consumer.acknowledge(message);
+                    reparked++;
+                } catch (PulsarClientException e) {
+                    log.warn("Could not park dead letter {} back, leaving it in the subscription: {}", parked.getId(), e.getMessage());
+                }
+            }
+        }
+
+        log.info("Replayed {} dead letters: {} succeeded, {} parked again", replayed, succeeded, reparked);
+        return new ReplayReport(replayed, succeeded, reparked, (int) Math.min(Integer.MAX_VALUE, backlog()));
+    }
+
+    /**
+     * @return Dead letters waiting in the subscription, or -1 if the broker cannot be asked.
+     */
+    public long backlog() {
+        try {
+            SubscriptionStats stats = pulsarAdmin.topics().getStats(deadLetterTopic).getSubscriptions().get(subscriptionName);
+            return stats != null ? stats.getMsgBacklog() : 0;
+        } catch (PulsarAdminException e) {
+            log.warn("Could not read the backlog of dead-letter subscription {}: {}", subscriptionName, e.getMessage());
+            return -1;
+        }
+    }
+
+    // Shared, so replays started on several instances split the backlog instead of waiting on each other
+    private Consumer<String> subscribe(int receiverQueueSize) throws PulsarClientException {
+        return pulsarClient.newConsumer(Schema.STRING)
+                .topic(deadLetterTopic)
+                .subscriptionName(subscriptionName)
+                .subscriptionType(SubscriptionType.Shared)
+                .subscriptionInitialPosition(SubscriptionInitialPosition.Earliest)
+                .receiverQueueSize(receiverQueueSize)
+                .subscribe();
+    }
+
+    private ParkedMessage toParked(String payload, Message<?> message) {
+        String reason = message.getProperty(DeadLetterPublisher.REASON_PROPERTY);
+        if (reason == null) {
+            // Dead-lettered by the Pulsar client after exhausting the retry topic
+            reason = "Exceeded max redeliveries";
+        }
+        return new ParkedMessage(message.getMessageId().toString(), payload, message.getKey(), reason, SOURCE, Instant.ofEpochMilli(message.getPublishTime()));
+    }
+}
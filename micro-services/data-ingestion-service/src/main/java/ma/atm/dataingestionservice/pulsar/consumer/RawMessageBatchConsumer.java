@@ -0,0 +1,83 @@
+package ma.atm.dataingestionservice.pulsar.consumer;
+
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.model.DispatchResult;
+import ma.atm.dataingestionservice.pulsar.producer.DeadLetterPublisher;
+import ma.atm.dataingestionservice.service.MessageDispatcherService;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.pulsar.annotation.PulsarListener;
+import org.springframework.pulsar.listener.AckMode;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch variant of {@link RawMessageConsumer}, enabled with {@code pulsar.consumer.batch.enabled=true}.
+ * Messages are received in batches (see {@code PulsarConfig#rawMessageBatchReceiveCustomizer}),
+ * dispatched together and acknowledged in one call. Failed messages are handled one by one:
+ * poison messages are dead-lettered, the others are sent to the retry-letter topic.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "pulsar.consumer.batch.enabled", havingValue = "true")
+public class RawMessageBatchConsumer {
+
+    @Autowired
+    private MessageDispatcherService messageDispatcherService;
+
+    @Autowired
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @Value("${pulsar.consumer.retry-delay-ms:5000}")
+    private long retryDelayMs;
+
+    @PulsarListener(
+            topics = "${pulsar.consumer.topic}",
+            subscriptionName = "${pulsar.consumer.subscription-name}",
+            subscriptionType = SubscriptionType.Key_Shared,
+            batch = true,
+            ackMode = AckMode.MANUAL,
+            consumerCustomizer = "rawMessageBatchReceiveCustomizer"
+    )
+    public void consumeAtmEvents(List<Message<String>> messages, Consumer<String> consumer) throws PulsarClientException {
+        log.info("Received batch of {} ATM events", messages.size());
+
+        List<String> payloads = new ArrayList<>(messages.size());
+        for (Message<String> message : messages) {
+            payloads.add(message.getValue());
+        }
+
+        List<DispatchResult> results = messageDispatcherService.dispatchAll(payloads);
+
+        List<MessageId> processed = new ArrayList<>(messages.size());
+        int retried = 0;
+        for (DispatchResult result : results) {
+            Message<String> message = messages.get(result.getIndex());
+            if (result.isSuccess()) {
+                processed.add(message.getMessageId());
+            } else if (!result.isRetryable()) {
+                deadLetterPublisher.publishRaw(message.getValue(), message.getKey(), result.getError());
+                processed.add(message.getMessageId());
+            } else {
+                log.warn("Failed to dispatch ATM event {}, scheduling a retry: {}", message.getMessageId(), result.getError());
+                consumer.reconsumeLater(message, retryDelayMs, TimeUnit.MILLISECONDS);
+                retried++;
+            }
+        }
+
+        if (!processed.isEmpty()) {
+            consumer.acknowledge(processed);
+        }
+        log.info("Batch processed: {} acknowledged, {} scheduled for retry", processed.size(), retried);
+    }
+}
@@ -3,42 +3,58 @@ package ma.atm.dataingestionservice.pulsar.consumer;
 
 import lombok.extern.slf4j.Slf4j;
 import ma.atm.dataingestionservice.exception.MessageProcessingException;
+import ma.atm.dataingestionservice.exception.PoisonMessageException;
+import ma.atm.dataingestionservice.pulsar.producer.DeadLetterPublisher;
 import ma.atm.dataingestionservice.service.MessageDispatcherService;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.SubscriptionType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.pulsar.annotation.PulsarListener;
+import org.springframework.pulsar.listener.AckMode;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.TimeUnit;
+
 @Service
 @Slf4j
+@ConditionalOnProperty(name = "pulsar.consumer.batch.enabled", havingValue = "false", matchIfMissing = true)
 public class RawMessageConsumer {
 
     @Autowired
     private MessageDispatcherService messageDispatcherService;
 
+    @Autowired
+    private DeadLetterPublisher deadLetterPublisher;
 
+    @Value("${pulsar.consumer.retry-delay-ms:5000}")
+    private long retryDelayMs;
 
-
+    // Poison messages go straight to the dead-letter topic; other failures go through the
+    // retry-letter topic and are dead-lettered by the client once the max redeliver count is reached.
     @PulsarListener(
             topics = "${pulsar.consumer.topic}",
             subscriptionName = "${pulsar.consumer.subscription-name}",
-            subscriptionType = SubscriptionType.Exclusive
-
+            subscriptionType = SubscriptionType.Key_Shared,
+            ackMode = AckMode.MANUAL,
+            consumerCustomizer = "rawMessageRetryCustomizer"
     )
-    public void consumeAtmEvent(String event) throws MessageProcessingException {
-        log.info("Received ATM event: {}", event);
+    public void consumeAtmEvent(Message<String> message, Consumer<String> consumer) throws PulsarClientException {
+        log.info("Received ATM event: {}", message.getValue());
         try {
-            messageDispatcherService.dispatch(event);
-
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            messageDispatcherService.dispatch(message.getValue());
+            consumer.acknowledge(message);
+        } catch (PoisonMessageException e) {
+            deadLetterPublisher.publishRaw(message.getValue(), message.getKey(), e.getMessage());
+            consumer.acknowledge(message);
+        } catch (MessageProcessingException e) {
+            log.warn("Failed to process ATM event {}, scheduling a retry: {}", message.getMessageId(), e.getMessage());
+            consumer.reconsumeLater(message, retryDelayMs, TimeUnit.MILLISECONDS);
         }
-
-
-
-
     }
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package ma.atm.dataingestionservice.pulsar.producer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.model.BaseAtmMessage;
+import ma.atm.dataingestionservice.model.ParkedMessage;
+import ma.atm.dataingestionservice.service.MessageDeduplicationService;
+import ma.atm.dataingestionservice.store.ParkedMessageStore;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.pulsar.core.PulsarOperations;
+import org.springframework.pulsar.core.PulsarTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends messages that cannot be processed to the raw dead-letter topic.
+ * If the dead-letter topic cannot be written to either, the message is parked locally so it is not lost,
+ * and moved to the topic once it is reachable again.
+ */
+@Service
+@Slf4j
+public class DeadLetterPublisher {
+
+    public static final String REASON_PROPERTY = "dead-letter-reason";
+
+    @Autowired
+    private PulsarTemplate<String> deadLetterTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ParkedMessageStore parkedMessageStore;
+
+    @Autowired
+    private MessageDeduplicationService deduplicationService;
+
+    @Value("${pulsar.consumer.dead-letter-topic}")
+    private String deadLetterTopic;
+
+    public void publishRaw(String payload, String key, String reason) {
+        try {
+            message(payload, key, reason)
+                    .sendAsync()
+                    .whenComplete((messageId, error) -> {
+                        if (error != null) {
+                            parkLocally(payload, key, reason, error);
+                        } else {
+                            log.warn("Sent message to dead-letter topic {} ({}): {}", deadLetterTopic, reason, messageId);
+                        }
+                    });
+        } catch (Exception e) {
+            parkLocally(payload, key, reason, e);
+        }
+    }
+
+    /**
+     * Writes a message to the dead-letter topic and waits for the broker receipt, without the local fallback.
+     * Used when the caller still holds the message and must only let go of it once it is on the topic.
+     */
+    public MessageId send(String payload, String key, String reason) throws PulsarClientException {
+        return message(payload, key, reason).send();
+    }
+
+    /**
+     * Dead-letters an event that was accepted but could not be published to its internal topic.
+     * Internal events keep their messageType field, so the serialized form can be replayed as a raw message.
+     */
+    public void publishFailedEvent(BaseAtmMessage event, String reason) {
+        // The event never left this service, so its replay must not be dropped as a duplicate
+        deduplicationService.forget(event);
+        try {
+            publishRaw(objectMapper.writeValueAsString(event), event.getAtmId(), reason);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize event for ATM {} for dead-lettering: {}", event.getAtmId(), e.getMessage(), e);
+        }
+    }
+
+    // Moves locally parked messages to the dead-letter topic, oldest first, stopping at the first failure
+    @Scheduled(fixedDelayString = "${pulsar.consumer.parked.retry-interval-ms:30000}")
+    public void flushParkedLocally() {
+        for (ParkedMessage parked : parkedMessageStore.peek(Integer.MAX_VALUE)) {
+            try {
+                send(parked.getPayload(), parked.getKey(), parked.getReason());
+                parkedMessageStore.remove(parked);
+            } catch (PulsarClientException e) {
+                log.warn("Dead-letter topic {} still unavailable, {} messages remain parked locally: {}",
+                        deadLetterTopic, parkedMessageStore.size(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private PulsarOperations.SendMessageBuilder<String> message(String payload, String key, String reason) {
+        return deadLetterTemplate.newMessage(payload)
+                .withTopic(deadLetterTopic)
+                .withMessageCustomizer(message -> {
+                    if (key != null) {
+                        message.key(key);
+                    }
+                    message.property(REASON_PROPERTY, reason);
+                });
+    }
+
+    private void parkLocally(String payload, String key, String reason, Throwable error) {
+        log.error("Failed to send message to dead-letter topic {}, parking it locally: {}", deadLetterTopic, error.getMessage());
+        parkedMessageStore.park(payload, key, reason);
+    }
+}
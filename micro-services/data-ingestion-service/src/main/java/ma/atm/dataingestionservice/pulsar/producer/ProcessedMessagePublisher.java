@@ -1,14 +1,29 @@
 package ma.atm.dataingestionservice.pulsar.producer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import ma.atm.dataingestionservice.integration.ConfigurationIntegrationEvent;
 import ma.atm.dataingestionservice.model.*;
+import org.apache.pulsar.client.api.MessageId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.pulsar.core.PulsarTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes processed ATM messages to the internal topics.
+ * Sends are asynchronous and batched by the producer; the number of sends awaiting a broker
+ * receipt is bounded by {@code pulsar.producer.max-in-flight}. When that window is full the caller
+ * waits up to {@code pulsar.producer.in-flight-wait-ms}, then gets an exception so the raw
+ * message is redelivered instead of piling up in memory. Events whose send fails are dead-lettered.
+ */
 @Service
 @Slf4j
 public class ProcessedMessagePublisher {
@@ -20,12 +35,17 @@ public class ProcessedMessagePublisher {
     @Autowired
     private PulsarTemplate<CounterMessage> counterTemplate;
     @Autowired
-    private PulsarTemplate<TransactionMessage> transactionTemplate; // Only need String template
+    private PulsarTemplate<TransactionMessage> transactionTemplate;
     @Autowired
-    private PulsarTemplate<IncidentMessage> incidentTemplate; // Assuming you have a PulsarTemplate for IncidentMessage
+    private PulsarTemplate<IncidentMessage> incidentTemplate;
+    @Autowired
+    private PulsarTemplate<AtmSeenMessage> atmSeenTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @Autowired
-    private ObjectMapper objectMapper; // Add ObjectMapper for JSON conversion
+    private DeadLetterPublisher deadLetterPublisher;
 
     @Value("${pulsar.producer.status-topic}")
     private String status_topic;
@@ -42,65 +62,118 @@ public class ProcessedMessagePublisher {
     @Value("${pulsar.producer.incident-topic}")
     private String incident_topic;
 
+    @Value("${pulsar.producer.discovery-topic}")
+    private String discovery_topic;
 
-    // Method for StatusMessage
-    public void publishStatusEvent(StatusMessage event) {
-        try {
-            String jsonMessage = objectMapper.writeValueAsString(event);
-            statusTemplate.send(status_topic, event);
-            log.info("Published status event to topic {}: {}", status_topic, jsonMessage);
-        } catch (Exception e) {
-            log.error("Failed to publish status event to topic {}: {}", status_topic, e.getMessage(), e);
-        }
+    @Value("${pulsar.producer.max-in-flight:1000}")
+    private int maxInFlight;
+
+    @Value("${pulsar.producer.in-flight-wait-ms:5000}")
+    private long inFlightWaitMs;
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    void initInFlightWindow() {
+        inFlight = new Semaphore(maxInFlight);
+        Gauge.builder("atm.ingestion.publish.in_flight", inFlight, s -> maxInFlight - s.availablePermits())
+                .description("Internal events sent but not yet acknowledged by the broker")
+                .register(meterRegistry);
     }
 
-    // Method for ConfigurationMessage
-    public void publishConfigurationEvent(ConfigurationMessage event) {
-        try {
-            // Convert the message object to JSON string
-            String jsonPayload = objectMapper.writeValueAsString(event);
+    public CompletableFuture<MessageId> publishStatusEvent(StatusMessage event) {
+        return publish(statusTemplate, status_topic, event);
+    }
 
-            // Log the exact JSON string being published
-            log.info("Publishing JSON to internal-atm-configuration-events: {}", jsonPayload);
+    public CompletableFuture<MessageId> publishConfigurationEvent(ConfigurationMessage event) {
+        return publish(configTemplate, configuration_topic, event);
+    }
 
-            configTemplate.send(configuration_topic, event);
-            log.info("Published configuration event to topic {}: {}", configuration_topic, event);
-        } catch (Exception e) {
-            log.error("Failed to publish configuration event to topic {}: {}", configuration_topic, e.getMessage(), e);
-        }
+    public CompletableFuture<MessageId> publishCounterEvent(CounterMessage event) {
+        return publish(counterTemplate, counter_topic, event);
     }
 
-    // Method for CounterMessage
-    public void publishCounterEvent(CounterMessage event) {
-        try {
-            String jsonMessage = objectMapper.writeValueAsString(event);
-            counterTemplate.send(counter_topic, event);
-            log.info("Published counter event to topic {}: {}", counter_topic, jsonMessage);
-        } catch (Exception e) {
-            log.error("Failed to publish counter event to topic {}: {}", counter_topic, e.getMessage(), e);
-        }
+    public CompletableFuture<MessageId> publishTransactionEvent(TransactionMessage event) {
+        return publish(transactionTemplate, transaction_topic, event);
+    }
+
+    public CompletableFuture<MessageId> publishIncidentEvent(IncidentMessage message) {
+        return publish(incidentTemplate, incident_topic, message);
+    }
+
+    // Announcements are tiny and repeated every heartbeat, so they bypass the in-flight window and are never dead-lettered
+    public CompletableFuture<MessageId> publishAtmSeenEvent(AtmSeenMessage event) {
+        return atmSeenTemplate.newMessage(event)
+                .withTopic(discovery_topic)
+                .withMessageCustomizer(message -> message.key(event.getAtmId()))
+                .sendAsync()
+                .whenComplete((messageId, error) -> {
+                    if (error != null) {
+                        meterRegistry.counter("atm.ingestion.publish", "topic", discovery_topic, "outcome", "failure").increment();
+                        log.warn("Failed to announce ATM {} on topic {}: {}", event.getAtmId(), discovery_topic, error.getMessage());
+                    } else {
+                        meterRegistry.counter("atm.ingestion.publish", "topic", discovery_topic, "outcome", "success").increment();
+                    }
+                });
     }
 
-    // Method for TransactionMessage
-    public void publishTransactionEvent(TransactionMessage event) {
+    // Messages are keyed by atmId so Key_Shared subscribers keep per-ATM ordering
+    private <T extends BaseAtmMessage> CompletableFuture<MessageId> publish(PulsarTemplate<T> template, String topic, T event) {
+        acquireInFlightPermit(topic, event);
+
+        long start = System.nanoTime();
+        CompletableFuture<MessageId> future;
         try {
-            String jsonMessage = objectMapper.writeValueAsString(event);
-            transactionTemplate.send(transaction_topic, event);
-            log.info("Published transaction event to topic {}: {}", transaction_topic, jsonMessage);
+            future = template.newMessage(event)
+                    .withTopic(topic)
+                    .withMessageCustomizer(message -> message.key(event.getAtmId()))
+                    .sendAsync();
         } catch (Exception e) {
-            log.error("Failed to publish transaction event to topic {}: {}", transaction_topic, e.getMessage(), e);
+            inFlight.release();
+            recordOutcome(topic, "failure", start);
+            log.error("Failed to publish event for ATM {} to topic {}: {}", event.getAtmId(), topic, e.getMessage(), e);
+            deadLetterPublisher.publishFailedEvent(event, "Publish to " + topic + " failed: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
+
+        return future.whenComplete((messageId, error) -> {
+            inFlight.release();
+            if (error == null) {
+                recordOutcome(topic, "success", start);
+                log.debug("Published event for ATM {} to topic {}: {}", event.getAtmId(), topic, messageId);
+            } else {
+                recordOutcome(topic, "failure", start);
+                log.error("Failed to publish event for ATM {} to topic {}: {}", event.getAtmId(), topic, error.getMessage(), error);
+                deadLetterPublisher.publishFailedEvent(event, "Publish to " + topic + " failed: " + error.getMessage());
+            }
+        });
     }
 
-    public void publishIncidentEvent(IncidentMessage message) {
+    private void acquireInFlightPermit(String topic, BaseAtmMessage event) {
+        boolean acquired;
         try {
-            log.info("Publishing incident message to topic {}: {}", incident_topic, message);
-            // Assuming you have a PulsarTemplate for IncidentMessage
-            incidentTemplate.send(incident_topic, message);
-            // incidentTemplate.send(incident_topic, message);
-            log.info("Published incident event to topic {}: {}", incident_topic, message);
-        } catch (Exception e) {
-            log.error("Failed to publish incident event to topic {}: {}", incident_topic, e.getMessage(), e);
+            acquired = inFlight.tryAcquire(inFlightWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
         }
+        if (!acquired) {
+            meterRegistry.counter("atm.ingestion.publish.rejected", "topic", topic).increment();
+            throw new IllegalStateException("Publish window full (" + maxInFlight + " in flight), rejecting event for ATM "
+                    + event.getAtmId() + " to topic " + topic);
+        }
+    }
+
+    private void recordOutcome(String topic, String outcome, long startNanos) {
+        Counter.builder("atm.ingestion.publish")
+                .tag("topic", topic)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+        Timer.builder("atm.ingestion.publish.latency")
+                .tag("topic", topic)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
     }
 }
@@ -0,0 +1,17 @@
+package ma.atm.dataingestionservice.service;
+
+import ma.atm.dataingestionservice.model.BaseAtmMessage;
+
+/**
+ * Service interface for announcing the ATMs seen by the ingestion service on the discovery topic.
+ */
+public interface AtmDiscoveryService {
+
+    /**
+     * Records that a message from an ATM was processed, and announces the ATM if it was not
+     * announced within the heartbeat interval. Never fails the message being processed.
+     *
+     * @param message The processed message.
+     */
+    void recordSeen(BaseAtmMessage message);
+}
@@ -0,0 +1,23 @@
+package ma.atm.dataingestionservice.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Service interface for bulk ingestion of newline-delimited JSON (NDJSON) ATM messages.
+ */
+public interface BulkIngestionService {
+
+    /**
+     * Reads one raw ATM message per line from the body and dispatches them in chunks.
+     * One {@link ma.atm.dataingestionservice.model.DispatchResult} is written per non-blank line as NDJSON,
+     * with its index set to the 1-based line number.
+     *
+     * @param body         The NDJSON request body, already decompressed.
+     * @param results      Where the per-line results are written.
+     * @param failuresOnly Whether to omit the results of lines that were dispatched successfully.
+     * @throws IOException If the body cannot be read or the results cannot be written.
+     */
+    void ingest(InputStream body, OutputStream results, boolean failuresOnly) throws IOException;
+}
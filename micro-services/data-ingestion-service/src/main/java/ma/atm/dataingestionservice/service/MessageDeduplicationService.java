@@ -0,0 +1,36 @@
+package ma.atm.dataingestionservice.service;
+
+import ma.atm.dataingestionservice.model.BaseAtmMessage;
+
+/**
+ * Service interface for filtering retransmitted and out-of-order ATM messages before they are processed.
+ */
+public interface MessageDeduplicationService {
+
+    /**
+     * Decides whether a message should be processed: it must not have been accepted already within the
+     * deduplication window, nor be a snapshot older than the last one processed for the same ATM and message type.
+     * An accepted message is recorded in the same atomic step, so concurrent redeliveries of one message are
+     * accepted only once. If its processing then fails, {@link #forget} it so that its retry is accepted.
+     *
+     * @param message The parsed message.
+     * @return true if the message should be processed, false if it should be dropped.
+     */
+    boolean tryAccept(BaseAtmMessage message);
+
+    /**
+     * Records a message as processed, moving its ATM's snapshot watermark. Only called once processing
+     * succeeded, so that a failed snapshot does not hide older ones.
+     *
+     * @param message The processed message.
+     */
+    void recordProcessed(BaseAtmMessage message);
+
+    /**
+     * Forgets an accepted message, so that it is not treated as a duplicate when retried or replayed
+     * (e.g. after its processing failed, or its internal event failed to publish).
+     *
+     * @param message The message to forget.
+     */
+    void forget(BaseAtmMessage message);
+}
@@ -1,6 +1,9 @@
 package ma.atm.dataingestionservice.service;
 
 import ma.atm.dataingestionservice.exception.MessageProcessingException;
+import ma.atm.dataingestionservice.model.DispatchResult;
+
+import java.util.List;
 
 /**
  * Service interface for dispatching incoming ATM messages to the appropriate processor.
@@ -14,4 +17,13 @@ public interface MessageDispatcherService {
      * @throws MessageProcessingException if parsing or processing fails.
      */
     void dispatch(String messagePayload) throws MessageProcessingException;
+
+    /**
+     * Dispatches a batch of raw message payloads. A failing payload does not stop the batch;
+     * its failure is reported in the returned results instead.
+     *
+     * @param messagePayloads The raw message contents, in the order they were received.
+     * @return One result per payload, in the same order as the input.
+     */
+    List<DispatchResult> dispatchAll(List<String> messagePayloads);
 }
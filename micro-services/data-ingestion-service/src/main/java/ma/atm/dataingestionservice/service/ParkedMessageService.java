@@ -0,0 +1,29 @@
+package ma.atm.dataingestionservice.service;
+
+import ma.atm.dataingestionservice.model.ParkedMessage;
+import ma.atm.dataingestionservice.model.ReplayReport;
+
+import java.util.List;
+
+/**
+ * Service interface for inspecting and replaying parked (dead-lettered) ATM messages.
+ */
+public interface ParkedMessageService {
+
+    /**
+     * Lists parked messages, oldest first: messages parked locally by this instance, then the dead letters
+     * shared by every instance.
+     *
+     * @param limit Maximum number of messages to return.
+     */
+    List<ParkedMessage> getParkedMessages(int limit);
+
+    /**
+     * Replays up to {@code limit} dead letters through the dispatcher. A dead letter is only removed once it was
+     * processed, or once it was parked back with the new failure reason.
+     *
+     * @param limit Maximum number of messages to replay.
+     * @return A summary of the replay.
+     */
+    ReplayReport replay(int limit);
+}
@@ -0,0 +1,76 @@
+package ma.atm.dataingestionservice.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.model.AtmSeenMessage;
+import ma.atm.dataingestionservice.model.BaseAtmMessage;
+import ma.atm.dataingestionservice.pulsar.producer.ProcessedMessagePublisher;
+import ma.atm.dataingestionservice.service.AtmDiscoveryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concrete implementation announcing ATMs on the discovery topic.
+ * <p>
+ * Keeps the time each ATM was last announced, one entry per ATM of the fleet. An ATM is announced the
+ * first time it is seen, then again once {@code ingestion.discovery.heartbeat-interval-seconds} has passed.
+ * If an announcement fails to publish, its entry is dropped so the next message from the ATM retries it.
+ */
+@Service
+@Slf4j
+public class AtmDiscoveryServiceImpl implements AtmDiscoveryService {
+
+    private final ProcessedMessagePublisher publisher;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long intervalMillis;
+
+    private final Map<String, Long> lastAnnounced = new ConcurrentHashMap<>();
+
+    public AtmDiscoveryServiceImpl(ProcessedMessagePublisher publisher,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${ingestion.discovery.enabled:true}") boolean enabled,
+                                   @Value("${ingestion.discovery.heartbeat-interval-seconds:300}") long intervalSeconds) {
+        this.publisher = publisher;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.intervalMillis = intervalSeconds * 1000;
+    }
+
+    @Override
+    public void recordSeen(BaseAtmMessage message) {
+        String atmId = message.getAtmId();
+        if (!enabled || atmId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long previous = lastAnnounced.get(atmId);
+        if (previous != null && now - previous < intervalMillis) {
+            return;
+        }
+        // Only the thread that moves the entry forward announces
+        boolean claimed = previous == null
+                ? lastAnnounced.putIfAbsent(atmId, now) == null
+                : lastAnnounced.replace(atmId, previous, now);
+        if (!claimed) {
+            return;
+        }
+
+        AtmSeenMessage seen = new AtmSeenMessage(atmId, previous == null, message.getMessageType(), Instant.ofEpochMilli(now));
+        try {
+            publisher.publishAtmSeenEvent(seen).whenComplete((messageId, error) -> {
+                if (error != null) {
+                    lastAnnounced.remove(atmId, now);
+                }
+            });
+            meterRegistry.counter("atm.ingestion.discovery.announced", "first_seen", String.valueOf(seen.isFirstSeen())).increment();
+        } catch (Exception e) {
+            lastAnnounced.remove(atmId, now);
+            log.warn("Failed to announce ATM {} on the discovery topic: {}", atmId, e.getMessage());
+        }
+    }
+}
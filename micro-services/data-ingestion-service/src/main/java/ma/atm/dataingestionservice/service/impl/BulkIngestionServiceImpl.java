@@ -0,0 +1,98 @@
+package ma.atm.dataingestionservice.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.model.DispatchResult;
+import ma.atm.dataingestionservice.service.BulkIngestionService;
+import ma.atm.dataingestionservice.service.MessageDispatcherService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Concrete implementation for bulk NDJSON ingestion.
+ * The body is read line by line and only one chunk of lines is held in memory at a time;
+ * results are flushed after every chunk so the client sees progress on long uploads.
+ */
+@Service
+@Slf4j
+public class BulkIngestionServiceImpl implements BulkIngestionService {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private MessageDispatcherService messageDispatcherService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ingestion.bulk.chunk-size:500}")
+    private int chunkSize;
+
+    @Override
+    public void ingest(InputStream body, OutputStream results, boolean failuresOnly) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(results, StandardCharsets.UTF_8));
+
+        List<String> chunk = new ArrayList<>(chunkSize);
+        List<Integer> lineNumbers = new ArrayList<>(chunkSize);
+        int lineNumber = 0;
+        int failed = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            chunk.add(line);
+            lineNumbers.add(lineNumber);
+            if (chunk.size() >= chunkSize) {
+                failed += dispatchChunk(chunk, lineNumbers, writer, failuresOnly);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            failed += dispatchChunk(chunk, lineNumbers, writer, failuresOnly);
+        }
+        writer.flush();
+
+        log.info("Bulk ingestion read {} lines, {} failed", lineNumber, failed);
+    }
+
+    private int dispatchChunk(List<String> chunk, List<Integer> lineNumbers, Writer writer, boolean failuresOnly) throws IOException {
+        int failed = 0;
+        for (DispatchResult result : messageDispatcherService.dispatchAll(chunk)) {
+            if (!result.isSuccess()) {
+                failed++;
+            } else if (failuresOnly) {
+                continue;
+            }
+            result.setIndex(lineNumbers.get(result.getIndex()));
+            writer.write(objectMapper.writeValueAsString(result));
+            writer.write('\n');
+        }
+        writer.flush();
+
+        meterRegistry.counter("atm.ingestion.bulk.lines", "outcome", "success").increment(chunk.size() - failed);
+        meterRegistry.counter("atm.ingestion.bulk.lines", "outcome", "failure").increment(failed);
+
+        chunk.clear();
+        lineNumbers.clear();
+        return failed;
+    }
+}
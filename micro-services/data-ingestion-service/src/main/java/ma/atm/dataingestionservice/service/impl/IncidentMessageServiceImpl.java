@@ -1,6 +1,7 @@
 package ma.atm.dataingestionservice.service.impl;
 
 import ma.atm.dataingestionservice.exception.MessageProcessingException;
+import ma.atm.dataingestionservice.exception.PoisonMessageException;
 import ma.atm.dataingestionservice.model.IncidentMessage;
 import ma.atm.dataingestionservice.pulsar.producer.ProcessedMessagePublisher;
 import ma.atm.dataingestionservice.service.IncidentMessageService;
@@ -17,11 +18,11 @@ public class IncidentMessageServiceImpl implements IncidentMessageService {
     @Override
     public void process(IncidentMessage message) throws MessageProcessingException {
         if (message == null) {
-            throw new MessageProcessingException("Incident message cannot be null");
+            throw new PoisonMessageException("Incident message cannot be null");
         }
 
         if (message.getAtmId() == null || message.getAtmId().isEmpty()) {
-            throw new MessageProcessingException("ATM ID is required in the incident message");
+            throw new PoisonMessageException("ATM ID is required in the incident message");
         }
 
 
@@ -0,0 +1,165 @@
+package ma.atm.dataingestionservice.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.model.BaseAtmMessage;
+import ma.atm.dataingestionservice.model.MessageType;
+import ma.atm.dataingestionservice.model.TransactionMessage;
+import ma.atm.dataingestionservice.service.MessageDeduplicationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concrete implementation for filtering duplicate and stale ATM messages.
+ * <p>
+ * Duplicates are detected with a time-windowed set of keys per ATM, built from
+ * messageType + timestamp (+ transactionId for transactions). Entries leave the set once they
+ * are older than the window, or oldest first when the ATM's set is full.
+ * <p>
+ * Status, counter and configuration messages are full snapshots, so a per-ATM high watermark also
+ * drops any snapshot older than the last one forwarded for the same ATM and type.
+ * Messages without a timestamp are always forwarded.
+ * <p>
+ * Each ATM's state is only read and changed inside {@link ConcurrentHashMap#compute} for its atmId, so the
+ * check and the record are one atomic step, and messages of different ATMs never wait on each other.
+ */
+@Service
+@Slf4j
+public class MessageDeduplicationServiceImpl implements MessageDeduplicationService {
+
+    private static final Set<MessageType> SNAPSHOT_TYPES = Set.of(MessageType.STATUS, MessageType.COUNTER, MessageType.CONFIGURATION);
+
+    private enum Verdict { ACCEPTED, DUPLICATE, STALE }
+
+    private static final class AtmWindow {
+        // Insertion ordered, so the eldest keys are the first to expire
+        final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+        final Map<MessageType, Instant> watermarks = new EnumMap<>(MessageType.class);
+    }
+
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxEntriesPerAtm;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AtmWindow> windows = new ConcurrentHashMap<>();
+
+    public MessageDeduplicationServiceImpl(@Value("${ingestion.dedup.enabled:true}") boolean enabled,
+                                           @Value("${ingestion.dedup.window-seconds:300}") long windowSeconds,
+                                           @Value("${ingestion.dedup.max-entries-per-atm:1000}") int maxEntriesPerAtm,
+                                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.windowMillis = windowSeconds * 1000;
+        this.maxEntriesPerAtm = maxEntriesPerAtm;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean tryAccept(BaseAtmMessage message) {
+        if (!enabled || message.getAtmId() == null || message.getTimestamp() == null) {
+            return true;
+        }
+        MessageType type = message.getMessageTypeEnum();
+        String key = dedupKey(message);
+        long now = System.currentTimeMillis();
+        Verdict[] verdict = new Verdict[1];
+
+        windows.compute(message.getAtmId(), (atmId, window) -> {
+            if (window == null) {
+                window = new AtmWindow();
+            }
+            Instant watermark = window.watermarks.get(type);
+            if (SNAPSHOT_TYPES.contains(type) && watermark != null && message.getTimestamp().isBefore(watermark)) {
+                verdict[0] = Verdict.STALE;
+                return window;
+            }
+            evictExpired(window, now);
+            if (window.seen.putIfAbsent(key, now) != null) {
+                verdict[0] = Verdict.DUPLICATE;
+                return window;
+            }
+            Iterator<Long> it = window.seen.values().iterator();
+            while (window.seen.size() > maxEntriesPerAtm && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+            verdict[0] = Verdict.ACCEPTED;
+            return window;
+        });
+
+        if (verdict[0] == Verdict.STALE) {
+            log.debug("Dropping stale {} snapshot for ATM {} at {}", type, message.getAtmId(), message.getTimestamp());
+            meterRegistry.counter("atm.ingestion.filtered", "reason", "stale", "type", type.name()).increment();
+        } else if (verdict[0] == Verdict.DUPLICATE) {
+            log.debug("Dropping duplicate {} message for ATM {} at {}", type, message.getAtmId(), message.getTimestamp());
+            meterRegistry.counter("atm.ingestion.filtered", "reason", "duplicate", "type", type.name()).increment();
+        }
+        return verdict[0] == Verdict.ACCEPTED;
+    }
+
+    @Override
+    public void recordProcessed(BaseAtmMessage message) {
+        if (!enabled || message.getAtmId() == null || message.getTimestamp() == null
+                || !SNAPSHOT_TYPES.contains(message.getMessageTypeEnum())) {
+            return;
+        }
+        windows.computeIfPresent(message.getAtmId(), (atmId, window) -> {
+            window.watermarks.merge(message.getMessageTypeEnum(), message.getTimestamp(),
+                    (current, candidate) -> candidate.isAfter(current) ? candidate : current);
+            return window;
+        });
+    }
+
+    @Override
+    public void forget(BaseAtmMessage message) {
+        if (!enabled || message.getAtmId() == null || message.getTimestamp() == null) {
+            return;
+        }
+        String key = dedupKey(message);
+        windows.computeIfPresent(message.getAtmId(), (atmId, window) -> {
+            window.seen.remove(key);
+            return window;
+        });
+    }
+
+    // Expired keys are otherwise only dropped when their ATM sends again. Watermarks are kept, one per ATM and type.
+    @Scheduled(fixedDelayString = "${ingestion.dedup.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (String atmId : windows.keySet()) {
+            windows.computeIfPresent(atmId, (id, window) -> {
+                evictExpired(window, now);
+                return window.seen.isEmpty() && window.watermarks.isEmpty() ? null : window;
+            });
+        }
+    }
+
+    private void evictExpired(AtmWindow window, long now) {
+        Iterator<Long> it = window.seen.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next() <= windowMillis) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    private String dedupKey(BaseAtmMessage message) {
+        StringBuilder key = new StringBuilder(48)
+                .append(message.getMessageTypeEnum()).append('|')
+                .append(message.getTimestamp().toEpochMilli());
+        if (message instanceof TransactionMessage transaction) {
+            key.append('|').append(transaction.getTransactionId());
+        }
+        return key.toString();
+    }
+}
@@ -1,8 +1,11 @@
 package ma.atm.dataingestionservice.service.impl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import ma.atm.dataingestionservice.exception.MessageProcessingException;
+import ma.atm.dataingestionservice.exception.PoisonMessageException;
 import ma.atm.dataingestionservice.integration.ConfigurationIntegrationEvent;
 import ma.atm.dataingestionservice.model.*;
 import ma.atm.dataingestionservice.service.*;
@@ -11,6 +14,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Concrete implementation for dispatching incoming ATM messages.
  */
@@ -25,70 +32,129 @@ public class MessageDispatcherServiceImpl implements MessageDispatcherService {
     private final CounterMessageService counterMessageService;
     private final TransactionMessageService transactionMessageService;
     private final IncidentMessageService incidentMessageService;
+    private final MessageDeduplicationService deduplicationService;
+    private final AtmDiscoveryService discoveryService;
 
     @Autowired
     public MessageDispatcherServiceImpl(ObjectMapper objectMapper,
                                         StatusMessageService statusMessageService,
                                         ConfigurationMessageService configurationMessageService,
                                         CounterMessageService counterMessageService,
-                                        TransactionMessageService transactionMessageService, IncidentMessageService incidentMessageService) {
+                                        TransactionMessageService transactionMessageService, IncidentMessageService incidentMessageService,
+                                        MessageDeduplicationService deduplicationService,
+                                        AtmDiscoveryService discoveryService) {
         this.objectMapper = objectMapper;
         this.statusMessageService = statusMessageService;
         this.configurationMessageService = configurationMessageService;
         this.counterMessageService = counterMessageService;
         this.transactionMessageService = transactionMessageService;
         this.incidentMessageService = incidentMessageService;
+        this.deduplicationService = deduplicationService;
+        this.discoveryService = discoveryService;
     }
 
     @Override
     public void dispatch(String messagePayload) throws MessageProcessingException {
         log.debug("Received raw message payload: {}", messagePayload);
         try {
-            // First, parse into the base class to determine the message type
-            BaseAtmMessage baseMessage = objectMapper.readValue(messagePayload, BaseAtmMessage.class);
-            MessageType messageType = baseMessage.getMessageTypeEnum();
-            String atmId = baseMessage.getAtmId();
-
-            log.info("Dispatching message of type {} for ATM ID: {}", messageType, atmId);
+            // Only the discriminator is read up front, with the streaming parser and without building a tree;
+            // the payload is then bound once, straight into the concrete message type.
+            MessageType messageType = peekMessageType(messagePayload);
 
             switch (messageType) {
                 case STATUS:
-                    StatusMessage statusMessage = objectMapper.readValue(messagePayload, StatusMessage.class);
-                    statusMessageService.process(statusMessage);
+                    route(objectMapper.readValue(messagePayload, StatusMessage.class), statusMessageService::process);
                     break;
                 case CONFIGURATION:
-                    ConfigurationMessage configMessage = objectMapper.readValue(messagePayload, ConfigurationMessage.class);
-                    configurationMessageService.process(configMessage);
+                    route(objectMapper.readValue(messagePayload, ConfigurationMessage.class), configurationMessageService::process);
                     break;
                 case COUNTER:
-                    CounterMessage counterMessage = objectMapper.readValue(messagePayload, CounterMessage.class);
-                    counterMessageService.process(counterMessage);
+                    route(objectMapper.readValue(messagePayload, CounterMessage.class), counterMessageService::process);
                     break;
                 case TRANSACTION:
-                    TransactionMessage transactionMessage = objectMapper.readValue(messagePayload, TransactionMessage.class);
-                    transactionMessageService.process(transactionMessage);
+                    route(objectMapper.readValue(messagePayload, TransactionMessage.class), transactionMessageService::process);
                     break;
 
                 case INCIDENT:
                     IncidentMessage incidentMessage = objectMapper.readValue(messagePayload, IncidentMessage.class);
-                    // Handle incident message processing here
                     log.info("Processing incident message for ATM ID: {}", incidentMessage.getAtmId());
-                    incidentMessageService.process(incidentMessage);
+                    route(incidentMessage, incidentMessageService::process);
                     break;
                 case UNKNOWN:
                 default:
-                    log.warn("Received message with unknown or missing type for ATM ID: {}. Payload: {}", atmId, messagePayload);
-                    // Optionally, send to a specific handler or dead-letter queue
-                    // For now, just log it.
-                    break;
+                    log.warn("Received message with unknown or missing type. Payload: {}", messagePayload);
+                    throw new PoisonMessageException("Unknown or missing message type");
             }
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Failed to parse message payload: {}", messagePayload, e);
-            throw new MessageProcessingException("Error parsing JSON message", e);
+            throw new PoisonMessageException("Error parsing JSON message", e);
+        } catch (IllegalArgumentException e) {
+            // Validation failures from the message services: retrying will not fix the payload
+            log.error("Invalid message payload: {}", messagePayload, e);
+            throw new PoisonMessageException("Invalid message: " + e.getMessage(), e);
+        } catch (MessageProcessingException e) {
+            throw e;
         } catch (Exception e) {
             // Catch any other unexpected exceptions during processing
             log.error("Unexpected error processing message payload: {}", messagePayload, e);
             throw new MessageProcessingException("Unexpected error during message processing", e);
         }
     }
+
+    // Reads top-level fields until messageType; nested objects before it are skipped, not parsed into values
+    private MessageType peekMessageType(String payload) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("messageType".equals(field)) {
+                    return MessageType.fromString(value == JsonToken.VALUE_STRING ? parser.getText() : null);
+                }
+                parser.skipChildren();
+            }
+        }
+        return MessageType.UNKNOWN;
+    }
+
+    // Drops retransmitted and out-of-order messages. A message that fails is forgotten again, so its retry goes through.
+    private <T extends BaseAtmMessage> void route(T message, MessageHandler<T> handler) throws MessageProcessingException {
+        log.info("Dispatching message of type {} for ATM ID: {}", message.getMessageTypeEnum(), message.getAtmId());
+        if (!deduplicationService.tryAccept(message)) {
+            return;
+        }
+        try {
+            handler.process(message);
+        } catch (MessageProcessingException | RuntimeException e) {
+            deduplicationService.forget(message);
+            throw e;
+        }
+        deduplicationService.recordProcessed(message);
+        discoveryService.recordSeen(message);
+    }
+
+    @FunctionalInterface
+    private interface MessageHandler<T> {
+        void process(T message) throws MessageProcessingException;
+    }
+
+    @Override
+    public List<DispatchResult> dispatchAll(List<String> messagePayloads) {
+        List<DispatchResult> results = new ArrayList<>(messagePayloads.size());
+        for (int i = 0; i < messagePayloads.size(); i++) {
+            try {
+                dispatch(messagePayloads.get(i));
+                results.add(DispatchResult.success(i));
+            } catch (MessageProcessingException e) {
+                results.add(DispatchResult.failure(i, describe(e), !(e instanceof PoisonMessageException)));
+            }
+        }
+        return results;
+    }
+
+    private String describe(MessageProcessingException e) {
+        return e.getCause() != null ? e.getMessage() + ": " + e.getCause().getMessage() : e.getMessage();
+    }
 }
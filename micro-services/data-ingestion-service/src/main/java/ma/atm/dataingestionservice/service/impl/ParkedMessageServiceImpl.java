@@ -0,0 +1,70 @@
+package ma.atm.dataingestionservice.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.exception.MessageProcessingException;
+import ma.atm.dataingestionservice.model.ParkedMessage;
+import ma.atm.dataingestionservice.model.ReplayReport;
+import ma.atm.dataingestionservice.pulsar.consumer.DeadLetterConsumer;
+import ma.atm.dataingestionservice.service.MessageDispatcherService;
+import ma.atm.dataingestionservice.service.ParkedMessageService;
+import ma.atm.dataingestionservice.store.ParkedMessageStore;
+import org.apache.pulsar.client.admin.PulsarAdminException;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Concrete implementation for replaying parked ATM messages.
+ * Parked messages are the dead letters waiting in the dead-letter subscription, plus any message this instance
+ * parked locally because the dead-letter topic was unreachable.
+ */
+@Service
+@Slf4j
+public class ParkedMessageServiceImpl implements ParkedMessageService {
+
+    private final ParkedMessageStore parkedMessageStore;
+    private final DeadLetterConsumer deadLetterConsumer;
+    private final MessageDispatcherService messageDispatcherService;
+
+    @Autowired
+    public ParkedMessageServiceImpl(ParkedMessageStore parkedMessageStore,
+                                    DeadLetterConsumer deadLetterConsumer,
+                                    MessageDispatcherService messageDispatcherService) {
+        this.parkedMessageStore = parkedMessageStore;
+        this.deadLetterConsumer = deadLetterConsumer;
+        this.messageDispatcherService = messageDispatcherService;
+    }
+
+    @Override
+    public List<ParkedMessage> getParkedMessages(int limit) {
+        List<ParkedMessage> result = new ArrayList<>(parkedMessageStore.peek(limit));
+        if (result.size() < limit) {
+            try {
+                result.addAll(deadLetterConsumer.peek(limit - result.size()));
+            } catch (PulsarAdminException e) {
+                throw new IllegalStateException("Could not read the dead-letter subscription: " + e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ReplayReport replay(int limit) {
+        // Locally parked messages are not replayed here: they are moved to the dead-letter topic first
+        try {
+            return deadLetterConsumer.replay(limit, parked -> {
+                try {
+                    messageDispatcherService.dispatch(parked.getPayload());
+                    return null;
+                } catch (MessageProcessingException e) {
+                    return e.getCause() != null ? e.getMessage() + ": " + e.getCause().getMessage() : e.getMessage();
+                }
+            });
+        } catch (PulsarClientException e) {
+            throw new IllegalStateException("Could not read the dead-letter subscription: " + e.getMessage(), e);
+        }
+    }
+}
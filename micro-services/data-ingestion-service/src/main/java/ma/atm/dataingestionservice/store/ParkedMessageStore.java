@@ -0,0 +1,82 @@
+package ma.atm.dataingestionservice.store;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.atm.dataingestionservice.model.ParkedMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-memory store for dead letters that could not be written to the dead-letter topic.
+ * {@code DeadLetterPublisher} moves them to the topic once it is reachable again, so they only live here
+ * while Pulsar is down. When full, the oldest message is dropped and counted.
+ */
+@Component
+@Slf4j
+public class ParkedMessageStore {
+
+    public static final String SOURCE = "publish-fallback";
+
+    private final Deque<ParkedMessage> messages = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+    private final Counter parkedCounter;
+    private final Counter droppedCounter;
+
+    public ParkedMessageStore(@Value("${pulsar.consumer.parked.max-size:10000}") int maxSize,
+                              MeterRegistry meterRegistry) {
+        this.maxSize = maxSize;
+        this.parkedCounter = meterRegistry.counter("atm.ingestion.parked.added");
+        this.droppedCounter = meterRegistry.counter("atm.ingestion.parked.dropped");
+        Gauge.builder("atm.ingestion.parked.size", size, AtomicInteger::get).register(meterRegistry);
+    }
+
+    public ParkedMessage park(String payload, String key, String reason) {
+        ParkedMessage parked = new ParkedMessage(UUID.randomUUID().toString(), payload, key, reason, SOURCE, Instant.now());
+        messages.addLast(parked);
+        parkedCounter.increment();
+        if (size.incrementAndGet() > maxSize && messages.pollFirst() != null) {
+            size.decrementAndGet();
+            droppedCounter.increment();
+            log.warn("Parked message store full ({} messages), dropped the oldest entry", maxSize);
+        }
+        return parked;
+    }
+
+    /**
+     * Returns up to {@code limit} parked messages, oldest first, without removing them.
+     */
+    public List<ParkedMessage> peek(int limit) {
+        List<ParkedMessage> result = new ArrayList<>(Math.min(limit, size.get()));
+        for (ParkedMessage message : messages) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(message);
+        }
+        return result;
+    }
+
+    /**
+     * Removes a parked message once it was handed over, e.g. written to the dead-letter topic.
+     */
+    public void remove(ParkedMessage message) {
+        if (messages.remove(message)) {
+            size.decrementAndGet();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+}
@@ -0,0 +1,114 @@
+package ma.atm.dataingestionservice.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.atm.dataingestionservice.model.BaseAtmMessage;
+import ma.atm.dataingestionservice.model.StatusMessage;
+import ma.atm.dataingestionservice.model.TransactionMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageDeduplicationServiceImplTest {
+
+	private static final Instant T0 = Instant.parse("2025-01-01T12:00:00Z");
+
+	private SimpleMeterRegistry meterRegistry;
+	private MessageDeduplicationServiceImpl service;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		service = new MessageDeduplicationServiceImpl(true, 300, 1000, meterRegistry);
+	}
+
+	@Test
+	void dropsRetransmittedMessage() {
+		assertTrue(service.tryAccept(status("ATM1", T0)));
+		assertFalse(service.tryAccept(status("ATM1", T0)));
+		assertTrue(service.tryAccept(status("ATM2", T0)));
+
+		assertEquals(1, meterRegistry.counter("atm.ingestion.filtered", "reason", "duplicate", "type", "STATUS").count());
+	}
+
+	@Test
+	void keysTransactionsByTransactionId() {
+		assertTrue(service.tryAccept(transaction("ATM1", T0, "TX1")));
+		assertTrue(service.tryAccept(transaction("ATM1", T0, "TX2")));
+		assertFalse(service.tryAccept(transaction("ATM1", T0, "TX1")));
+	}
+
+	@Test
+	void dropsSnapshotOlderThanLastProcessed() {
+		StatusMessage newer = status("ATM1", T0.plusSeconds(10));
+		assertTrue(service.tryAccept(newer));
+
+		// Not processed yet, so an older snapshot may still go through
+		assertTrue(service.tryAccept(status("ATM1", T0.plusSeconds(5))));
+
+		service.recordProcessed(newer);
+		assertFalse(service.tryAccept(status("ATM1", T0)));
+		assertEquals(1, meterRegistry.counter("atm.ingestion.filtered", "reason", "stale", "type", "STATUS").count());
+
+		// Transactions are events, not snapshots
+		assertTrue(service.tryAccept(transaction("ATM1", T0, "TX1")));
+	}
+
+	@Test
+	void forgottenMessageIsAcceptedOnRetry() {
+		StatusMessage message = status("ATM1", T0);
+		assertTrue(service.tryAccept(message));
+
+		service.forget(message);
+
+		assertTrue(service.tryAccept(message));
+	}
+
+	@Test
+	void evictsEldestKeysWhenAtmIsFull() {
+		service = new MessageDeduplicationServiceImpl(true, 300, 2, meterRegistry);
+		assertTrue(service.tryAccept(transaction("ATM1", T0, "TX1")));
+		assertTrue(service.tryAccept(transaction("ATM1", T0, "TX2")));
+		assertTrue(service.tryAccept(transaction("ATM1", T0, "TX3")));
+
+		assertTrue(service.tryAccept(transaction("ATM1", T0, "TX1")));
+		assertFalse(service.tryAccept(transaction("ATM1", T0, "TX3")));
+	}
+
+	@Test
+	void forwardsMessagesItCannotKey() {
+		assertTrue(service.tryAccept(status("ATM1", null)));
+		assertTrue(service.tryAccept(status("ATM1", null)));
+		assertTrue(service.tryAccept(status(null, T0)));
+		assertTrue(service.tryAccept(status(null, T0)));
+
+		MessageDeduplicationServiceImpl disabled = new MessageDeduplicationServiceImpl(false, 300, 1000, meterRegistry);
+		assertTrue(disabled.tryAccept(status("ATM1", T0)));
+		assertTrue(disabled.tryAccept(status("ATM1", T0)));
+	}
+
+	private static StatusMessage status(String atmId, Instant timestamp) {
+		StatusMessage message = new StatusMessage();
+		fill(message, atmId, "STATUS", timestamp);
+		message.setOperationalState("IN_SERVICE");
+		return message;
+	}
+
+	private static TransactionMessage transaction(String atmId, Instant timestamp, String transactionId) {
+		TransactionMessage message = new TransactionMessage();
+		fill(message, atmId, "TRANSACTION", timestamp);
+		message.setTransactionId(transactionId);
+		return message;
+	}
+
+	private static void fill(BaseAtmMessage message, String atmId, String messageType, Instant timestamp) {
+		message.setAtmId(atmId);
+		message.setMessageType(messageType);
+		message.setTimestamp(timestamp);
+	}
+
+}
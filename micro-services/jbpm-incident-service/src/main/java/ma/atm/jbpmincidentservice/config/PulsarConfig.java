@@ -1,11 +1,13 @@
 package ma.atm.jbpmincidentservice.config;
 
 
+import org.apache.pulsar.client.api.BatcherBuilder;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.pulsar.core.ProducerBuilderCustomizer;
 
 @Configuration
 public class PulsarConfig {
@@ -19,4 +21,10 @@ public class PulsarConfig {
                 .serviceUrl(serviceUrl)
                 .build();
     }
-}
\ No newline at end of file
+
+    // One key per batch, so notifications keep their per-ATM routing on Key_Shared subscriptions
+    @Bean
+    public ProducerBuilderCustomizer<Object> keyBasedBatchingCustomizer() {
+        return builder -> builder.batcherBuilder(BatcherBuilder.KEY_BASED);
+    }
+}
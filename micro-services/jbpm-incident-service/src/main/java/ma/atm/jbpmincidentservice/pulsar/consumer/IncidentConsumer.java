@@ -21,7 +21,7 @@ public class IncidentConsumer {
             topics = "${pulsar.consumer.incident-topic}",
             subscriptionName = "${pulsar.consumer.subscription-name}",
             schemaType = SchemaType.JSON,
-            subscriptionType = SubscriptionType.Exclusive
+            subscriptionType = SubscriptionType.Key_Shared
 
     )
     public void consumeIncidentEvent(IncidentMessage event) {
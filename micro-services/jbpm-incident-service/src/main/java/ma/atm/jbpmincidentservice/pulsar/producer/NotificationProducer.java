@@ -21,7 +21,10 @@ public class NotificationProducer {
 
     public void publishNotification(Incident incidentMessage) {
         try {
-            pulsarTemplate.send(notificationTopic, incidentMessage);
+            pulsarTemplate.newMessage(incidentMessage)
+                    .withTopic(notificationTopic)
+                    .withMessageCustomizer(message -> message.key(incidentMessage.getAtmId()))
+                    .send();
             log.info("Notification sent to topic {}: {}", notificationTopic, incidentMessage);
         } catch (Exception e) {
             log.error("Failed to send notification to topic {}: {}", notificationTopic, e.getMessage(), e);
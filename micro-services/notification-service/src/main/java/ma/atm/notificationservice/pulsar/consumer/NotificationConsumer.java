@@ -22,7 +22,7 @@ public class NotificationConsumer {
             topics = "${pulsar.consumer.notification-topic}",
             subscriptionName = "${pulsar.consumer.subscription-name}",
             schemaType = SchemaType.JSON,
-            subscriptionType = SubscriptionType.Exclusive
+            subscriptionType = SubscriptionType.Key_Shared
     )
     public void consumeNotificationEvent(Incident notificationMessage) {
         log.info("Received notification message: {}", notificationMessage);